@@ -4,6 +4,8 @@ import dev.rosewood.rosestacker.nms.hologram.Hologram;
 import dev.rosewood.rosestacker.nms.spawner.StackedSpawnerTile;
 import dev.rosewood.rosestacker.nms.storage.StackedEntityDataEntry;
 import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorage;
+import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorageType;
+import java.util.List;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.entity.Creeper;
@@ -194,15 +196,38 @@ public interface NMSHandler {
      * @param livingEntity The base entity
      * @return a new StackedEntityDataStorage instance
      */
-    StackedEntityDataStorage createEntityDataStorage(LivingEntity livingEntity);
+    default StackedEntityDataStorage createEntityDataStorage(LivingEntity livingEntity) {
+        return this.createEntityDataStorage(livingEntity, StackedEntityDataStorageType.NBT);
+    }
+
+    /**
+     * Creates a new StackedEntityDataStorage instance for storing large amounts of entities of the same type in a small data footprint
+     *
+     * @param livingEntity The base entity
+     * @param storageType The type of storage to create
+     * @return a new StackedEntityDataStorage instance
+     */
+    StackedEntityDataStorage createEntityDataStorage(LivingEntity livingEntity, StackedEntityDataStorageType storageType);
+
+    /**
+     * Creates a new StackedEntityDataStorage instance from existing serialized data
+     *
+     * @param data The StackedEntityDataStorage data, should be acquired from {@link StackedEntityDataStorage#serialize()}
+     * @return a new StackedEntityDataStorage instance
+     */
+    default StackedEntityDataStorage deserializeEntityDataStorage(byte[] data) {
+        return this.deserializeEntityDataStorage(null, data, StackedEntityDataStorageType.NBT);
+    }
 
     /**
      * Creates a new StackedEntityDataStorage instance from existing serialized data
      *
+     * @param livingEntity The entity the data belongs to, used to share data between stacks of the same type, may be null
      * @param data The StackedEntityDataStorage data, should be acquired from {@link StackedEntityDataStorage#serialize()}
+     * @param storageType The type of storage the data was serialized from, should be acquired from {@link StackedEntityDataStorage#getType()}
      * @return a new StackedEntityDataStorage instance
      */
-    StackedEntityDataStorage deserializeEntityDataStorage(byte[] data);
+    StackedEntityDataStorage deserializeEntityDataStorage(LivingEntity livingEntity, byte[] data, StackedEntityDataStorageType storageType);
 
     /**
      * Injects the custom stacked spawner logic into the tile entity of the given spawner
@@ -221,6 +246,15 @@ public interface NMSHandler {
      */
     Hologram createHologram(Location location, String text);
 
+    /**
+     * Sends packets created by holograms to a player.
+     * The packets are sent through the player's connection so they go through the server's normal packet handling.
+     *
+     * @param player The player to send the packets to
+     * @param packets The packets to send, in order
+     */
+    void sendHologramPackets(Player player, List<Object> packets);
+
     /**
      * 1.19 uses a new RandomSource system which causes a server crash when accessed async.
      * Try to hijack this RandomSource and inject our own into the world which allows "thread-safe" access.
@@ -1,12 +1,22 @@
 package dev.rosewood.rosestacker.nms.hologram;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
 import java.util.WeakHashMap;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
 
+/**
+ * A client-side hologram.
+ * Changes are not sent to watchers immediately, they are collected with {@link #flush(Map)} and only the difference
+ * between what each watcher was last sent and the current state of the hologram is sent.
+ * A hologram adds itself to its dirty queue when it changes, so only holograms that changed need to be flushed.
+ */
 public abstract class Hologram {
 
     protected final int entityId;
@@ -14,11 +24,17 @@ public abstract class Hologram {
     protected final Location location;
     protected String text;
 
+    private final Map<Player, SentState> sent;
+    private Queue<Hologram> dirtyQueue;
+    private boolean dirty;
+    private boolean deleted;
+
     public Hologram(int entityId, Location location, String text) {
         this.entityId = entityId;
         this.location = location;
         this.text = text;
         this.watchers = Collections.synchronizedMap(new WeakHashMap<>());
+        this.sent = new WeakHashMap<>();
     }
 
     /**
@@ -27,11 +43,10 @@ public abstract class Hologram {
      * @param player The player to add
      * @param visible true to make the hologram visible, false otherwise
      */
-    public void addWatcher(Player player, boolean visible) {
-        if (!this.watchers.containsKey(player)) {
+    public synchronized void addWatcher(Player player, boolean visible) {
+        if (!this.deleted && !this.watchers.containsKey(player)) {
             this.watchers.put(player, visible);
-            this.create(player);
-            this.update(player);
+            this.markDirty();
         }
     }
 
@@ -49,11 +64,9 @@ public abstract class Hologram {
      *
      * @param player The player to remove
      */
-    public void removeWatcher(Player player) {
-        if (this.watchers.containsKey(player)) {
-            this.watchers.remove(player);
-            this.delete(player);
-        }
+    public synchronized void removeWatcher(Player player) {
+        if (this.watchers.remove(player) != null)
+            this.markDirty();
     }
 
     /**
@@ -90,54 +103,133 @@ public abstract class Hologram {
      * @param player The player to set the visibility for
      * @param visible true to make the hologram visible, false otherwise
      */
-    public void setVisibility(Player player, boolean visible) {
+    public synchronized void setVisibility(Player player, boolean visible) {
         Boolean alreadyVisible = this.watchers.get(player);
         if (alreadyVisible == null)
             return;
 
         if (alreadyVisible ^ visible) {
             this.watchers.put(player, visible);
-            this.update(player);
+            this.markDirty();
         }
     }
 
     /**
-     * Deletes the hologram for all watchers
+     * Deletes the hologram for all watchers, the packets to remove it are sent the next time it is flushed.
+     * No new watchers can be added afterwards.
      */
-    public void delete() {
-        this.watchers.keySet().forEach(this::delete);
+    public synchronized void delete() {
+        this.deleted = true;
         this.watchers.clear();
+        this.markDirty();
     }
 
     /**
-     * Sets the hologram text and updates it to all watchers
+     * Sets the hologram text, watchers are only updated if the text changed
      *
      * @param text The text to set
      */
-    public void setText(String text) {
+    public synchronized void setText(String text) {
+        if (Objects.equals(this.text, text))
+            return;
+
         this.text = text;
-        this.watchers.keySet().forEach(this::update);
+        this.markDirty();
     }
 
     /**
-     * Creates a new hologram entity for the given player
+     * Sets the queue this hologram adds itself to whenever it changes after being flushed
      *
-     * @param player The player to spawn the hologram for
+     * @param dirtyQueue The queue of holograms that need to be flushed
      */
-    protected abstract void create(Player player);
+    public synchronized void setDirtyQueue(Queue<Hologram> dirtyQueue) {
+        this.dirtyQueue = dirtyQueue;
+        if (this.dirty)
+            dirtyQueue.add(this);
+    }
 
     /**
-     * Sends the metadata packet for this hologram to the specified player
+     * Collects the packets needed to bring every watcher up to date with this hologram.
+     * Players that are no longer watching have the hologram removed.
      *
-     * @param player The player to send the packet to
+     * @param packets The packets to send to each player, new packets are added to the end of each player's list
      */
-    protected abstract void update(Player player);
+    public synchronized void flush(Map<Player, List<Object>> packets) {
+        if (!this.dirty)
+            return;
+
+        this.dirty = false;
+
+        synchronized (this.watchers) {
+            for (Map.Entry<Player, Boolean> entry : this.watchers.entrySet()) {
+                Player player = entry.getKey();
+                boolean visible = entry.getValue();
+                SentState sentState = this.sent.get(player);
+                if (sentState == null) {
+                    List<Object> playerPackets = packets.computeIfAbsent(player, x -> new ArrayList<>());
+                    playerPackets.add(this.createAddPacket());
+                    playerPackets.add(this.createUpdatePacket(visible));
+                    this.sent.put(player, new SentState(this.text, visible));
+                } else if (sentState.visible != visible || !Objects.equals(sentState.text, this.text)) {
+                    packets.computeIfAbsent(player, x -> new ArrayList<>()).add(this.createUpdatePacket(visible));
+                    sentState.text = this.text;
+                    sentState.visible = visible;
+                }
+            }
+        }
+
+        this.sent.keySet().removeIf(player -> {
+            if (this.watchers.containsKey(player))
+                return false;
+
+            packets.computeIfAbsent(player, x -> new ArrayList<>()).add(this.createRemovePacket());
+            return true;
+        });
+    }
 
     /**
-     * Deletes the hologram entity for the given player
+     * Marks the hologram as changed, adding it to the dirty queue if it was not already waiting to be flushed
+     */
+    private void markDirty() {
+        if (this.dirty)
+            return;
+
+        this.dirty = true;
+        if (this.dirtyQueue != null)
+            this.dirtyQueue.add(this);
+    }
+
+    /**
+     * @return a packet that spawns the hologram entity
+     */
+    protected abstract Object createAddPacket();
+
+    /**
+     * Creates a metadata packet with the current text of this hologram
      *
-     * @param player The player to delete the hologram for
+     * @param visible true if the hologram should be visible, false otherwise
+     * @return a packet that updates the hologram entity
      */
-    protected abstract void delete(Player player);
+    protected abstract Object createUpdatePacket(boolean visible);
+
+    /**
+     * @return a packet that removes the hologram entity
+     */
+    protected abstract Object createRemovePacket();
+
+    /**
+     * What a watcher was last sent
+     */
+    private static class SentState {
+
+        private String text;
+        private boolean visible;
+
+        public SentState(String text, boolean visible) {
+            this.text = text;
+            this.visible = visible;
+        }
+
+    }
 
 }
@@ -106,4 +106,12 @@ public interface StackedSpawnerTile {
      */
     PersistentDataContainer getPersistentDataContainer();
 
+    /**
+     * Runs the spawner logic that is due, called by the scheduler that runs the spawners in the world
+     *
+     * @param currentTick The current tick of the scheduler
+     * @return the tick the spawner should be run at next, or -1 if the spawner is no longer being ticked by the server
+     */
+    long tick(long currentTick);
+
 }
@@ -22,6 +22,28 @@ public interface StackedEntityDataStorage {
      */
     void addLast(LivingEntity entity);
 
+    /**
+     * Adds a number of copies of an entity to the front, the entity is only serialized once
+     *
+     * @param entity The entity to add copies of
+     * @param amount The number of copies to add
+     */
+    default void addCopiesFirst(LivingEntity entity, int amount) {
+        for (int i = 0; i < amount; i++)
+            this.addFirst(entity);
+    }
+
+    /**
+     * Adds a number of copies of an entity to the end, the entity is only serialized once
+     *
+     * @param entity The entity to add copies of
+     * @param amount The number of copies to add
+     */
+    default void addCopiesLast(LivingEntity entity, int amount) {
+        for (int i = 0; i < amount; i++)
+            this.addLast(entity);
+    }
+
     /**
      * Adds all given entries to the front
      *
@@ -36,6 +58,24 @@ public interface StackedEntityDataStorage {
      */
     void addAllLast(List<StackedEntityDataEntry<?>> stackedEntityDataEntry);
 
+    /**
+     * Adds all entries from another StackedEntityDataStorage to the front
+     *
+     * @param stackedEntityDataStorage The StackedEntityDataStorage to add the entries of
+     */
+    default void addAllFirst(StackedEntityDataStorage stackedEntityDataStorage) {
+        this.addAllFirst(stackedEntityDataStorage.getAll());
+    }
+
+    /**
+     * Adds all entries from another StackedEntityDataStorage to the end
+     *
+     * @param stackedEntityDataStorage The StackedEntityDataStorage to add the entries of
+     */
+    default void addAllLast(StackedEntityDataStorage stackedEntityDataStorage) {
+        this.addAllLast(stackedEntityDataStorage.getAll());
+    }
+
     /**
      * @return A StackedEntityDataEntry object for the entity at the front of the list
      */
@@ -86,4 +126,9 @@ public interface StackedEntityDataStorage {
         return this.serialize(Integer.MAX_VALUE);
     }
 
+    /**
+     * @return the type of this storage
+     */
+    StackedEntityDataStorageType getType();
+
 }
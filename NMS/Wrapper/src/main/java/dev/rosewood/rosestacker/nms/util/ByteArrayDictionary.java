@@ -0,0 +1,178 @@
+package dev.rosewood.rosestacker.nms.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.bukkit.entity.EntityType;
+
+/**
+ * A bounded, thread-safe pool of canonical byte arrays shared by every stack of the same EntityType.
+ * Equal encoded entries are interned so they share a single instance in memory, and are written once per stack when saved.
+ */
+public class ByteArrayDictionary {
+
+    private static final int MAX_ENTRIES = 4096;
+    private static final Map<EntityType, ByteArrayDictionary> DICTIONARIES = new ConcurrentHashMap<>();
+    private static final ByteArrayDictionary SHARED = new ByteArrayDictionary();
+
+    private final Map<Key, byte[]> entries;
+
+    private ByteArrayDictionary() {
+        this.entries = new LinkedHashMap<>(16, 0.75F, true);
+    }
+
+    /**
+     * Gets the dictionary shared by all stacks of an EntityType
+     *
+     * @param entityType The EntityType, or null if unknown
+     * @return the dictionary for the EntityType, or a dictionary shared by all unknown types if null
+     */
+    public static ByteArrayDictionary forType(EntityType entityType) {
+        if (entityType == null)
+            return SHARED;
+        return DICTIONARIES.computeIfAbsent(entityType, x -> new ByteArrayDictionary());
+    }
+
+    /**
+     * Gets the canonical instance of a byte array, adding it to the dictionary if no equal one exists yet
+     *
+     * @param value The byte array to intern
+     * @return an equal byte array from the dictionary, or the given one if it was not already present
+     */
+    public synchronized byte[] intern(byte[] value) {
+        Key key = new Key(value);
+        byte[] existing = this.entries.get(key);
+        if (existing != null)
+            return existing;
+
+        this.entries.put(key, value);
+        if (this.entries.size() > MAX_ENTRIES) {
+            // Drop the least recently used entry, anything already interned keeps its shared instance
+            Iterator<Key> iterator = this.entries.keySet().iterator();
+            iterator.next();
+            iterator.remove();
+        }
+
+        return value;
+    }
+
+    /**
+     * Checks if a byte array is the canonical instance held by the dictionary
+     *
+     * @param value The byte array to check
+     * @return true if the dictionary holds this exact instance, false if it holds none or a different equal one
+     */
+    public synchronized boolean isInterned(byte[] value) {
+        return this.entries.get(new Key(value)) == value;
+    }
+
+    /**
+     * Writes entries with each distinct entry written once, followed by the index of the distinct entry for every entry
+     *
+     * @param dataOutput The output to write to
+     * @param entries The entries to write
+     * @throws IOException if an I/O error occurs
+     */
+    public static void writeEntries(DataOutput dataOutput, byte[][] entries) throws IOException {
+        Map<Key, Integer> indexes = new HashMap<>();
+        int[] entryIndexes = new int[entries.length];
+        byte[][] distinct = new byte[entries.length][];
+        for (int i = 0; i < entries.length; i++) {
+            Integer index = indexes.putIfAbsent(new Key(entries[i]), indexes.size());
+            if (index == null) {
+                index = indexes.size() - 1;
+                distinct[index] = entries[i];
+            }
+            entryIndexes[i] = index;
+        }
+
+        writeVarInt(dataOutput, indexes.size());
+        for (int i = 0; i < indexes.size(); i++) {
+            writeVarInt(dataOutput, distinct[i].length);
+            dataOutput.write(distinct[i]);
+        }
+
+        writeVarInt(dataOutput, entries.length);
+        for (int index : entryIndexes)
+            writeVarInt(dataOutput, index);
+    }
+
+    /**
+     * Reads entries written by {@link #writeEntries(DataOutput, byte[][])}, equal entries will share the same instance
+     *
+     * @param dataInput The input to read from
+     * @return the entries that were read
+     * @throws IOException if an I/O error occurs
+     */
+    public static byte[][] readEntries(DataInput dataInput) throws IOException {
+        byte[][] distinct = new byte[readVarInt(dataInput)][];
+        for (int i = 0; i < distinct.length; i++) {
+            distinct[i] = new byte[readVarInt(dataInput)];
+            dataInput.readFully(distinct[i]);
+        }
+
+        byte[][] entries = new byte[readVarInt(dataInput)][];
+        for (int i = 0; i < entries.length; i++) {
+            int index = readVarInt(dataInput);
+            if (index < 0 || index >= distinct.length)
+                throw new IOException("Invalid dictionary index " + index);
+            entries[i] = distinct[index];
+        }
+
+        return entries;
+    }
+
+    private static void writeVarInt(DataOutput dataOutput, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            dataOutput.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dataOutput.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput dataInput) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = dataInput.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("VarInt is too large");
+    }
+
+    private static class Key {
+
+        private final byte[] value;
+        private final int hash;
+
+        private Key(byte[] value) {
+            this.value = value;
+            this.hash = Arrays.hashCode(value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+
+            if (!(o instanceof Key other))
+                return false;
+
+            return this.hash == other.hash && Arrays.equals(this.value, other.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+    }
+
+}
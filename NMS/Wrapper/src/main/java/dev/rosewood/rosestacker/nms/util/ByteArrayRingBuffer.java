@@ -0,0 +1,163 @@
+package dev.rosewood.rosestacker.nms.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A thread-safe double-ended queue of byte arrays backed by a growable circular array.
+ * Provides O(1) access by index and O(1) insertion and removal at both ends without allocating a node per entry.
+ */
+public class ByteArrayRingBuffer {
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private byte[][] elements;
+    private int head;
+    private int size;
+
+    public ByteArrayRingBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ByteArrayRingBuffer(int initialCapacity) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < initialCapacity)
+            capacity <<= 1;
+        this.elements = new byte[capacity][];
+    }
+
+    /**
+     * Adds an entry to the front
+     *
+     * @param element The entry to add
+     */
+    public synchronized void addFirst(byte[] element) {
+        this.ensureCapacity(this.size + 1);
+        this.head = (this.head - 1) & (this.elements.length - 1);
+        this.elements[this.head] = element;
+        this.size++;
+    }
+
+    /**
+     * Adds an entry to the end
+     *
+     * @param element The entry to add
+     */
+    public synchronized void addLast(byte[] element) {
+        this.ensureCapacity(this.size + 1);
+        this.elements[(this.head + this.size) & (this.elements.length - 1)] = element;
+        this.size++;
+    }
+
+    /**
+     * Gets an entry by its index from the front
+     *
+     * @param index The index of the entry
+     * @return the entry at the index
+     */
+    public synchronized byte[] get(int index) {
+        if (index < 0 || index >= this.size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        return this.elements[(this.head + index) & (this.elements.length - 1)];
+    }
+
+    /**
+     * @return the entry at the front
+     * @throws NoSuchElementException if there are no entries
+     */
+    public synchronized byte[] peekFirst() {
+        if (this.size == 0)
+            throw new NoSuchElementException();
+        return this.elements[this.head];
+    }
+
+    /**
+     * Gets and removes the entry at the front
+     *
+     * @return the entry at the front
+     * @throws NoSuchElementException if there are no entries
+     */
+    public synchronized byte[] removeFirst() {
+        if (this.size == 0)
+            throw new NoSuchElementException();
+
+        byte[] element = this.elements[this.head];
+        this.elements[this.head] = null;
+        this.head = (this.head + 1) & (this.elements.length - 1);
+        this.size--;
+        return element;
+    }
+
+    /**
+     * Copies a number of entries from the front into a new array
+     *
+     * @param count The maximum number of entries to copy
+     * @return an array of at most count entries, in order from the front
+     */
+    public synchronized byte[][] toArray(int count) {
+        int amount = Math.min(Math.max(count, 0), this.size);
+        byte[][] copy = new byte[amount][];
+        int firstPart = Math.min(amount, this.elements.length - this.head);
+        System.arraycopy(this.elements, this.head, copy, 0, firstPart);
+        System.arraycopy(this.elements, 0, copy, firstPart, amount - firstPart);
+        return copy;
+    }
+
+    /**
+     * Removes all entries past a number of entries from the front
+     *
+     * @param size The number of entries to keep
+     * @return the removed entries, in order from the front
+     */
+    public synchronized byte[][] truncate(int size) {
+        int keep = Math.max(size, 0);
+        if (keep >= this.size)
+            return new byte[0][];
+
+        byte[][] removed = new byte[this.size - keep][];
+        for (int i = 0; i < removed.length; i++) {
+            int index = (this.head + keep + i) & (this.elements.length - 1);
+            removed[i] = this.elements[index];
+            this.elements[index] = null;
+        }
+        this.size = keep;
+        return removed;
+    }
+
+    /**
+     * Removes all entries
+     */
+    public synchronized void clear() {
+        Arrays.fill(this.elements, null);
+        this.head = 0;
+        this.size = 0;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return this.size;
+    }
+
+    /**
+     * @return true if there are no entries, false otherwise
+     */
+    public synchronized boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= this.elements.length)
+            return;
+
+        int newCapacity = this.elements.length << 1;
+        while (newCapacity < required)
+            newCapacity <<= 1;
+
+        byte[][] resized = this.toArray(this.size);
+        this.elements = Arrays.copyOf(resized, newCapacity);
+        this.head = 0;
+    }
+
+}
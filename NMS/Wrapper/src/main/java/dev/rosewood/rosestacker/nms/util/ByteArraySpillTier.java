@@ -0,0 +1,354 @@
+package dev.rosewood.rosestacker.nms.util;
+
+import dev.rosewood.rosestacker.nms.storage.StackedEntityDataIOException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Keeps the memory used by all {@link SpillableByteArrayDeque}s under a global budget.
+ * Once the budget is exceeded, the cold entries of the least recently used deques are compressed and appended to spill files on disk.
+ * Spill files only hold data for the current run, data that needs to be persisted is still saved through the deques themselves.
+ * Eviction runs on a single background thread so the threads changing the deques never compress or write to disk themselves.
+ */
+public final class ByteArraySpillTier {
+
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+    private static final String FILE_PREFIX = "spill-";
+    private static final String FILE_SUFFIX = ".dat";
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final Executor EVICTOR = createEvictor();
+
+    private static final Map<Long, TrackedDeque> trackedDeques = new LinkedHashMap<>(16, 0.75F, true);
+    private static final AtomicBoolean evicting = new AtomicBoolean();
+    private static File directory;
+    private static volatile long memoryBudget = -1;
+    private static long memoryUsage;
+    private static long nextDequeId;
+    private static int nextFileId;
+    private static SpillFile activeFile;
+
+    private ByteArraySpillTier() {
+
+    }
+
+    /**
+     * Sets the memory budget and the directory to write spill files to.
+     * Spill files left over from a previous run are deleted the first time this is called.
+     *
+     * @param spillDirectory The directory to write spill files to
+     * @param budget The maximum number of bytes to keep in memory across all deques, or -1 to never spill
+     */
+    public static void configure(File spillDirectory, long budget) {
+        synchronized (ByteArraySpillTier.class) {
+            if (directory == null) {
+                directory = spillDirectory;
+                File[] staleFiles = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+                if (staleFiles != null)
+                    for (File file : staleFiles)
+                        file.delete();
+            }
+
+            memoryBudget = budget;
+        }
+
+        requestEviction();
+    }
+
+    /**
+     * @return true if a memory budget is set and deques may be spilled, false otherwise
+     */
+    static boolean isEnabled() {
+        return memoryBudget >= 0;
+    }
+
+    /**
+     * @return the approximate number of bytes held in memory by all deques, only tracked while a memory budget is set
+     */
+    public static synchronized long getMemoryUsage() {
+        return memoryUsage;
+    }
+
+    static synchronized long register(SpillableByteArrayDeque deque, Collection<Segment> segments) {
+        long id = nextDequeId++;
+        trackedDeques.put(id, new TrackedDeque(deque));
+        CLEANER.register(deque, () -> release(id, segments));
+        return id;
+    }
+
+    /**
+     * Updates the memory usage of a deque and marks it as the most recently used.
+     * Does nothing while no memory budget is set.
+     * Must not be called while holding the lock of any deque.
+     */
+    static void update(long id, long dequeMemoryUsage, boolean spillable) {
+        if (!isEnabled())
+            return;
+
+        synchronized (ByteArraySpillTier.class) {
+            TrackedDeque trackedDeque = trackedDeques.get(id);
+            if (trackedDeque == null)
+                return;
+
+            memoryUsage += dequeMemoryUsage - trackedDeque.memoryUsage;
+            trackedDeque.memoryUsage = dequeMemoryUsage;
+            trackedDeque.spillable = spillable;
+
+            if (memoryUsage <= memoryBudget)
+                return;
+        }
+
+        requestEviction();
+    }
+
+    /**
+     * Compresses and appends entries to the active spill file
+     *
+     * @param entries The entries to write
+     * @return the written segment, or null if spilling is not possible
+     */
+    static Segment write(byte[][] entries) {
+        byte[] compressed;
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+             DataOutputStream dataOutput = new DataOutputStream(new DeflaterOutputStream(outputStream, deflater))) {
+            for (byte[] entry : entries) {
+                dataOutput.writeInt(entry.length);
+                dataOutput.write(entry);
+            }
+
+            dataOutput.close();
+            compressed = outputStream.toByteArray();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            deflater.end();
+        }
+
+        synchronized (ByteArraySpillTier.class) {
+            try {
+                if (activeFile == null || activeFile.length + compressed.length > MAX_FILE_SIZE) {
+                    SpillFile previous = activeFile;
+                    activeFile = createSpillFile();
+                    if (previous != null && previous.liveBytes == 0)
+                        previous.delete();
+                }
+
+                long offset = activeFile.length;
+                ByteBuffer buffer = ByteBuffer.wrap(compressed);
+                while (buffer.hasRemaining())
+                    activeFile.channel.write(buffer, offset + buffer.position());
+
+                activeFile.length += compressed.length;
+                activeFile.liveBytes += compressed.length;
+                return new Segment(activeFile, offset, compressed.length, entries.length);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Reads the entries of a segment back from its spill file
+     *
+     * @param segment The segment to read
+     * @return the entries of the segment
+     */
+    static byte[][] read(Segment segment) {
+        ByteBuffer buffer = ByteBuffer.allocate(segment.length);
+        try {
+            while (buffer.hasRemaining())
+                if (segment.file.channel.read(buffer, segment.offset + buffer.position()) < 0)
+                    throw new IOException("Unexpected end of spill file");
+        } catch (IOException e) {
+            throw new StackedEntityDataIOException(e);
+        }
+
+        try (DataInputStream dataInput = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(buffer.array())))) {
+            byte[][] entries = new byte[segment.count][];
+            for (int i = 0; i < entries.length; i++) {
+                entries[i] = new byte[dataInput.readInt()];
+                dataInput.readFully(entries[i]);
+            }
+            return entries;
+        } catch (IOException e) {
+            throw new StackedEntityDataIOException(e);
+        }
+    }
+
+    /**
+     * Marks a segment as no longer used, deleting its spill file once nothing in it is used anymore
+     *
+     * @param segment The segment to free
+     */
+    static synchronized void free(Segment segment) {
+        SpillFile file = segment.file;
+        file.liveBytes -= segment.length;
+        if (file.liveBytes == 0 && file != activeFile)
+            file.delete();
+    }
+
+    private static void release(long id, Collection<Segment> segments) {
+        synchronized (ByteArraySpillTier.class) {
+            TrackedDeque trackedDeque = trackedDeques.remove(id);
+            if (trackedDeque != null)
+                memoryUsage -= trackedDeque.memoryUsage;
+        }
+
+        segments.forEach(ByteArraySpillTier::free);
+    }
+
+    /**
+     * Hands eviction to the background thread unless it is already evicting
+     */
+    private static void requestEviction() {
+        if (evicting.compareAndSet(false, true))
+            EVICTOR.execute(ByteArraySpillTier::evict);
+    }
+
+    /**
+     * Spills the least recently used deques until the memory usage is back under the budget.
+     * Only ever runs on the background thread.
+     */
+    private static void evict() {
+        boolean underBudget = false;
+        try {
+            while (true) {
+                SpillableByteArrayDeque victim = null;
+                synchronized (ByteArraySpillTier.class) {
+                    if (directory == null || memoryBudget < 0 || memoryUsage <= memoryBudget) {
+                        underBudget = true;
+                        return;
+                    }
+
+                    // Iterates from the least recently used deque
+                    Iterator<TrackedDeque> iterator = trackedDeques.values().iterator();
+                    while (iterator.hasNext() && victim == null) {
+                        TrackedDeque trackedDeque = iterator.next();
+                        SpillableByteArrayDeque deque = trackedDeque.reference.get();
+                        if (deque == null) {
+                            memoryUsage -= trackedDeque.memoryUsage;
+                            iterator.remove();
+                        } else if (trackedDeque.spillable) {
+                            victim = deque;
+                        }
+                    }
+                }
+
+                if (victim == null || !victim.spill())
+                    return;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            evicting.set(false);
+        }
+
+        // Usage may have gone over the budget again after it was last checked, but before another eviction could be requested
+        if (underBudget && isOverBudget())
+            requestEviction();
+    }
+
+    private static synchronized boolean isOverBudget() {
+        return directory != null && memoryBudget >= 0 && memoryUsage > memoryBudget;
+    }
+
+    private static Executor createEvictor() {
+        // The thread stops when idle so a disabled plugin does not leave it behind
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "RoseStacker Spill Eviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static SpillFile createSpillFile() throws IOException {
+        directory.mkdirs();
+        File file = new File(directory, FILE_PREFIX + nextFileId++ + FILE_SUFFIX);
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new SpillFile(file, channel);
+    }
+
+    private static class TrackedDeque {
+
+        private final WeakReference<SpillableByteArrayDeque> reference;
+        private long memoryUsage;
+        private boolean spillable;
+
+        private TrackedDeque(SpillableByteArrayDeque deque) {
+            this.reference = new WeakReference<>(deque);
+        }
+
+    }
+
+    private static class SpillFile {
+
+        private final File file;
+        private final FileChannel channel;
+        private long length;
+        private long liveBytes;
+
+        private SpillFile(File file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+
+        private void delete() {
+            try {
+                this.channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            this.file.delete();
+        }
+
+    }
+
+    /**
+     * A compressed run of entries stored in a spill file
+     */
+    static class Segment {
+
+        private final SpillFile file;
+        private final long offset;
+        private final int length;
+        private final int count;
+
+        private Segment(SpillFile file, long offset, int length, int count) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+            this.count = count;
+        }
+
+        int getCount() {
+            return this.count;
+        }
+
+    }
+
+}
@@ -0,0 +1,289 @@
+package dev.rosewood.rosestacker.nms.util;
+
+import dev.rosewood.rosestacker.nms.util.ByteArraySpillTier.Segment;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A thread-safe double-ended queue of byte arrays that keeps its hot front in memory.
+ * When {@link ByteArraySpillTier} runs over its memory budget, the entries past the front are moved to disk and are
+ * transparently read back when they are needed again.
+ * Entries interned in a {@link ByteArrayDictionary} are shared with other stacks, so only entries that are not interned
+ * count towards the memory usage of the deque.
+ */
+public class SpillableByteArrayDeque {
+
+    /**
+     * The number of entries at the front that are always kept in memory
+     */
+    private static final int HOT_ENTRIES = 32;
+
+    /**
+     * The maximum number of entries written to a single segment, limits how much is read back into memory at once
+     */
+    private static final int SEGMENT_ENTRIES = 256;
+
+    private final ByteArrayRingBuffer head;
+    private final Deque<Segment> spilled;
+    private final ByteArrayRingBuffer tail;
+    private final ByteArrayDictionary dictionary;
+    private final Map<byte[], int[]> internedReferences;
+    private final long id;
+    private int spilledCount;
+    private long memoryUsage;
+
+    /**
+     * @param initialCapacity The number of entries to make room for in memory
+     * @param dictionary The dictionary the entries are interned in, entries read back from disk are interned in it again, nullable
+     */
+    public SpillableByteArrayDeque(int initialCapacity, ByteArrayDictionary dictionary) {
+        this.head = new ByteArrayRingBuffer(Math.min(initialCapacity, HOT_ENTRIES + SEGMENT_ENTRIES));
+        this.spilled = new ArrayDeque<>();
+        this.tail = new ByteArrayRingBuffer();
+        this.dictionary = dictionary;
+        this.internedReferences = new IdentityHashMap<>();
+        this.id = ByteArraySpillTier.register(this, this.spilled);
+    }
+
+    /**
+     * Adds an entry to the front
+     *
+     * @param element The entry to add
+     */
+    public void addFirst(byte[] element) {
+        synchronized (this) {
+            this.head.addFirst(element);
+            this.charge(element);
+        }
+        this.updateTier();
+    }
+
+    /**
+     * Adds an entry to the end
+     *
+     * @param element The entry to add
+     */
+    public void addLast(byte[] element) {
+        synchronized (this) {
+            // Entries added after the middle was spilled need to stay behind it
+            if (this.spilled.isEmpty()) {
+                this.head.addLast(element);
+            } else {
+                this.tail.addLast(element);
+            }
+            this.charge(element);
+        }
+        this.updateTier();
+    }
+
+    /**
+     * @return the entry at the front
+     * @throws NoSuchElementException if there are no entries
+     */
+    public byte[] peekFirst() {
+        byte[] element;
+        synchronized (this) {
+            this.loadHead();
+            element = this.head.peekFirst();
+        }
+        this.updateTier();
+        return element;
+    }
+
+    /**
+     * Gets and removes the entry at the front
+     *
+     * @return the entry at the front
+     * @throws NoSuchElementException if there are no entries
+     */
+    public byte[] removeFirst() {
+        byte[] element;
+        synchronized (this) {
+            this.loadHead();
+            element = this.head.removeFirst();
+            this.discharge(element);
+        }
+        this.updateTier();
+        return element;
+    }
+
+    /**
+     * Copies a number of entries from the front into a new array, spilled entries are read without being loaded back into memory
+     *
+     * @param count The maximum number of entries to copy
+     * @return an array of at most count entries, in order from the front
+     */
+    public byte[][] toArray(int count) {
+        byte[][] copy;
+        synchronized (this) {
+            int amount = Math.min(Math.max(count, 0), this.size());
+            copy = new byte[amount][];
+
+            byte[][] headEntries = this.head.toArray(amount);
+            System.arraycopy(headEntries, 0, copy, 0, headEntries.length);
+            int index = headEntries.length;
+
+            Iterator<Segment> iterator = this.spilled.iterator();
+            while (index < amount && iterator.hasNext()) {
+                byte[][] segmentEntries = ByteArraySpillTier.read(iterator.next());
+                int length = Math.min(segmentEntries.length, amount - index);
+                System.arraycopy(segmentEntries, 0, copy, index, length);
+                index += length;
+            }
+
+            byte[][] tailEntries = this.tail.toArray(amount - index);
+            System.arraycopy(tailEntries, 0, copy, index, tailEntries.length);
+        }
+        this.updateTier();
+        return copy;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return this.head.size() + this.spilledCount + this.tail.size();
+    }
+
+    /**
+     * @return true if there are no entries, false otherwise
+     */
+    public synchronized boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    /**
+     * Moves every entry except for the hot front to disk
+     *
+     * @return true if any entries were spilled, false otherwise
+     */
+    boolean spill() {
+        boolean spilledAny = false;
+        synchronized (this) {
+            // Entries past the front go in front of any existing segments, write them in reverse so they stay in order
+            byte[][] cold = this.head.truncate(HOT_ENTRIES);
+            int end = cold.length;
+            while (end > 0) {
+                int start = Math.max(0, end - SEGMENT_ENTRIES);
+                byte[][] entries = this.copyRange(cold, start, end);
+                Segment segment = ByteArraySpillTier.write(entries);
+                if (segment == null) {
+                    // Unable to spill, put whatever is left back into memory
+                    for (int i = 0; i < end; i++)
+                        this.head.addLast(cold[i]);
+                    break;
+                }
+
+                this.spilled.addFirst(segment);
+                this.spilledCount += entries.length;
+                this.discharge(entries);
+                spilledAny = true;
+                end = start;
+            }
+
+            // Entries at the end go behind any existing segments
+            if (!this.spilled.isEmpty() && !this.tail.isEmpty()) {
+                byte[][] entries = this.tail.toArray(this.tail.size());
+                Segment segment = ByteArraySpillTier.write(entries);
+                if (segment != null) {
+                    this.tail.clear();
+                    this.spilled.addLast(segment);
+                    this.spilledCount += entries.length;
+                    this.discharge(entries);
+                    spilledAny = true;
+                }
+            }
+        }
+        this.updateTier();
+        return spilledAny;
+    }
+
+    /**
+     * Makes sure there are entries in memory at the front if any entries exist
+     */
+    private void loadHead() {
+        if (!this.head.isEmpty() || this.spilled.isEmpty())
+            return;
+
+        Segment segment = this.spilled.removeFirst();
+        byte[][] entries = ByteArraySpillTier.read(segment);
+        ByteArraySpillTier.free(segment);
+        this.spilledCount -= entries.length;
+        for (byte[] entry : entries) {
+            // Entries are read back as copies, share them with the rest of the stacks again
+            if (this.dictionary != null)
+                entry = this.dictionary.intern(entry);
+            this.head.addLast(entry);
+            this.charge(entry);
+        }
+
+        // Nothing is left on disk, move the end back behind the front so new entries can be added directly to it
+        if (this.spilled.isEmpty()) {
+            for (byte[] entry : this.tail.toArray(this.tail.size()))
+                this.head.addLast(entry);
+            this.tail.clear();
+        }
+    }
+
+    private void updateTier() {
+        if (!ByteArraySpillTier.isEnabled())
+            return;
+
+        long memoryUsage;
+        boolean spillable;
+        synchronized (this) {
+            memoryUsage = this.memoryUsage;
+            // Spilling only interned entries would not free any memory
+            spillable = memoryUsage > 0 && (this.head.size() > HOT_ENTRIES || (!this.spilled.isEmpty() && !this.tail.isEmpty()));
+        }
+        ByteArraySpillTier.update(this.id, memoryUsage, spillable);
+    }
+
+    private byte[][] copyRange(byte[][] entries, int start, int end) {
+        byte[][] range = new byte[end - start][];
+        System.arraycopy(entries, start, range, 0, range.length);
+        return range;
+    }
+
+    /**
+     * Counts an entry that was put in memory towards the memory usage, unless it is interned and already held by the dictionary.
+     * An entry is only checked against the dictionary the first time it is put in memory, so removing it always undoes
+     * exactly what was charged even if the dictionary has dropped it since.
+     *
+     * @param entry The entry put in memory
+     */
+    private void charge(byte[] entry) {
+        int[] references = this.internedReferences.get(entry);
+        if (references != null) {
+            references[0]++;
+        } else if (this.dictionary != null && this.dictionary.isInterned(entry)) {
+            this.internedReferences.put(entry, new int[] { 1 });
+        } else {
+            this.memoryUsage += entry.length;
+        }
+    }
+
+    /**
+     * Undoes the charge of an entry that was taken out of memory
+     *
+     * @param entry The entry taken out of memory
+     */
+    private void discharge(byte[] entry) {
+        int[] references = this.internedReferences.get(entry);
+        if (references == null) {
+            this.memoryUsage -= entry.length;
+        } else if (--references[0] == 0) {
+            this.internedReferences.remove(entry);
+        }
+    }
+
+    private void discharge(byte[][] entries) {
+        for (byte[] entry : entries)
+            this.discharge(entry);
+    }
+
+}
@@ -8,6 +8,7 @@ import dev.rosewood.rosestacker.nms.hologram.Hologram;
 import dev.rosewood.rosestacker.nms.spawner.StackedSpawnerTile;
 import dev.rosewood.rosestacker.nms.storage.StackedEntityDataEntry;
 import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorage;
+import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorageType;
 import dev.rosewood.rosestacker.nms.util.ReflectionUtils;
 import dev.rosewood.rosestacker.nms.v1_16_R3.entity.DataWatcherWrapper;
 import dev.rosewood.rosestacker.nms.v1_16_R3.entity.SoloEntitySpider;
@@ -16,6 +17,7 @@ import dev.rosewood.rosestacker.nms.v1_16_R3.hologram.HologramImpl;
 import dev.rosewood.rosestacker.nms.v1_16_R3.spawner.StackedSpawnerTileImpl;
 import dev.rosewood.rosestacker.nms.v1_16_R3.storage.NBTStackedEntityDataEntry;
 import dev.rosewood.rosestacker.nms.v1_16_R3.storage.NBTStackedEntityDataStorage;
+import dev.rosewood.rosestacker.nms.v1_16_R3.storage.SimpleStackedEntityDataStorage;
 import dev.rosewood.rosestacker.stack.StackedSpawner;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
@@ -60,10 +62,12 @@ import net.minecraft.server.v1_16_R3.NBTTagCompound;
 import net.minecraft.server.v1_16_R3.NBTTagDouble;
 import net.minecraft.server.v1_16_R3.NBTTagFloat;
 import net.minecraft.server.v1_16_R3.NBTTagList;
+import net.minecraft.server.v1_16_R3.Packet;
 import net.minecraft.server.v1_16_R3.PacketPlayOutEntityMetadata;
 import net.minecraft.server.v1_16_R3.PathfinderGoalFloat;
 import net.minecraft.server.v1_16_R3.PathfinderGoalSelector;
 import net.minecraft.server.v1_16_R3.PathfinderGoalWrapped;
+import net.minecraft.server.v1_16_R3.PlayerConnection;
 import net.minecraft.server.v1_16_R3.RayTrace;
 import net.minecraft.server.v1_16_R3.TileEntity;
 import net.minecraft.server.v1_16_R3.TileEntityMobSpawner;
@@ -441,13 +445,19 @@ public class NMSHandlerImpl implements NMSHandler {
     }
 
     @Override
-    public StackedEntityDataStorage createEntityDataStorage(LivingEntity livingEntity) {
-        return new NBTStackedEntityDataStorage(livingEntity);
+    public StackedEntityDataStorage createEntityDataStorage(LivingEntity livingEntity, StackedEntityDataStorageType storageType) {
+        return switch (storageType) {
+            case NBT -> new NBTStackedEntityDataStorage(livingEntity);
+            case SIMPLE -> new SimpleStackedEntityDataStorage(livingEntity);
+        };
     }
 
     @Override
-    public StackedEntityDataStorage deserializeEntityDataStorage(byte[] data) {
-        return new NBTStackedEntityDataStorage(data);
+    public StackedEntityDataStorage deserializeEntityDataStorage(LivingEntity livingEntity, byte[] data, StackedEntityDataStorageType storageType) {
+        return switch (storageType) {
+            case NBT -> new NBTStackedEntityDataStorage(livingEntity, data);
+            case SIMPLE -> new SimpleStackedEntityDataStorage(data);
+        };
     }
 
     @Override
@@ -470,6 +480,13 @@ public class NMSHandlerImpl implements NMSHandler {
         return new HologramImpl(entityCounter.incrementAndGet(), location, text);
     }
 
+    @Override
+    public void sendHologramPackets(Player player, List<Object> packets) {
+        PlayerConnection playerConnection = ((CraftPlayer) player).getHandle().playerConnection;
+        for (Object packet : packets)
+            playerConnection.sendPacket((Packet<?>) packet);
+    }
+
     private SpawnReason toBukkitSpawnReason(EnumMobSpawn mobSpawnType) {
         return switch (mobSpawnType) {
             case SPAWN_EGG -> SpawnReason.SPAWNER_EGG;
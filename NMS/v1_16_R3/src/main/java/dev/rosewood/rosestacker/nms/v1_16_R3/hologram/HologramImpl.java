@@ -18,9 +18,7 @@ import net.minecraft.server.v1_16_R3.ParticleParamBlock;
 import net.minecraft.server.v1_16_R3.Particles;
 import net.minecraft.server.v1_16_R3.Vec3D;
 import org.bukkit.Location;
-import org.bukkit.craftbukkit.v1_16_R3.entity.CraftPlayer;
 import org.bukkit.craftbukkit.v1_16_R3.util.CraftChatMessage;
-import org.bukkit.entity.Player;
 
 public class HologramImpl extends Hologram {
 
@@ -29,8 +27,8 @@ public class HologramImpl extends Hologram {
     }
 
     @Override
-    protected void create(Player player) {
-        PacketPlayOutSpawnEntity packet = new PacketPlayOutSpawnEntity(
+    protected Object createAddPacket() {
+        return new PacketPlayOutSpawnEntity(
                 this.entityId,
                 UUID.randomUUID(),
                 this.location.getX(),
@@ -42,16 +40,10 @@ public class HologramImpl extends Hologram {
                 1,
                 Vec3D.ORIGIN
         );
-
-        ((CraftPlayer) player).getHandle().playerConnection.sendPacket(packet);
     }
 
     @Override
-    protected void update(Player player) {
-        Boolean visible = this.watchers.get(player);
-        if (visible == null)
-            return;
-
+    protected Object createUpdatePacket(boolean visible) {
         List<DataWatcher.Item<?>> dataItems = new ArrayList<>();
         Optional<IChatBaseComponent> nameComponent = Optional.of(CraftChatMessage.fromStringOrNull(this.text));
         dataItems.add(new DataWatcher.Item<>(DataWatcherRegistry.f.a(2), nameComponent));
@@ -60,15 +52,12 @@ public class HologramImpl extends Hologram {
         dataItems.add(new DataWatcher.Item<>(DataWatcherRegistry.i.a(9), true));
         dataItems.add(new DataWatcher.Item<>(DataWatcherRegistry.j.a(10), new ParticleParamBlock(Particles.BLOCK, Blocks.AIR.getBlockData())));
 
-        PacketPlayOutEntityMetadata packet = new PacketPlayOutEntityMetadata(this.entityId, new DataWatcherWrapper(dataItems), false);
-        ((CraftPlayer) player).getHandle().playerConnection.sendPacket(packet);
+        return new PacketPlayOutEntityMetadata(this.entityId, new DataWatcherWrapper(dataItems), false);
     }
 
     @Override
-    protected void delete(Player player) {
-        PacketPlayOutEntityDestroy packet = new PacketPlayOutEntityDestroy(this.entityId);
-
-        ((CraftPlayer) player).getHandle().playerConnection.sendPacket(packet);
+    protected Object createRemovePacket() {
+        return new PacketPlayOutEntityDestroy(this.entityId);
     }
 
 }
@@ -3,6 +3,7 @@ package dev.rosewood.rosestacker.nms.v1_16_R3.spawner;
 import dev.rosewood.rosestacker.manager.ConfigurationManager.Setting;
 import dev.rosewood.rosestacker.nms.spawner.StackedSpawnerTile;
 import dev.rosewood.rosestacker.spawner.spawning.MobSpawningMethod;
+import dev.rosewood.rosestacker.stack.SpawnerTickScheduler;
 import dev.rosewood.rosestacker.stack.StackedSpawner;
 import dev.rosewood.rosestacker.stack.settings.SpawnerStackSettings;
 import java.util.Arrays;
@@ -27,10 +28,16 @@ public class StackedSpawnerTileImpl extends MobSpawnerAbstract implements Stacke
     private final BlockPosition blockPos;
     private final StackedSpawner stackedSpawner;
     private boolean redstoneDeactivated;
-    private int redstoneTimeSinceLastCheck;
     private boolean playersNearby;
-    private int playersTimeSinceLastCheck;
     private boolean checkedInitialConditions;
+    private MobSpawningMethod spawningMethod;
+    private SpawnerTickScheduler scheduler;
+    private boolean scheduled;
+    private boolean countingDown;
+    private long lastServerTick;
+    private long lastRunTick;
+    private long nextPlayerCheckTick;
+    private long nextRedstoneCheckTick;
 
     public StackedSpawnerTileImpl(MobSpawnerAbstract old, TileEntityMobSpawner blockEntity, StackedSpawner stackedSpawner) {
         this.blockEntity = blockEntity;
@@ -42,17 +49,48 @@ public class StackedSpawnerTileImpl extends MobSpawnerAbstract implements Stacke
 
     @Override
     public void c() {
+        // The spawner logic is run by the scheduler, this only lets it know that the spawner is still being ticked
+        if (this.scheduler == null || this.scheduler.isClosed()) {
+            this.scheduler = SpawnerTickScheduler.get(this.stackedSpawner.getWorld());
+            this.scheduled = false;
+            if (this.scheduler == null)
+                return;
+        }
+
+        this.lastServerTick = this.scheduler.getCurrentTick();
+        if (!this.scheduled) {
+            this.scheduled = true;
+            this.countingDown = false;
+            this.lastRunTick = this.lastServerTick;
+            this.nextPlayerCheckTick = this.lastServerTick + 1;
+            this.nextRedstoneCheckTick = this.lastServerTick + 1;
+            this.scheduler.schedule(this, this.lastServerTick + 1);
+        }
+    }
+
+    @Override
+    public long tick(long currentTick) {
         World level = this.a();
-        if (level == null)
-            return;
+        if (level == null || currentTick - this.lastServerTick > 1) {
+            // The spawner is no longer being ticked, it will be scheduled again once it is
+            this.scheduled = false;
+            return -1;
+        }
+
+        // Count down the spawn timer for the ticks the spawner was not run for
+        if (this.countingDown)
+            this.spawnDelay = (int) Math.max(0, this.spawnDelay - (currentTick - this.lastRunTick - 1));
+        this.countingDown = false;
+        this.lastRunTick = currentTick;
 
         // Only tick the spawner if a player is nearby
-        this.playersTimeSinceLastCheck = (this.playersTimeSinceLastCheck + 1) % Setting.SPAWNER_PLAYER_CHECK_FREQUENCY.getInt();
-        if (this.playersTimeSinceLastCheck == 0)
-            this.playersNearby = this.isNearPlayer(level, this.blockPos);
+        if (currentTick >= this.nextPlayerCheckTick) {
+            this.playersNearby = this.isNearPlayer(this.blockPos);
+            this.nextPlayerCheckTick = currentTick + Math.max(1, Setting.SPAWNER_PLAYER_CHECK_FREQUENCY.getInt());
+        }
 
         if (!this.playersNearby)
-            return;
+            return this.nextPlayerCheckTick;
 
         if (!this.checkedInitialConditions) {
             this.checkedInitialConditions = true;
@@ -60,10 +98,11 @@ public class StackedSpawnerTileImpl extends MobSpawnerAbstract implements Stacke
         }
 
         SpawnerStackSettings stackSettings = this.stackedSpawner.getStackSettings();
+        long nextTick = this.nextPlayerCheckTick;
 
         // Handle redstone deactivation if enabled
         if (Setting.SPAWNER_DEACTIVATE_WHEN_POWERED.getBoolean()) {
-            if (this.redstoneTimeSinceLastCheck == 0) {
+            if (currentTick >= this.nextRedstoneCheckTick) {
                 boolean hasSignal = level.isBlockIndirectlyPowered(this.blockPos);
                 if (this.redstoneDeactivated && !hasSignal) {
                     this.redstoneDeactivated = false;
@@ -75,17 +114,19 @@ public class StackedSpawnerTileImpl extends MobSpawnerAbstract implements Stacke
                     this.updateTile();
                 }
 
-                if (this.redstoneDeactivated)
-                    return;
+                this.nextRedstoneCheckTick = currentTick + Math.max(1, Setting.SPAWNER_POWERED_CHECK_FREQUENCY.getInt());
             }
 
-            this.redstoneTimeSinceLastCheck = (this.redstoneTimeSinceLastCheck + 1) % Setting.SPAWNER_POWERED_CHECK_FREQUENCY.getInt();
+            nextTick = Math.min(nextTick, this.nextRedstoneCheckTick);
+            if (this.redstoneDeactivated)
+                return nextTick;
         }
 
         // Count down spawn timer unless we are ready to spawn
+        this.countingDown = true;
         if (this.spawnDelay > 0) {
             this.spawnDelay--;
-            return;
+            return Math.min(nextTick, currentTick + this.spawnDelay + 1);
         }
 
         // Reset spawn delay
@@ -98,6 +139,8 @@ public class StackedSpawnerTileImpl extends MobSpawnerAbstract implements Stacke
         // Randomize spawn potentials
         if (!this.mobs.isEmpty())
             this.setSpawnData(WeightedRandom.a(this.a().random, this.mobs));
+
+        return Math.min(nextTick, currentTick + this.spawnDelay + 1);
     }
 
     private void trySpawns(boolean onlyCheckConditions) {
@@ -107,8 +150,11 @@ public class StackedSpawnerTileImpl extends MobSpawnerAbstract implements Stacke
                 if (resourceLocation != null) {
                     NamespacedKey namespacedKey = CraftNamespacedKey.fromMinecraft(resourceLocation);
                     EntityType entityType = this.fromKey(namespacedKey);
-                    if (entityType != null)
-                        new MobSpawningMethod(entityType).spawn(this.stackedSpawner, onlyCheckConditions);
+                    if (entityType != null) {
+                        if (this.spawningMethod == null || this.spawningMethod.getEntityType() != entityType)
+                            this.spawningMethod = new MobSpawningMethod(entityType);
+                        this.spawningMethod.spawn(this.stackedSpawner, onlyCheckConditions);
+                    }
                 }
             }
         } catch (Exception e) {
@@ -157,10 +203,10 @@ public class StackedSpawnerTileImpl extends MobSpawnerAbstract implements Stacke
         }
     }
 
-    private boolean isNearPlayer(World level, BlockPosition blockPos) {
+    private boolean isNearPlayer(BlockPosition blockPos) {
         if (this.requiredPlayerRange < 0)
             return true;
-        return level.isPlayerNearby((double) blockPos.getX() + 0.5D, (double) blockPos.getY() + 0.5D, (double) blockPos.getZ() + 0.5D, Math.max(this.stackedSpawner.getStackSettings().getPlayerActivationRange(), 0.1));
+        return this.scheduler.getPlayerIndex().isPlayerNearby((double) blockPos.getX() + 0.5D, (double) blockPos.getY() + 0.5D, (double) blockPos.getZ() + 0.5D, Math.max(this.stackedSpawner.getStackSettings().getPlayerActivationRange(), 0.1));
     }
 
     private void loadOld(MobSpawnerAbstract baseSpawner) {
@@ -197,12 +243,21 @@ public class StackedSpawnerTileImpl extends MobSpawnerAbstract implements Stacke
 
     @Override
     public int getDelay() {
+        // The spawn timer is only updated when the spawner is run, count down the ticks since then
+        if (this.countingDown)
+            return (int) Math.max(0, this.spawnDelay - (this.scheduler.getCurrentTick() - this.lastRunTick));
         return this.spawnDelay;
     }
 
     @Override
     public void setDelay(int delay) {
         this.spawnDelay = delay;
+        if (this.scheduled) {
+            // Run the spawner on the next tick so the new delay is counted down from now
+            this.countingDown = false;
+            this.lastRunTick = this.scheduler.getCurrentTick();
+            this.scheduler.schedule(this, this.lastRunTick + 1);
+        }
         this.updateTile();
     }
 
@@ -3,17 +3,20 @@ package dev.rosewood.rosestacker.nms.v1_16_R3.storage;
 import dev.rosewood.rosestacker.nms.storage.StackedEntityDataEntry;
 import dev.rosewood.rosestacker.nms.storage.StackedEntityDataIOException;
 import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorage;
+import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorageType;
+import dev.rosewood.rosestacker.nms.util.ByteArrayDictionary;
 import dev.rosewood.rosestacker.nms.util.ReflectionUtils;
+import dev.rosewood.rosestacker.nms.util.SpillableByteArrayDeque;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
+import java.io.DataInputStream;
 import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
 import net.minecraft.server.v1_16_R3.EntityVillagerAbstract;
@@ -30,29 +33,49 @@ import org.bukkit.entity.LivingEntity;
 public class NBTStackedEntityDataStorage implements StackedEntityDataStorage {
 
     private static final Field field_AbstractVillager_offers = ReflectionUtils.getFieldByName(EntityVillagerAbstract.class, "trades");
+    private static final int COMPACT_FORMAT_MAGIC = 0x52534431;
     private final NBTTagCompound base;
-    private final List<NBTTagCompound> data;
+    private final SpillableByteArrayDeque data;
+    private final ByteArrayDictionary dictionary;
 
     public NBTStackedEntityDataStorage(LivingEntity livingEntity) {
         this.base = new NBTTagCompound();
+        this.dictionary = ByteArrayDictionary.forType(livingEntity.getType());
 
-        this.saveToTag(livingEntity, this.base);
-        this.stripUnneeded(this.base);
-        this.stripAttributeUuids(this.base);
+        saveToTag(livingEntity, this.base);
+        stripUnneeded(this.base);
+        stripAttributeUuids(this.base);
 
-        this.data = Collections.synchronizedList(new LinkedList<>());
+        this.data = new SpillableByteArrayDeque(0, this.dictionary);
     }
 
-    public NBTStackedEntityDataStorage(byte[] data) {
+    public NBTStackedEntityDataStorage(LivingEntity livingEntity, byte[] data) {
+        this.dictionary = ByteArrayDictionary.forType(livingEntity != null ? livingEntity.getType() : null);
+
+        if (isCompactFormat(data)) {
+            try (DataInputStream dataInput = new DataInputStream(new ByteArrayInputStream(data))) {
+                dataInput.readInt(); // Magic number
+
+                this.base = NBTCompressedStreamTools.a((DataInput) dataInput);
+                byte[][] entries = ByteArrayDictionary.readEntries(dataInput);
+                this.data = new SpillableByteArrayDeque(entries.length, this.dictionary);
+                for (byte[] entry : entries)
+                    this.data.addLast(this.dictionary.intern(entry));
+            } catch (Exception e) {
+                throw new StackedEntityDataIOException(e);
+            }
+            return;
+        }
+
+        // Legacy format, every entry is written out in full
         try (ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
              ObjectInputStream dataInput = new ObjectInputStream(inputStream)) {
 
             this.base = NBTCompressedStreamTools.a((DataInput) dataInput);
             int length = dataInput.readInt();
-            List<NBTTagCompound> tags = new LinkedList<>();
+            this.data = new SpillableByteArrayDeque(length, this.dictionary);
             for (int i = 0; i < length; i++)
-                tags.add(NBTCompressedStreamTools.a((DataInput) dataInput));
-            this.data = Collections.synchronizedList(tags);
+                this.data.addLast(this.dictionary.intern(this.encode(NBTCompressedStreamTools.a((DataInput) dataInput))));
         } catch (Exception e) {
             throw new StackedEntityDataIOException(e);
         }
@@ -60,32 +83,72 @@ public class NBTStackedEntityDataStorage implements StackedEntityDataStorage {
 
     @Override
     public void addFirst(LivingEntity entity) {
-        this.addAt(0, entity);
+        this.data.addFirst(this.compress(entity));
     }
 
     @Override
     public void addLast(LivingEntity entity) {
-        this.addAt(this.data.size(), entity);
+        this.data.addLast(this.compress(entity));
+    }
+
+    @Override
+    public void addCopiesFirst(LivingEntity entity, int amount) {
+        this.addCopiesFirst(this.compress(entity), amount);
+    }
+
+    @Override
+    public void addCopiesLast(LivingEntity entity, int amount) {
+        this.addCopiesLast(this.compress(entity), amount);
     }
 
     @Override
     public void addAllFirst(List<StackedEntityDataEntry<?>> stackedEntityDataEntry) {
-        stackedEntityDataEntry.forEach(x -> this.addAt(0, x));
+        stackedEntityDataEntry.forEach(x -> this.data.addFirst(this.compress(x)));
+    }
+
+    @Override
+    public void addAllFirst(StackedEntityDataStorage stackedEntityDataStorage) {
+        // Every entry of a simple storage is the same, so it only has to be compressed once
+        if (stackedEntityDataStorage instanceof SimpleStackedEntityDataStorage simpleStorage) {
+            this.addCopiesFirst(this.compress(simpleStorage.copyBase()), simpleStorage.size());
+        } else {
+            this.addAllFirst(stackedEntityDataStorage.getAll());
+        }
     }
 
     @Override
     public void addAllLast(List<StackedEntityDataEntry<?>> stackedEntityDataEntry) {
-        stackedEntityDataEntry.forEach(x -> this.addAt(this.data.size(), x));
+        stackedEntityDataEntry.forEach(x -> this.data.addLast(this.compress(x)));
+    }
+
+    @Override
+    public void addAllLast(StackedEntityDataStorage stackedEntityDataStorage) {
+        // Every entry of a simple storage is the same, so it only has to be compressed once
+        if (stackedEntityDataStorage instanceof SimpleStackedEntityDataStorage simpleStorage) {
+            this.addCopiesLast(this.compress(simpleStorage.copyBase()), simpleStorage.size());
+        } else {
+            this.addAllLast(stackedEntityDataStorage.getAll());
+        }
+    }
+
+    private void addCopiesFirst(byte[] compressed, int amount) {
+        for (int i = 0; i < amount; i++)
+            this.data.addFirst(compressed);
+    }
+
+    private void addCopiesLast(byte[] compressed, int amount) {
+        for (int i = 0; i < amount; i++)
+            this.data.addLast(compressed);
     }
 
     @Override
     public NBTStackedEntityDataEntry peek() {
-        return new NBTStackedEntityDataEntry(this.rebuild(this.data.get(0)));
+        return new NBTStackedEntityDataEntry(this.rebuild(this.data.peekFirst()));
     }
 
     @Override
     public NBTStackedEntityDataEntry pop() {
-        return new NBTStackedEntityDataEntry(this.rebuild(this.data.remove(0)));
+        return new NBTStackedEntityDataEntry(this.rebuild(this.data.removeFirst()));
     }
 
     @Override
@@ -100,37 +163,29 @@ public class NBTStackedEntityDataStorage implements StackedEntityDataStorage {
 
     @Override
     public List<StackedEntityDataEntry<?>> getAll() {
-        List<StackedEntityDataEntry<?>> wrapped = new ArrayList<>(this.data.size());
-        for (NBTTagCompound compoundTag : new ArrayList<>(this.data))
-            wrapped.add(new NBTStackedEntityDataEntry(this.rebuild(compoundTag)));
-        return wrapped;
+        return this.getTop(Integer.MAX_VALUE);
     }
 
     @Override
     public List<StackedEntityDataEntry<?>> getTop(int count) {
-        if (count > this.data.size())
-            count = this.data.size();
-
-        List<StackedEntityDataEntry<?>> wrapped = new ArrayList<>(count);
-        for (int i = 0; i < count; i++)
-            wrapped.add(new NBTStackedEntityDataEntry(this.rebuild(this.data.get(i))));
+        byte[][] entries = this.data.toArray(count);
+        List<StackedEntityDataEntry<?>> wrapped = new ArrayList<>(entries.length);
+        for (byte[] entry : entries)
+            wrapped.add(new NBTStackedEntityDataEntry(this.rebuild(entry)));
         return wrapped;
     }
 
     @Override
     public byte[] serialize(int maxAmount) {
         try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-             ObjectOutputStream dataOutput = new ObjectOutputStream(outputStream)) {
+             DataOutputStream dataOutput = new DataOutputStream(outputStream)) {
 
-            int targetAmount = Math.min(maxAmount, this.data.size());
-            List<NBTTagCompound> tagsToSave = new ArrayList<>(targetAmount);
-            for (int i = 0; i < targetAmount; i++)
-                tagsToSave.add(this.data.get(i));
+            // Entries are already encoded as NBT, identical entries only get written once
+            byte[][] entriesToSave = this.data.toArray(maxAmount);
 
+            dataOutput.writeInt(COMPACT_FORMAT_MAGIC);
             NBTCompressedStreamTools.a(this.base, (DataOutput) dataOutput);
-            dataOutput.writeInt(tagsToSave.size());
-            for (NBTTagCompound compoundTag : tagsToSave)
-                NBTCompressedStreamTools.a(compoundTag, (DataOutput) dataOutput);
+            ByteArrayDictionary.writeEntries(dataOutput, entriesToSave);
 
             dataOutput.close();
             return outputStream.toByteArray();
@@ -139,21 +194,51 @@ public class NBTStackedEntityDataStorage implements StackedEntityDataStorage {
         }
     }
 
-    private void addAt(int index, LivingEntity livingEntity) {
+    @Override
+    public StackedEntityDataStorageType getType() {
+        return StackedEntityDataStorageType.NBT;
+    }
+
+    private byte[] compress(LivingEntity livingEntity) {
         NBTTagCompound compoundTag = new NBTTagCompound();
-        this.saveToTag(livingEntity, compoundTag);
-        this.stripUnneeded(compoundTag);
-        this.stripAttributeUuids(compoundTag);
+        saveToTag(livingEntity, compoundTag);
+        stripUnneeded(compoundTag);
+        stripAttributeUuids(compoundTag);
         this.removeDuplicates(compoundTag);
-        this.data.add(index, compoundTag);
+        return this.dictionary.intern(this.encode(compoundTag));
     }
 
-    private void addAt(int index, StackedEntityDataEntry<?> stackedEntityDataEntry) {
-        NBTTagCompound compoundTag = (NBTTagCompound) stackedEntityDataEntry.get();
-        this.stripUnneeded(compoundTag);
-        this.stripAttributeUuids(compoundTag);
+    private byte[] compress(StackedEntityDataEntry<?> stackedEntityDataEntry) {
+        return this.compress((NBTTagCompound) stackedEntityDataEntry.get());
+    }
+
+    private byte[] compress(NBTTagCompound compoundTag) {
+        stripUnneeded(compoundTag);
+        stripAttributeUuids(compoundTag);
         this.removeDuplicates(compoundTag);
-        this.data.add(index, compoundTag);
+        return this.dictionary.intern(this.encode(compoundTag));
+    }
+
+    private byte[] encode(NBTTagCompound compoundTag) {
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+             DataOutputStream dataOutput = new DataOutputStream(outputStream)) {
+            NBTCompressedStreamTools.a(compoundTag, (DataOutput) dataOutput);
+            return outputStream.toByteArray();
+        } catch (IOException e) {
+            throw new StackedEntityDataIOException(e);
+        }
+    }
+
+    private NBTTagCompound decode(byte[] data) {
+        try (DataInputStream dataInput = new DataInputStream(new ByteArrayInputStream(data))) {
+            return NBTCompressedStreamTools.a((DataInput) dataInput);
+        } catch (IOException e) {
+            throw new StackedEntityDataIOException(e);
+        }
+    }
+
+    private static boolean isCompactFormat(byte[] data) {
+        return data.length >= 4 && ((data[0] & 0xFF) << 24 | (data[1] & 0xFF) << 16 | (data[2] & 0xFF) << 8 | (data[3] & 0xFF)) == COMPACT_FORMAT_MAGIC;
     }
 
     private void removeDuplicates(NBTTagCompound compoundTag) {
@@ -165,15 +250,15 @@ public class NBTStackedEntityDataStorage implements StackedEntityDataStorage {
         }
     }
 
-    private NBTTagCompound rebuild(NBTTagCompound compoundTag) {
+    private NBTTagCompound rebuild(byte[] data) {
         NBTTagCompound merged = new NBTTagCompound();
         merged.a(this.base);
-        merged.a(compoundTag);
-        this.fillAttributeUuids(merged);
+        merged.a(this.decode(data));
+        fillAttributeUuids(merged);
         return merged;
     }
 
-    private void saveToTag(LivingEntity livingEntity, NBTTagCompound compoundTag) {
+    static void saveToTag(LivingEntity livingEntity, NBTTagCompound compoundTag) {
         // Async villager "fix", if the trades aren't loaded yet force them to save as empty, they will get loaded later
         if (livingEntity instanceof AbstractVillager) {
             try {
@@ -199,7 +284,7 @@ public class NBTStackedEntityDataStorage implements StackedEntityDataStorage {
         }
     }
 
-    private void stripUnneeded(NBTTagCompound compoundTag) {
+    static void stripUnneeded(NBTTagCompound compoundTag) {
         compoundTag.remove("UUID");
         compoundTag.remove("Pos");
         compoundTag.remove("Rotation");
@@ -216,7 +301,7 @@ public class NBTStackedEntityDataStorage implements StackedEntityDataStorage {
         bukkitValues.remove("rosestacker:stacked_entity_data");
     }
 
-    private void stripAttributeUuids(NBTTagCompound compoundTag) {
+    static void stripAttributeUuids(NBTTagCompound compoundTag) {
         NBTTagList attributes = compoundTag.getList("Attributes", 10);
         for (int i = 0; i < attributes.size(); i++) {
             NBTTagCompound attribute = attributes.getCompound(i);
@@ -234,7 +319,7 @@ public class NBTStackedEntityDataStorage implements StackedEntityDataStorage {
         }
     }
 
-    private void fillAttributeUuids(NBTTagCompound compoundTag) {
+    static void fillAttributeUuids(NBTTagCompound compoundTag) {
         NBTTagList attributes = compoundTag.getList("Attributes", 10);
         for (int i = 0; i < attributes.size(); i++) {
             NBTTagCompound attribute = attributes.getCompound(i);
@@ -0,0 +1,163 @@
+package dev.rosewood.rosestacker.nms.v1_16_R3.storage;
+
+import dev.rosewood.rosestacker.nms.storage.StackedEntityDataEntry;
+import dev.rosewood.rosestacker.nms.storage.StackedEntityDataIOException;
+import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorage;
+import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorageType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import net.minecraft.server.v1_16_R3.NBTCompressedStreamTools;
+import net.minecraft.server.v1_16_R3.NBTTagCompound;
+import org.bukkit.entity.LivingEntity;
+
+/**
+ * Stores only a single template entity and a count, every entry in the stack is an identical copy of the template.
+ * Uses a constant amount of memory regardless of the stack size at the cost of not preserving individual entity data.
+ */
+public class SimpleStackedEntityDataStorage implements StackedEntityDataStorage {
+
+    private final NBTTagCompound base;
+    private int size;
+
+    public SimpleStackedEntityDataStorage(LivingEntity livingEntity) {
+        this.base = new NBTTagCompound();
+
+        NBTStackedEntityDataStorage.saveToTag(livingEntity, this.base);
+        NBTStackedEntityDataStorage.stripUnneeded(this.base);
+        NBTStackedEntityDataStorage.stripAttributeUuids(this.base);
+    }
+
+    public SimpleStackedEntityDataStorage(byte[] data) {
+        try (ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
+             DataInputStream dataInput = new DataInputStream(inputStream)) {
+
+            this.base = NBTCompressedStreamTools.a((DataInput) dataInput);
+            this.size = dataInput.readInt();
+        } catch (Exception e) {
+            throw new StackedEntityDataIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void addFirst(LivingEntity entity) {
+        this.size++;
+    }
+
+    @Override
+    public synchronized void addLast(LivingEntity entity) {
+        this.size++;
+    }
+
+    @Override
+    public synchronized void addCopiesFirst(LivingEntity entity, int amount) {
+        this.size += amount;
+    }
+
+    @Override
+    public synchronized void addCopiesLast(LivingEntity entity, int amount) {
+        this.size += amount;
+    }
+
+    @Override
+    public synchronized void addAllFirst(List<StackedEntityDataEntry<?>> stackedEntityDataEntry) {
+        this.size += stackedEntityDataEntry.size();
+    }
+
+    @Override
+    public synchronized void addAllLast(List<StackedEntityDataEntry<?>> stackedEntityDataEntry) {
+        this.size += stackedEntityDataEntry.size();
+    }
+
+    @Override
+    public synchronized void addAllFirst(StackedEntityDataStorage stackedEntityDataStorage) {
+        this.size += stackedEntityDataStorage.size();
+    }
+
+    @Override
+    public synchronized void addAllLast(StackedEntityDataStorage stackedEntityDataStorage) {
+        this.size += stackedEntityDataStorage.size();
+    }
+
+    @Override
+    public synchronized NBTStackedEntityDataEntry peek() {
+        if (this.size == 0)
+            throw new NoSuchElementException();
+        return new NBTStackedEntityDataEntry(this.rebuild());
+    }
+
+    @Override
+    public synchronized NBTStackedEntityDataEntry pop() {
+        if (this.size == 0)
+            throw new NoSuchElementException();
+        this.size--;
+        return new NBTStackedEntityDataEntry(this.rebuild());
+    }
+
+    @Override
+    public synchronized int size() {
+        return this.size;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    @Override
+    public List<StackedEntityDataEntry<?>> getAll() {
+        return this.getTop(Integer.MAX_VALUE);
+    }
+
+    @Override
+    public synchronized List<StackedEntityDataEntry<?>> getTop(int count) {
+        int amount = Math.min(Math.max(count, 0), this.size);
+        List<StackedEntityDataEntry<?>> wrapped = new ArrayList<>(amount);
+        for (int i = 0; i < amount; i++)
+            wrapped.add(new NBTStackedEntityDataEntry(this.rebuild()));
+        return wrapped;
+    }
+
+    @Override
+    public synchronized byte[] serialize(int maxAmount) {
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+             DataOutputStream dataOutput = new DataOutputStream(outputStream)) {
+
+            NBTCompressedStreamTools.a(this.base, (DataOutput) dataOutput);
+            dataOutput.writeInt(Math.min(this.size, maxAmount));
+
+            dataOutput.close();
+            return outputStream.toByteArray();
+        } catch (Exception e) {
+            throw new StackedEntityDataIOException(e);
+        }
+    }
+
+    @Override
+    public StackedEntityDataStorageType getType() {
+        return StackedEntityDataStorageType.SIMPLE;
+    }
+
+    /**
+     * @return a copy of the template entity with its attribute UUIDs stripped
+     */
+    synchronized NBTTagCompound copyBase() {
+        NBTTagCompound copy = new NBTTagCompound();
+        copy.a(this.base);
+        return copy;
+    }
+
+    private NBTTagCompound rebuild() {
+        NBTTagCompound copy = new NBTTagCompound();
+        copy.a(this.base);
+        NBTStackedEntityDataStorage.fillAttributeUuids(copy);
+        return copy;
+    }
+
+}
@@ -18,9 +18,7 @@ import net.minecraft.world.entity.EntityType;
 import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.phys.Vec3;
 import org.bukkit.Location;
-import org.bukkit.craftbukkit.v1_17_R1.entity.CraftPlayer;
 import org.bukkit.craftbukkit.v1_17_R1.util.CraftChatMessage;
-import org.bukkit.entity.Player;
 
 public class HologramImpl extends Hologram {
 
@@ -29,8 +27,8 @@ public class HologramImpl extends Hologram {
     }
 
     @Override
-    protected void create(Player player) {
-        ClientboundAddEntityPacket packet = new ClientboundAddEntityPacket(
+    protected Object createAddPacket() {
+        return new ClientboundAddEntityPacket(
                 this.entityId,
                 UUID.randomUUID(),
                 this.location.getX(),
@@ -42,16 +40,10 @@ public class HologramImpl extends Hologram {
                 1,
                 Vec3.ZERO
         );
-
-        ((CraftPlayer) player).getHandle().connection.send(packet);
     }
 
     @Override
-    protected void update(Player player) {
-        Boolean visible = this.watchers.get(player);
-        if (visible == null)
-            return;
-
+    protected Object createUpdatePacket(boolean visible) {
         List<SynchedEntityData.DataItem<?>> dataItems = new ArrayList<>();
         Optional<Component> nameComponent = Optional.of(CraftChatMessage.fromStringOrNull(this.text));
         dataItems.add(new SynchedEntityData.DataItem<>(EntityDataSerializers.OPTIONAL_COMPONENT.createAccessor(2), nameComponent));
@@ -60,15 +52,12 @@ public class HologramImpl extends Hologram {
         dataItems.add(new SynchedEntityData.DataItem<>(EntityDataSerializers.BOOLEAN.createAccessor(10), true));
         dataItems.add(new SynchedEntityData.DataItem<>(EntityDataSerializers.PARTICLE.createAccessor(11), new BlockParticleOption(ParticleTypes.BLOCK, Blocks.AIR.defaultBlockState())));
 
-        ClientboundSetEntityDataPacket packet = new ClientboundSetEntityDataPacket(this.entityId, new SynchedEntityDataWrapper(dataItems), false);
-        ((CraftPlayer) player).getHandle().connection.send(packet);
+        return new ClientboundSetEntityDataPacket(this.entityId, new SynchedEntityDataWrapper(dataItems), false);
     }
 
     @Override
-    protected void delete(Player player) {
-        ClientboundRemoveEntitiesPacket packet = new ClientboundRemoveEntitiesPacket(this.entityId);
-
-        ((CraftPlayer) player).getHandle().connection.send(packet);
+    protected Object createRemovePacket() {
+        return new ClientboundRemoveEntitiesPacket(this.entityId);
     }
 
 }
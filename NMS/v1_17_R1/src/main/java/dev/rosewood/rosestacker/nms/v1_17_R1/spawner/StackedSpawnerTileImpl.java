@@ -3,6 +3,7 @@ package dev.rosewood.rosestacker.nms.v1_17_R1.spawner;
 import dev.rosewood.rosestacker.manager.ConfigurationManager.Setting;
 import dev.rosewood.rosestacker.nms.spawner.StackedSpawnerTile;
 import dev.rosewood.rosestacker.spawner.spawning.MobSpawningMethod;
+import dev.rosewood.rosestacker.stack.SpawnerTickScheduler;
 import dev.rosewood.rosestacker.stack.StackedSpawner;
 import dev.rosewood.rosestacker.stack.settings.SpawnerStackSettings;
 import java.util.Arrays;
@@ -28,10 +29,16 @@ public class StackedSpawnerTileImpl extends BaseSpawner implements StackedSpawne
     private final BlockPos blockPos;
     private final StackedSpawner stackedSpawner;
     private boolean redstoneDeactivated;
-    private int redstoneTimeSinceLastCheck;
     private boolean playersNearby;
-    private int playersTimeSinceLastCheck;
     private boolean checkedInitialConditions;
+    private MobSpawningMethod spawningMethod;
+    private SpawnerTickScheduler scheduler;
+    private boolean scheduled;
+    private boolean countingDown;
+    private long lastServerTick;
+    private long lastRunTick;
+    private long nextPlayerCheckTick;
+    private long nextRedstoneCheckTick;
 
     public StackedSpawnerTileImpl(BaseSpawner old, SpawnerBlockEntity blockEntity, StackedSpawner stackedSpawner) {
         this.blockEntity = blockEntity;
@@ -43,13 +50,48 @@ public class StackedSpawnerTileImpl extends BaseSpawner implements StackedSpawne
 
     @Override
     public void serverTick(ServerLevel level, BlockPos blockPos) {
+        // The spawner logic is run by the scheduler, this only lets it know that the spawner is still being ticked
+        if (this.scheduler == null || this.scheduler.isClosed()) {
+            this.scheduler = SpawnerTickScheduler.get(this.stackedSpawner.getWorld());
+            this.scheduled = false;
+            if (this.scheduler == null)
+                return;
+        }
+
+        this.lastServerTick = this.scheduler.getCurrentTick();
+        if (!this.scheduled) {
+            this.scheduled = true;
+            this.countingDown = false;
+            this.lastRunTick = this.lastServerTick;
+            this.nextPlayerCheckTick = this.lastServerTick + 1;
+            this.nextRedstoneCheckTick = this.lastServerTick + 1;
+            this.scheduler.schedule(this, this.lastServerTick + 1);
+        }
+    }
+
+    @Override
+    public long tick(long currentTick) {
+        Level level = this.blockEntity.getLevel();
+        if (level == null || currentTick - this.lastServerTick > 1) {
+            // The spawner is no longer being ticked, it will be scheduled again once it is
+            this.scheduled = false;
+            return -1;
+        }
+
+        // Count down the spawn timer for the ticks the spawner was not run for
+        if (this.countingDown)
+            this.spawnDelay = (int) Math.max(0, this.spawnDelay - (currentTick - this.lastRunTick - 1));
+        this.countingDown = false;
+        this.lastRunTick = currentTick;
+
         // Only tick the spawner if a player is nearby
-        this.playersTimeSinceLastCheck = (this.playersTimeSinceLastCheck + 1) % Setting.SPAWNER_PLAYER_CHECK_FREQUENCY.getInt();
-        if (this.playersTimeSinceLastCheck == 0)
-            this.playersNearby = this.isNearPlayer(level, blockPos);
+        if (currentTick >= this.nextPlayerCheckTick) {
+            this.playersNearby = this.isNearPlayer(this.blockPos);
+            this.nextPlayerCheckTick = currentTick + Math.max(1, Setting.SPAWNER_PLAYER_CHECK_FREQUENCY.getInt());
+        }
 
         if (!this.playersNearby)
-            return;
+            return this.nextPlayerCheckTick;
 
         if (!this.checkedInitialConditions) {
             this.checkedInitialConditions = true;
@@ -57,10 +99,11 @@ public class StackedSpawnerTileImpl extends BaseSpawner implements StackedSpawne
         }
 
         SpawnerStackSettings stackSettings = this.stackedSpawner.getStackSettings();
+        long nextTick = this.nextPlayerCheckTick;
 
         // Handle redstone deactivation if enabled
         if (Setting.SPAWNER_DEACTIVATE_WHEN_POWERED.getBoolean()) {
-            if (this.redstoneTimeSinceLastCheck == 0) {
+            if (currentTick >= this.nextRedstoneCheckTick) {
                 boolean hasSignal = level.hasNeighborSignal(this.blockPos);
                 if (this.redstoneDeactivated && !hasSignal) {
                     this.redstoneDeactivated = false;
@@ -72,17 +115,19 @@ public class StackedSpawnerTileImpl extends BaseSpawner implements StackedSpawne
                     this.updateTile();
                 }
 
-                if (this.redstoneDeactivated)
-                    return;
+                this.nextRedstoneCheckTick = currentTick + Math.max(1, Setting.SPAWNER_POWERED_CHECK_FREQUENCY.getInt());
             }
 
-            this.redstoneTimeSinceLastCheck = (this.redstoneTimeSinceLastCheck + 1) % Setting.SPAWNER_POWERED_CHECK_FREQUENCY.getInt();
+            nextTick = Math.min(nextTick, this.nextRedstoneCheckTick);
+            if (this.redstoneDeactivated)
+                return nextTick;
         }
 
         // Count down spawn timer unless we are ready to spawn
+        this.countingDown = true;
         if (this.spawnDelay > 0) {
             this.spawnDelay--;
-            return;
+            return Math.min(nextTick, currentTick + this.spawnDelay + 1);
         }
 
         // Reset spawn delay
@@ -94,6 +139,8 @@ public class StackedSpawnerTileImpl extends BaseSpawner implements StackedSpawne
 
         // Randomize spawn potentials
         this.spawnPotentials.getRandom(level.getRandom()).ifPresent(x -> this.nextSpawnData = x);
+
+        return Math.min(nextTick, currentTick + this.spawnDelay + 1);
     }
 
     private void trySpawns(boolean onlyCheckConditions) {
@@ -103,8 +150,11 @@ public class StackedSpawnerTileImpl extends BaseSpawner implements StackedSpawne
                 if (resourceLocation != null) {
                     NamespacedKey namespacedKey = CraftNamespacedKey.fromMinecraft(resourceLocation);
                     EntityType entityType = this.fromKey(namespacedKey);
-                    if (entityType != null)
-                        new MobSpawningMethod(entityType).spawn(this.stackedSpawner, onlyCheckConditions);
+                    if (entityType != null) {
+                        if (this.spawningMethod == null || this.spawningMethod.getEntityType() != entityType)
+                            this.spawningMethod = new MobSpawningMethod(entityType);
+                        this.spawningMethod.spawn(this.stackedSpawner, onlyCheckConditions);
+                    }
                 }
             }
         } catch (Exception e) {
@@ -142,10 +192,10 @@ public class StackedSpawnerTileImpl extends BaseSpawner implements StackedSpawne
         }
     }
 
-    private boolean isNearPlayer(Level level, BlockPos blockPos) {
+    private boolean isNearPlayer(BlockPos blockPos) {
         if (this.requiredPlayerRange < 0)
             return true;
-        return level.hasNearbyAlivePlayer((double) blockPos.getX() + 0.5D, (double) blockPos.getY() + 0.5D, (double) blockPos.getZ() + 0.5D, Math.max(this.stackedSpawner.getStackSettings().getPlayerActivationRange(), 0.1));
+        return this.scheduler.getPlayerIndex().isPlayerNearby((double) blockPos.getX() + 0.5D, (double) blockPos.getY() + 0.5D, (double) blockPos.getZ() + 0.5D, Math.max(this.stackedSpawner.getStackSettings().getPlayerActivationRange(), 0.1));
     }
 
     private void loadOld(BaseSpawner baseSpawner) {
@@ -181,12 +231,21 @@ public class StackedSpawnerTileImpl extends BaseSpawner implements StackedSpawne
 
     @Override
     public int getDelay() {
+        // The spawn timer is only updated when the spawner is run, count down the ticks since then
+        if (this.countingDown)
+            return (int) Math.max(0, this.spawnDelay - (this.scheduler.getCurrentTick() - this.lastRunTick));
         return this.spawnDelay;
     }
 
     @Override
     public void setDelay(int delay) {
         this.spawnDelay = delay;
+        if (this.scheduled) {
+            // Run the spawner on the next tick so the new delay is counted down from now
+            this.countingDown = false;
+            this.lastRunTick = this.scheduler.getCurrentTick();
+            this.scheduler.schedule(this, this.lastRunTick + 1);
+        }
         this.updateTile();
     }
 
@@ -3,15 +3,18 @@ package dev.rosewood.rosestacker.nms.v1_19_R1.storage;
 import dev.rosewood.rosestacker.nms.storage.StackedEntityDataEntry;
 import dev.rosewood.rosestacker.nms.storage.StackedEntityDataIOException;
 import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorage;
+import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorageType;
+import dev.rosewood.rosestacker.nms.util.ByteArrayDictionary;
 import dev.rosewood.rosestacker.nms.util.ReflectionUtils;
+import dev.rosewood.rosestacker.nms.util.SpillableByteArrayDeque;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
 import net.minecraft.nbt.CompoundTag;
@@ -27,29 +30,49 @@ import org.bukkit.entity.LivingEntity;
 public class NBTStackedEntityDataStorage implements StackedEntityDataStorage {
 
     private static final Field field_AbstractVillager_offers = ReflectionUtils.getFieldByPositionAndType(net.minecraft.world.entity.npc.AbstractVillager.class, 0, MerchantOffers.class);
+    private static final int COMPACT_FORMAT_MAGIC = 0x52534431;
     private final CompoundTag base;
-    private final List<CompoundTag> data;
+    private final SpillableByteArrayDeque data;
+    private final ByteArrayDictionary dictionary;
 
     public NBTStackedEntityDataStorage(LivingEntity livingEntity) {
         this.base = new CompoundTag();
+        this.dictionary = ByteArrayDictionary.forType(livingEntity.getType());
 
-        this.saveToTag(livingEntity, this.base);
-        this.stripUnneeded(this.base);
-        this.stripAttributeUuids(this.base);
+        saveToTag(livingEntity, this.base);
+        stripUnneeded(this.base);
+        stripAttributeUuids(this.base);
 
-        this.data = Collections.synchronizedList(new LinkedList<>());
+        this.data = new SpillableByteArrayDeque(0, this.dictionary);
     }
 
-    public NBTStackedEntityDataStorage(byte[] data) {
+    public NBTStackedEntityDataStorage(LivingEntity livingEntity, byte[] data) {
+        this.dictionary = ByteArrayDictionary.forType(livingEntity != null ? livingEntity.getType() : null);
+
+        if (isCompactFormat(data)) {
+            try (DataInputStream dataInput = new DataInputStream(new ByteArrayInputStream(data))) {
+                dataInput.readInt(); // Magic number
+
+                this.base = NbtIo.read(dataInput);
+                byte[][] entries = ByteArrayDictionary.readEntries(dataInput);
+                this.data = new SpillableByteArrayDeque(entries.length, this.dictionary);
+                for (byte[] entry : entries)
+                    this.data.addLast(this.dictionary.intern(entry));
+            } catch (Exception e) {
+                throw new StackedEntityDataIOException(e);
+            }
+            return;
+        }
+
+        // Legacy format, every entry is written out in full
         try (ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
              ObjectInputStream dataInput = new ObjectInputStream(inputStream)) {
 
             this.base = NbtIo.read(dataInput);
             int length = dataInput.readInt();
-            List<CompoundTag> tags = new LinkedList<>();
+            this.data = new SpillableByteArrayDeque(length, this.dictionary);
             for (int i = 0; i < length; i++)
-                tags.add(NbtIo.read(dataInput));
-            this.data = Collections.synchronizedList(tags);
+                this.data.addLast(this.dictionary.intern(this.encode(NbtIo.read(dataInput))));
         } catch (Exception e) {
             throw new StackedEntityDataIOException(e);
         }
@@ -57,32 +80,72 @@ public class NBTStackedEntityDataStorage implements StackedEntityDataStorage {
 
     @Override
     public void addFirst(LivingEntity entity) {
-        this.addAt(0, entity);
+        this.data.addFirst(this.compress(entity));
     }
 
     @Override
     public void addLast(LivingEntity entity) {
-        this.addAt(this.data.size(), entity);
+        this.data.addLast(this.compress(entity));
+    }
+
+    @Override
+    public void addCopiesFirst(LivingEntity entity, int amount) {
+        this.addCopiesFirst(this.compress(entity), amount);
+    }
+
+    @Override
+    public void addCopiesLast(LivingEntity entity, int amount) {
+        this.addCopiesLast(this.compress(entity), amount);
     }
 
     @Override
     public void addAllFirst(List<StackedEntityDataEntry<?>> stackedEntityDataEntry) {
-        stackedEntityDataEntry.forEach(x -> this.addAt(0, x));
+        stackedEntityDataEntry.forEach(x -> this.data.addFirst(this.compress(x)));
+    }
+
+    @Override
+    public void addAllFirst(StackedEntityDataStorage stackedEntityDataStorage) {
+        // Every entry of a simple storage is the same, so it only has to be compressed once
+        if (stackedEntityDataStorage instanceof SimpleStackedEntityDataStorage simpleStorage) {
+            this.addCopiesFirst(this.compress(simpleStorage.copyBase()), simpleStorage.size());
+        } else {
+            this.addAllFirst(stackedEntityDataStorage.getAll());
+        }
     }
 
     @Override
     public void addAllLast(List<StackedEntityDataEntry<?>> stackedEntityDataEntry) {
-        stackedEntityDataEntry.forEach(x -> this.addAt(this.data.size(), x));
+        stackedEntityDataEntry.forEach(x -> this.data.addLast(this.compress(x)));
+    }
+
+    @Override
+    public void addAllLast(StackedEntityDataStorage stackedEntityDataStorage) {
+        // Every entry of a simple storage is the same, so it only has to be compressed once
+        if (stackedEntityDataStorage instanceof SimpleStackedEntityDataStorage simpleStorage) {
+            this.addCopiesLast(this.compress(simpleStorage.copyBase()), simpleStorage.size());
+        } else {
+            this.addAllLast(stackedEntityDataStorage.getAll());
+        }
+    }
+
+    private void addCopiesFirst(byte[] compressed, int amount) {
+        for (int i = 0; i < amount; i++)
+            this.data.addFirst(compressed);
+    }
+
+    private void addCopiesLast(byte[] compressed, int amount) {
+        for (int i = 0; i < amount; i++)
+            this.data.addLast(compressed);
     }
 
     @Override
     public NBTStackedEntityDataEntry peek() {
-        return new NBTStackedEntityDataEntry(this.rebuild(this.data.get(0)));
+        return new NBTStackedEntityDataEntry(this.rebuild(this.data.peekFirst()));
     }
 
     @Override
     public NBTStackedEntityDataEntry pop() {
-        return new NBTStackedEntityDataEntry(this.rebuild(this.data.remove(0)));
+        return new NBTStackedEntityDataEntry(this.rebuild(this.data.removeFirst()));
     }
 
     @Override
@@ -97,37 +160,29 @@ public class NBTStackedEntityDataStorage implements StackedEntityDataStorage {
 
     @Override
     public List<StackedEntityDataEntry<?>> getAll() {
-        List<StackedEntityDataEntry<?>> wrapped = new ArrayList<>(this.data.size());
-        for (CompoundTag compoundTag : new ArrayList<>(this.data))
-            wrapped.add(new NBTStackedEntityDataEntry(this.rebuild(compoundTag)));
-        return wrapped;
+        return this.getTop(Integer.MAX_VALUE);
     }
 
     @Override
     public List<StackedEntityDataEntry<?>> getTop(int count) {
-        if (count > this.data.size())
-            count = this.data.size();
-
-        List<StackedEntityDataEntry<?>> wrapped = new ArrayList<>(count);
-        for (int i = 0; i < count; i++)
-            wrapped.add(new NBTStackedEntityDataEntry(this.rebuild(this.data.get(i))));
+        byte[][] entries = this.data.toArray(count);
+        List<StackedEntityDataEntry<?>> wrapped = new ArrayList<>(entries.length);
+        for (byte[] entry : entries)
+            wrapped.add(new NBTStackedEntityDataEntry(this.rebuild(entry)));
         return wrapped;
     }
 
     @Override
     public byte[] serialize(int maxAmount) {
         try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-             ObjectOutputStream dataOutput = new ObjectOutputStream(outputStream)) {
+             DataOutputStream dataOutput = new DataOutputStream(outputStream)) {
 
-            int targetAmount = Math.min(maxAmount, this.data.size());
-            List<CompoundTag> tagsToSave = new ArrayList<>(targetAmount);
-            for (int i = 0; i < targetAmount; i++)
-                tagsToSave.add(this.data.get(i));
+            // Entries are already encoded as NBT, identical entries only get written once
+            byte[][] entriesToSave = this.data.toArray(maxAmount);
 
+            dataOutput.writeInt(COMPACT_FORMAT_MAGIC);
             NbtIo.write(this.base, dataOutput);
-            dataOutput.writeInt(tagsToSave.size());
-            for (CompoundTag compoundTag : tagsToSave)
-                NbtIo.write(compoundTag, dataOutput);
+            ByteArrayDictionary.writeEntries(dataOutput, entriesToSave);
 
             dataOutput.close();
             return outputStream.toByteArray();
@@ -136,21 +191,51 @@ public class NBTStackedEntityDataStorage implements StackedEntityDataStorage {
         }
     }
 
-    private void addAt(int index, LivingEntity livingEntity) {
+    @Override
+    public StackedEntityDataStorageType getType() {
+        return StackedEntityDataStorageType.NBT;
+    }
+
+    private byte[] compress(LivingEntity livingEntity) {
         CompoundTag compoundTag = new CompoundTag();
-        this.saveToTag(livingEntity, compoundTag);
-        this.stripUnneeded(compoundTag);
-        this.stripAttributeUuids(compoundTag);
+        saveToTag(livingEntity, compoundTag);
+        stripUnneeded(compoundTag);
+        stripAttributeUuids(compoundTag);
         this.removeDuplicates(compoundTag);
-        this.data.add(index, compoundTag);
+        return this.dictionary.intern(this.encode(compoundTag));
     }
 
-    private void addAt(int index, StackedEntityDataEntry<?> stackedEntityDataEntry) {
-        CompoundTag compoundTag = (CompoundTag) stackedEntityDataEntry.get();
-        this.stripUnneeded(compoundTag);
-        this.stripAttributeUuids(compoundTag);
+    private byte[] compress(StackedEntityDataEntry<?> stackedEntityDataEntry) {
+        return this.compress((CompoundTag) stackedEntityDataEntry.get());
+    }
+
+    private byte[] compress(CompoundTag compoundTag) {
+        stripUnneeded(compoundTag);
+        stripAttributeUuids(compoundTag);
         this.removeDuplicates(compoundTag);
-        this.data.add(index, compoundTag);
+        return this.dictionary.intern(this.encode(compoundTag));
+    }
+
+    private byte[] encode(CompoundTag compoundTag) {
+        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+             DataOutputStream dataOutput = new DataOutputStream(outputStream)) {
+            NbtIo.write(compoundTag, dataOutput);
+            return outputStream.toByteArray();
+        } catch (IOException e) {
+            throw new StackedEntityDataIOException(e);
+        }
+    }
+
+    private CompoundTag decode(byte[] data) {
+        try (DataInputStream dataInput = new DataInputStream(new ByteArrayInputStream(data))) {
+            return NbtIo.read(dataInput);
+        } catch (IOException e) {
+            throw new StackedEntityDataIOException(e);
+        }
+    }
+
+    private static boolean isCompactFormat(byte[] data) {
+        return data.length >= 4 && ((data[0] & 0xFF) << 24 | (data[1] & 0xFF) << 16 | (data[2] & 0xFF) << 8 | (data[3] & 0xFF)) == COMPACT_FORMAT_MAGIC;
     }
 
     private void removeDuplicates(CompoundTag compoundTag) {
@@ -162,15 +247,15 @@ public class NBTStackedEntityDataStorage implements StackedEntityDataStorage {
         }
     }
 
-    private CompoundTag rebuild(CompoundTag compoundTag) {
+    private CompoundTag rebuild(byte[] data) {
         CompoundTag merged = new CompoundTag();
         merged.merge(this.base);
-        merged.merge(compoundTag);
-        this.fillAttributeUuids(merged);
+        merged.merge(this.decode(data));
+        fillAttributeUuids(merged);
         return merged;
     }
 
-    private void saveToTag(LivingEntity livingEntity, CompoundTag compoundTag) {
+    static void saveToTag(LivingEntity livingEntity, CompoundTag compoundTag) {
         // Async villager "fix", if the trades aren't loaded yet force them to save as empty, they will get loaded later
         if (livingEntity instanceof AbstractVillager) {
             try {
@@ -196,7 +281,7 @@ public class NBTStackedEntityDataStorage implements StackedEntityDataStorage {
         }
     }
 
-    private void stripUnneeded(CompoundTag compoundTag) {
+    static void stripUnneeded(CompoundTag compoundTag) {
         compoundTag.remove("UUID");
         compoundTag.remove("Pos");
         compoundTag.remove("Rotation");
@@ -213,7 +298,7 @@ public class NBTStackedEntityDataStorage implements StackedEntityDataStorage {
         bukkitValues.remove("rosestacker:stacked_entity_data");
     }
 
-    private void stripAttributeUuids(CompoundTag compoundTag) {
+    static void stripAttributeUuids(CompoundTag compoundTag) {
         ListTag attributes = compoundTag.getList("Attributes", Tag.TAG_COMPOUND);
         for (int i = 0; i < attributes.size(); i++) {
             CompoundTag attribute = attributes.getCompound(i);
@@ -231,7 +316,7 @@ public class NBTStackedEntityDataStorage implements StackedEntityDataStorage {
         }
     }
 
-    private void fillAttributeUuids(CompoundTag compoundTag) {
+    static void fillAttributeUuids(CompoundTag compoundTag) {
         ListTag attributes = compoundTag.getList("Attributes", Tag.TAG_COMPOUND);
         for (int i = 0; i < attributes.size(); i++) {
             CompoundTag attribute = attributes.getCompound(i);
@@ -125,6 +125,8 @@ public class RoseCommand extends BaseCommand {
         LocaleManager localeManager = this.rosePlugin.getManager(LocaleManager.class);
 
         int threadAmount = stackManager.getStackingThreads().size();
+        int queuedTaskAmount = stackManager.getStackingThreads().values().stream().mapToInt(x -> x.getMailbox().getQueueDepth()).sum();
+        long drainNanos = stackManager.getStackingThreads().values().stream().mapToLong(x -> x.getMailbox().getLastDrainNanos()).sum();
 
         int entityStackAmount = stackManager.getStackedEntities().size();
         int itemStackAmount = stackManager.getStackedItems().size();
@@ -138,6 +140,7 @@ public class RoseCommand extends BaseCommand {
 
         localeManager.sendMessage(sender, "command-stats-header");
         localeManager.sendSimpleMessage(sender, "command-stats-threads", StringPlaceholders.single("amount", threadAmount));
+        localeManager.sendSimpleMessage(sender, "command-stats-queued-tasks", StringPlaceholders.builder("amount", queuedTaskAmount).addPlaceholder("time", String.format("%.2f", drainNanos / 1000000.0)).build());
         localeManager.sendSimpleMessage(sender, "command-stats-stacked-entities", StringPlaceholders.builder("stackAmount", entityStackAmount).addPlaceholder("total", entityAmount).build());
         localeManager.sendSimpleMessage(sender, "command-stats-stacked-items", StringPlaceholders.builder("stackAmount", itemStackAmount).addPlaceholder("total", itemAmount).build());
         localeManager.sendSimpleMessage(sender, "command-stats-stacked-blocks", StringPlaceholders.builder("stackAmount", blockStackAmount).addPlaceholder("total", blockAmount).build());
@@ -8,6 +8,7 @@ import dev.rosewood.rosestacker.nms.NMSHandler;
 import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorage;
 import dev.rosewood.rosestacker.stack.Stack;
 import dev.rosewood.rosestacker.stack.StackType;
+import dev.rosewood.rosestacker.utils.StackerUtils;
 import java.util.Set;
 import org.bukkit.Location;
 import org.bukkit.entity.EntityType;
@@ -67,7 +68,7 @@ public abstract class ConversionHandler {
      */
     protected StackedEntityDataStorage createEntityStackNBT(EntityType entityType, int amount, Location location) {
         NMSHandler nmsHandler = NMSAdapter.getHandler();
-        StackedEntityDataStorage stackedEntityDataStorage = nmsHandler.createEntityDataStorage(nmsHandler.createNewEntityUnspawned(entityType, location, CreatureSpawnEvent.SpawnReason.CUSTOM));
+        StackedEntityDataStorage stackedEntityDataStorage = StackerUtils.createEntityDataStorage(nmsHandler.createNewEntityUnspawned(entityType, location, CreatureSpawnEvent.SpawnReason.CUSTOM));
         for (int i = 0; i < amount - 1; i++)
             stackedEntityDataStorage.addFirst(nmsHandler.createNewEntityUnspawned(entityType, location, CreatureSpawnEvent.SpawnReason.CUSTOM));
 
@@ -123,7 +123,10 @@ public class InteractListener implements Listener {
         Player player = event.getPlayer();
         ItemStack itemStack = event.getHand() == EquipmentSlot.HAND ? player.getInventory().getItemInMainHand() : player.getInventory().getItemInOffHand();
         if (itemStack.getType() == Material.NAME_TAG) {
-            Bukkit.getScheduler().runTask(this.rosePlugin, stackedEntity::updateDisplay);
+            Bukkit.getScheduler().runTask(this.rosePlugin, () -> {
+                stackedEntity.markStackingDirty();
+                stackedEntity.updateDisplay();
+            });
             return;
         } else if (itemStack.getType() == Material.WATER_BUCKET) {
             switch (entity.getType()) {
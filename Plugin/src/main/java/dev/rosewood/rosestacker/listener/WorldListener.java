@@ -2,9 +2,11 @@ package dev.rosewood.rosestacker.listener;
 
 import dev.rosewood.rosegarden.RosePlugin;
 import dev.rosewood.rosegarden.utils.NMSUtil;
+import dev.rosewood.rosestacker.manager.EntityCacheManager;
 import dev.rosewood.rosestacker.manager.StackManager;
 import dev.rosewood.rosestacker.utils.PersistentDataUtils;
 import java.util.Arrays;
+import java.util.List;
 import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
 import org.bukkit.block.BlockState;
@@ -23,10 +25,12 @@ public class WorldListener implements Listener {
 
     private final RosePlugin rosePlugin;
     private final StackManager stackManager;
+    private final EntityCacheManager entityCacheManager;
 
     public WorldListener(RosePlugin rosePlugin) {
         this.rosePlugin = rosePlugin;
         this.stackManager = rosePlugin.getManager(StackManager.class);
+        this.entityCacheManager = rosePlugin.getManager(EntityCacheManager.class);
     }
 
     /**
@@ -60,7 +64,9 @@ public class WorldListener implements Listener {
                     if (entity instanceof LivingEntity)
                         PersistentDataUtils.applyDisabledAi((LivingEntity) entity);
 
-                this.stackManager.loadChunkEntities(chunk, Arrays.asList(entities));
+                List<Entity> entityList = Arrays.asList(entities);
+                this.entityCacheManager.cacheEntities(entityList);
+                this.stackManager.loadChunkEntities(chunk, entityList);
             }
 
             this.stackManager.loadChunkBlocks(chunk);
@@ -71,8 +77,11 @@ public class WorldListener implements Listener {
     public void onChunkUnload(ChunkUnloadEvent event) {
         this.stackManager.saveChunkBlocks(event.getChunk(), true);
 
-        if (NMSUtil.getVersionNumber() < 17)
-            this.stackManager.saveChunkEntities(event.getChunk(), Arrays.asList(event.getChunk().getEntities()), true);
+        if (NMSUtil.getVersionNumber() < 17) {
+            List<Entity> entities = Arrays.asList(event.getChunk().getEntities());
+            this.stackManager.saveChunkEntities(event.getChunk(), entities, true);
+            this.entityCacheManager.uncacheEntities(entities);
+        }
     }
 
     @EventHandler
@@ -68,6 +68,7 @@ public class DutchLocale implements Locale {
             this.put("command-stats-description", "&8 - &d/rs stats &7- Geef statistieken van de plugin weer");
             this.put("command-stats-header", "&aHuidige plugin statistieken:");
             this.put("command-stats-threads", "&b%amount% &eActieve stacking threads.");
+            this.put("command-stats-queued-tasks", "&b%amount% &equeued main thread tasks, &b%time%ms &espent running them last tick.");
             this.put("command-stats-stacked-entities", "&b%stackAmount% &eEntity stacks geladen, totaal van &b%total% &eentities.");
             this.put("command-stats-stacked-items", "&b%stackAmount% &eItem stacks geladen, totaal van &b%total% &eitems.");
             this.put("command-stats-stacked-blocks", "&b%stackAmount% &eBlok stacks geladen, totaal van &b%total% &eblocks.");
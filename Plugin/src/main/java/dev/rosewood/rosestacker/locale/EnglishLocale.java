@@ -68,6 +68,7 @@ public class EnglishLocale implements Locale {
             this.put("command-stats-description", "&8 - &d/rs stats &7- Displays stats about the plugin");
             this.put("command-stats-header", "&aCurrent Plugin Stats:");
             this.put("command-stats-threads", "&b%amount% &eactive stacking threads.");
+            this.put("command-stats-queued-tasks", "&b%amount% &equeued main thread tasks, &b%time%ms &espent running them last tick.");
             this.put("command-stats-stacked-entities", "&b%stackAmount% &eloaded entity stacks, totaling &b%total% &eentities.");
             this.put("command-stats-stacked-items", "&b%stackAmount% &eloaded item stacks, totaling &b%total% &eitems.");
             this.put("command-stats-stacked-blocks", "&b%stackAmount% &eloaded block stacks, totaling &b%total% &eblocks.");
@@ -68,6 +68,7 @@ public class FilipinoLocale implements Locale {
             this.put("command-stats-description", "&8 - &d/rs stats &7- Nagpapakita ng mga istatistika tungkol sa plugin");
             this.put("command-stats-header", "&aMga Kasalukuyang Plugin Stats:");
             this.put("command-stats-threads", "&b%amount% &emga aktibong stacking thread.");
+            this.put("command-stats-queued-tasks", "&b%amount% &equeued main thread tasks, &b%time%ms &espent running them last tick.");
             this.put("command-stats-stacked-entities", "&b%stackAmount% &ena-load na entity stack, na kabuuan &b%total% &ena nilalang.");
             this.put("command-stats-stacked-items", "&b%stackAmount% &enaka-load na mga stack gamit, na kabuuan &b%total% &ena gamit.");
             this.put("command-stats-stacked-blocks", "&b%stackAmount% &ena-load ang mga block stack, na kabuuan &b%total% &emga bloke.");
@@ -68,6 +68,7 @@ public class GermanLocale implements Locale {
             this.put("command-stats-description", "&8 - &d/rs stats &7- Zeige Statistiken über das Plugin an");
             this.put("command-stats-header", "&aZurzeitige Plugin Statistiken:");
             this.put("command-stats-threads", "&b%amount% &eAktive Stacking Threads.");
+            this.put("command-stats-queued-tasks", "&b%amount% &equeued main thread tasks, &b%time%ms &espent running them last tick.");
             this.put("command-stats-stacked-entities", "&b%stackAmount% &eGeladene Entity stacks, insgesamt &b%total% &eEntities.");
             this.put("command-stats-stacked-items", "&b%stackAmount% &eloaded Gegenstand stacks, insgesamt &b%total% &eGegenstände.");
             this.put("command-stats-stacked-blocks", "&b%stackAmount% &eGeladene Block stacks, insgesamt &b%total% &eBlöcke.");
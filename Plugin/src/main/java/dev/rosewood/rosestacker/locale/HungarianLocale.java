@@ -68,6 +68,7 @@ public class HungarianLocale implements Locale {
             this.put("command-stats-description", "&8 - &d/rs stats &7- Kiír statisztikákat a pluginról");
             this.put("command-stats-header", "&aJelenlegi Plugin Statisztika:");
             this.put("command-stats-threads", "&b%amount% &eaktív stackelés szál.");
+            this.put("command-stats-queued-tasks", "&b%amount% &equeued main thread tasks, &b%time%ms &espent running them last tick.");
             this.put("command-stats-stacked-entities", "&b%stackAmount% &ebetöltött entitás stack, összesen &b%total% &eentitás.");
             this.put("command-stats-stacked-items", "&b%stackAmount% &ebetöltött tárgy stack, összesen &b%total% &etárgy.");
             this.put("command-stats-stacked-blocks", "&b%stackAmount% &ebetöltött blokk stack, összesen &b%total% &eblokk.");
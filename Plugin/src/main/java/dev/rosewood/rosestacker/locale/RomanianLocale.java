@@ -68,6 +68,7 @@ public class RomanianLocale implements Locale {
             this.put("command-stats-description", "&8 - &d/rs stats &7- Arata statisticile plugin-ului");
             this.put("command-stats-header", "&aStatistici Plugin:");
             this.put("command-stats-threads", "&b%amount% &efire active de stackare.");
+            this.put("command-stats-queued-tasks", "&b%amount% &equeued main thread tasks, &b%time%ms &espent running them last tick.");
             this.put("command-stats-stacked-entities", "&b%stackAmount% &estack-uri de entitati incarcate, in total &b%total% &eentitati.");
             this.put("command-stats-stacked-items", "&b%stackAmount% &estack-uri de obiecte incarcate, in total &b%total% &eobiecte.");
             this.put("command-stats-stacked-blocks", "&b%stackAmount% &estack-uri de block-uri incarcate, in total &b%total% &eblock-uri.");
@@ -68,6 +68,7 @@ public class SimplifiedChineseLocale implements Locale {
             this.put("command-stats-description", "&8 - &d/rs stats &7- 显示插件的统计数据");
             this.put("command-stats-header", "&a当前插件统计数据:");
             this.put("command-stats-threads", "&b%amount% &e个活跃的堆叠线程。");
+            this.put("command-stats-queued-tasks", "&b%amount% &equeued main thread tasks, &b%time%ms &espent running them last tick.");
             this.put("command-stats-stacked-entities", "&b%stackAmount% &e个已加载的堆叠实体, 共计 &b%total% &e个单体实体。");
             this.put("command-stats-stacked-items", "&b%stackAmount% &e份已加载的堆叠物品, 共计 &b%total% &e个单体物品。");
             this.put("command-stats-stacked-blocks", "&b%stackAmount% &e份已加载的堆叠方块, 共计 &b%total% &e个单体方块。");
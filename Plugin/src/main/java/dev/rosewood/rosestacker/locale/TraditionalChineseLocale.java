@@ -68,6 +68,7 @@ public class TraditionalChineseLocale implements Locale {
             this.put("command-stats-description", "&8 - &d/rs stats &7- 顯示此插件的統計數據");
             this.put("command-stats-header", "&a插件現時的統計數據:");
             this.put("command-stats-threads", "&b%amount% &e個運行中的線程。");
+            this.put("command-stats-queued-tasks", "&b%amount% &equeued main thread tasks, &b%time%ms &espent running them last tick.");
             this.put("command-stats-stacked-entities", "&b%stackAmount% &e個已加載的堆疊實體, 共 &b%total% &e個實體。");
             this.put("command-stats-stacked-items", "&b%stackAmount% &e份個已加載的堆疊物品, 共 &b%total% &e份物品。");
             this.put("command-stats-stacked-blocks", "&b%stackAmount% &e個已加載的堆疊方塊, 共 &b%total% &e個方塊。");
@@ -17,6 +17,7 @@ public class ConfigurationManager extends AbstractConfigurationManager {
         STACK_FREQUENCY("stack-frequency", 100, "How often should we try to stack nearby entities?", "Higher values mean longer times between checks, but also less lag", "If you are having issues with TPS, increase this value", "Values are in ticks, do not set lower than 1"),
         ITEM_STACK_FREQUENCY("item-stack-frequency", 20, "How often should we try to stack nearby items?", "Values are in ticks, do not set lower than 1"),
         NAMETAG_UPDATE_FREQUENCY("nametag-update-frequency", 30, "How often should we update stacked entity nametags?"),
+        MAIN_THREAD_TASK_BUDGET("main-thread-task-budget", 10, "How many milliseconds per tick can each world spend on queued stacking work?", "This includes removing merged entities and items and splitting stacks apart", "Work that does not fit is carried over to the next tick", "Set to -1 to run all queued work every tick"),
         AUTOSAVE_FREQUENCY("autosave-frequency", 15, "How often should we autosave all loaded stack data?", "Value is measured in minutes, set to -1 to disable"),
         LEGACY_DATA_MIGRATION("legacy-data-migration", true, "Should data from converted plugins still be actively converted?", "Disabling this can provide a performance boost, but it may be needed if your server is still converting data from an old stacker plugin"),
 
@@ -64,6 +65,9 @@ public class ConfigurationManager extends AbstractConfigurationManager {
         ENTITY_INSTANT_KILL_DISABLED_AI("global-entity-settings.instant-kill-disabled-ai", false, "Should entities with disabled AI be killed instantly when receiving damage from a player?"),
         ENTITY_DISABLE_ALL_MOB_AI("global-entity-settings.disable-all-mob-ai", false, "Should the AI of all mobs on the server be disabled?", "The parts of the AI that are disabled can be further customized in the global-spawner-settings.disable-mob-ai-options section"),
         ENTITY_SAVE_MAX_STACK_SIZE("global-entity-settings.save-max-stack-size", -1, "The maximum amount of entities that will be stored when entities are saved to chunk data", "Useful for when you have a very high max stack size, set to -1 to disable"),
+        ENTITY_DATA_STORAGE_TYPE("global-entity-settings.data-storage-type", "NBT", "How should the data of the entities inside of stacks be stored?", "NBT - Stores the full data of every entity in the stack, preserves things like names, colors, and equipment", "SIMPLE - Only stores the number of entities in the stack, all entities will be copies of the main entity", "SIMPLE uses far less memory and disk space for very large stacks", "Existing stacks will keep their current storage type until they are unstacked"),
+        ENTITY_DATA_MEMORY_BUDGET("global-entity-settings.data-memory-budget", -1, "How many megabytes of stacked entity data should be kept in memory at most?", "Once this is exceeded, the data of the least recently used stacks will be compressed and moved to disk until it is needed again", "The first few entities of every stack always stay in memory", "Set to -1 to keep all stacked entity data in memory"),
+        ENTITY_STACKING_THREADS("global-entity-settings.stacking-threads", -1, "How many threads should be used to search for entities to stack together?", "Each world is split into regions that are searched in parallel, the stacks found are still merged one at a time", "Set to -1 to use half of the available processor cores"),
 
         GLOBAL_ITEM_SETTINGS("global-item-settings", null, "Global item settings", "Changed values in item_settings.yml will override these values"),
         ITEM_STACKING_ENABLED("global-item-settings.stacking-enabled", true, "Should item stacking be enabled at all?"),
@@ -115,6 +119,7 @@ public class ConfigurationManager extends AbstractConfigurationManager {
         SPAWNER_REMOVE_EQUIPMENT("global-spawner-settings.remove-equipment", false, "Should mobs spawned from spawners always spawn with no equipment?"),
         SPAWNER_STACK_ENTIRE_HAND_WHEN_SNEAKING("global-spawner-settings.stack-entire-hand-when-sneaking", true, "Should the entire item stack of spawners be merged when the player is sneaking?"),
         SPAWNER_MAX_FAILED_SPAWN_ATTEMPTS("global-spawner-settings.max-failed-spawn-attempts", 50, "How many random blocks should we check to spawn a mob before giving up?"),
+        SPAWNER_SPAWN_CELL_CACHE_DURATION("global-spawner-settings.spawn-cell-cache-duration", 30, "How many seconds should the blocks a spawner can spawn mobs in be remembered for?", "While remembered, spawns pick from these blocks instead of checking random blocks", "They are checked again sooner if a block near the spawner is placed, broken, or flowed into", "Set to 0 to check random blocks on every spawn instead"),
         SPAWNER_DEACTIVATE_WHEN_POWERED("global-spawner-settings.deactivate-when-powered", false, "Should spawners turn off when powered by redstone?"),
         SPAWNER_POWERED_CHECK_FREQUENCY("global-spawner-settings.powered-check-frequency", 10, "How many ticks should there be between redstone power checks?", "Lower values will cause faster spawner updates at the cost of performance", "Value is measured in ticks, do not go below 1"),
         SPAWNER_PLAYER_CHECK_FREQUENCY("global-spawner-settings.player-check-frequency", 10, "How many ticks should there be between nearby player checks?", "Lower values will cause faster player detection at the cost of performance", "Value is measured in ticks, do not go below 1"),
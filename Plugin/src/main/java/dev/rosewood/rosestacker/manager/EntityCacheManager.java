@@ -2,47 +2,88 @@ package dev.rosewood.rosestacker.manager;
 
 import dev.rosewood.rosegarden.RosePlugin;
 import dev.rosewood.rosegarden.manager.Manager;
-import dev.rosewood.rosestacker.stack.StackingThread;
+import dev.rosewood.rosestacker.utils.LongObjectMap;
+import dev.rosewood.rosestacker.utils.StackerUtils;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.entity.EntitySpawnEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.scheduler.BukkitTask;
-import org.bukkit.util.BoundingBox;
 
-public class EntityCacheManager extends Manager {
+/**
+ * Maintains a chunk-indexed view of the stackable entities in each world, partitioned by EntityType within each chunk.
+ * The index is fed by spawn, death and chunk load/unload events, and a small slice of the tracked entities is
+ * revalidated every tick to pick up entities that have moved between chunks or have been removed.
+ */
+public class EntityCacheManager extends Manager implements Listener {
 
-    private final Map<ChunkLocation, Collection<Entity>> entityCache;
-    private BukkitTask refreshTask;
+    /**
+     * The number of ticks it takes to revalidate every tracked entity once
+     */
+    private static final int SWEEP_PERIOD = 20;
+
+    private static final EntityType[] ENTITY_TYPES = EntityType.values();
+
+    private final Map<World, LongObjectMap<EntityCell>> entityCache;
+    private final Map<Entity, ChunkLocation> trackedEntities;
+    private final Location sweepLocation;
+    private Iterator<Map.Entry<Entity, ChunkLocation>> sweepIterator;
+    private BukkitTask seedTask;
+    private BukkitTask sweepTask;
 
     public EntityCacheManager(RosePlugin rosePlugin) {
         super(rosePlugin);
+
         this.entityCache = new ConcurrentHashMap<>();
+        this.trackedEntities = new ConcurrentHashMap<>();
+        this.sweepLocation = new Location(null, 0, 0, 0);
+
+        Bukkit.getPluginManager().registerEvents(this, this.rosePlugin);
     }
 
     @Override
     public void reload() {
-        this.refreshTask = Bukkit.getScheduler().runTaskTimer(this.rosePlugin, this::refresh, 5L, 60L);
+        this.seedTask = Bukkit.getScheduler().runTaskLater(this.rosePlugin, () -> {
+            this.seedTask = null;
+            for (World world : Bukkit.getWorlds())
+                this.cacheEntities(world.getEntities());
+        }, 5L);
+
+        this.sweepTask = Bukkit.getScheduler().runTaskTimer(this.rosePlugin, this::sweep, 5L, 1L);
     }
 
     @Override
     public void disable() {
-        this.entityCache.clear();
+        if (this.seedTask != null) {
+            this.seedTask.cancel();
+            this.seedTask = null;
+        }
 
-        if (this.refreshTask != null) {
-            this.refreshTask.cancel();
-            this.refreshTask = null;
+        if (this.sweepTask != null) {
+            this.sweepTask.cancel();
+            this.sweepTask = null;
         }
+
+        this.sweepIterator = null;
+        this.trackedEntities.clear();
+        this.entityCache.clear();
     }
 
     /**
@@ -51,41 +92,77 @@ public class EntityCacheManager extends Manager {
      * @param center The center of the area to check
      * @param radius The radius to check around
      * @param predicate Conditions to be met
-     * @return A Set of nearby entities
+     * @return A Collection of nearby entities
      */
     public Collection<Entity> getNearbyEntities(Location center, double radius, Predicate<Entity> predicate) {
         List<Entity> nearbyEntities = new ArrayList<>();
+        this.forEachNearbyEntity(center, radius, null, entity -> {
+            if (predicate.test(entity))
+                nearbyEntities.add(entity);
+        });
+        return nearbyEntities;
+    }
+
+    /**
+     * Gets nearby entities of a specific type from cache, only entities of the given type are looked at
+     *
+     * @param center The center of the area to check
+     * @param radius The radius to check around
+     * @param entityType The type of entities to get
+     * @return A Collection of nearby entities
+     */
+    public Collection<Entity> getNearbyEntities(Location center, double radius, EntityType entityType) {
+        List<Entity> nearbyEntities = new ArrayList<>();
+        this.forEachNearbyEntity(center, radius, entityType, nearbyEntities::add);
+        return nearbyEntities;
+    }
+
+    /**
+     * Visits nearby entities from cache without collecting them
+     *
+     * @param center The center of the area to check
+     * @param radius The radius to check around
+     * @param entityType The type of entities to visit, or null for all types
+     * @param consumer The action to run for each nearby entity
+     */
+    public void forEachNearbyEntity(Location center, double radius, EntityType entityType, Consumer<Entity> consumer) {
         World world = center.getWorld();
         if (world == null)
-            return nearbyEntities;
-
-        BoundingBox boundingBox = new BoundingBox(
-                center.getX() - radius,
-                center.getY() - radius,
-                center.getZ() - radius,
-                center.getX() + radius,
-                center.getY() + radius,
-                center.getZ() + radius
-        );
-
-        int minX = (int) boundingBox.getMinX() >> 4;
-        int maxX = (int) boundingBox.getMaxX() >> 4;
-        int minZ = (int) boundingBox.getMinZ() >> 4;
-        int maxZ = (int) boundingBox.getMaxZ() >> 4;
-
-        for (int x = minX; x <= maxX; x++) {
-            for (int z = minZ; z <= maxZ; z++) {
-                Collection<Entity> entities = this.entityCache.get(new ChunkLocation(world, x, z));
-                if (entities != null)
-                    nearbyEntities.addAll(entities);
+            return;
+
+        LongObjectMap<EntityCell> cells = this.entityCache.get(world);
+        if (cells == null)
+            return;
+
+        double minX = center.getX() - radius, maxX = center.getX() + radius;
+        double minY = center.getY() - radius, maxY = center.getY() + radius;
+        double minZ = center.getZ() - radius, maxZ = center.getZ() + radius;
+
+        int minChunkX = (int) Math.floor(minX) >> 4;
+        int maxChunkX = (int) Math.floor(maxX) >> 4;
+        int minChunkZ = (int) Math.floor(minZ) >> 4;
+        int maxChunkZ = (int) Math.floor(maxZ) >> 4;
+
+        Location location = new Location(null, 0, 0, 0);
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                EntityCell cell = cells.get(StackerUtils.getChunkKey(chunkX, chunkZ));
+                if (cell == null)
+                    continue;
+
+                if (entityType != null) {
+                    Set<Entity> entities = cell.get(entityType);
+                    if (entities != null)
+                        this.visitInBounds(entities, location, minX, minY, minZ, maxX, maxY, maxZ, consumer);
+                } else {
+                    for (int i = 0; i < ENTITY_TYPES.length; i++) {
+                        Set<Entity> entities = cell.get(ENTITY_TYPES[i]);
+                        if (entities != null)
+                            this.visitInBounds(entities, location, minX, minY, minZ, maxX, maxY, maxZ, consumer);
+                    }
+                }
             }
         }
-
-        return nearbyEntities.stream()
-                .filter(Entity::isValid)
-                .filter(x -> boundingBox.contains(x.getLocation().toVector()))
-                .filter(predicate)
-                .collect(Collectors.toSet());
     }
 
     /**
@@ -93,21 +170,49 @@ public class EntityCacheManager extends Manager {
      *
      * @param location The Location of the Chunk
      * @param predicate Conditions to be met
-     * @return A Set of entities in the chunk
+     * @return A Collection of entities in the chunk
      */
     public Collection<Entity> getEntitiesInChunk(Location location, Predicate<Entity> predicate) {
-        World world = location.getWorld();
-        if (world == null)
-            return new ArrayList<>();
+        List<Entity> chunkEntities = new ArrayList<>();
+        EntityCell cell = this.getCell(location);
+        if (cell == null)
+            return chunkEntities;
+
+        for (int i = 0; i < ENTITY_TYPES.length; i++) {
+            Set<Entity> entities = cell.get(ENTITY_TYPES[i]);
+            if (entities == null)
+                continue;
 
-        Collection<Entity> entities = this.entityCache.get(new ChunkLocation(world, location.getBlockX() >> 4, location.getBlockZ() >> 4));
+            for (Entity entity : entities)
+                if (entity.isValid() && predicate.test(entity))
+                    chunkEntities.add(entity);
+        }
+
+        return chunkEntities;
+    }
+
+    /**
+     * Gets entities of a specific type in the Chunk of a Location
+     *
+     * @param location The Location of the Chunk
+     * @param entityType The type of entities to get
+     * @return A Collection of entities in the chunk
+     */
+    public Collection<Entity> getEntitiesInChunk(Location location, EntityType entityType) {
+        List<Entity> chunkEntities = new ArrayList<>();
+        EntityCell cell = this.getCell(location);
+        if (cell == null)
+            return chunkEntities;
+
+        Set<Entity> entities = cell.get(entityType);
         if (entities == null)
-            return new ArrayList<>();
+            return chunkEntities;
 
-        return entities.stream()
-                .filter(Entity::isValid)
-                .filter(predicate)
-                .collect(Collectors.toSet());
+        for (Entity entity : entities)
+            if (entity.isValid())
+                chunkEntities.add(entity);
+
+        return chunkEntities;
     }
 
     /**
@@ -116,59 +221,205 @@ public class EntityCacheManager extends Manager {
      * @param entity The entity to cache
      */
     public void preCacheEntity(Entity entity) {
+        if (!this.isCacheable(entity.getType()) || this.rosePlugin.getManager(StackManager.class).isWorldDisabled(entity.getWorld()))
+            return;
+
         Location location = entity.getLocation();
-        ChunkLocation chunkLocation = new ChunkLocation(entity.getWorld(), location.getBlockX() >> 4, location.getBlockZ() >> 4);
-        Collection<Entity> entities = this.entityCache.get(chunkLocation);
-        if (entities == null) {
-            entities = new LinkedBlockingDeque<>();
-            this.entityCache.put(chunkLocation, entities);
-        }
-        entities.add(entity);
-    }
-
-    private void refresh() {
-        synchronized (this.entityCache) {
-            this.entityCache.clear();
-            for (StackingThread stackingThread : this.rosePlugin.getManager(StackManager.class).getStackingThreads().values()) {
-                World world = stackingThread.getTargetWorld();
-                for (Entity entity : world.getEntities()) {
-                    EntityType type = entity.getType();
-                    if (type != EntityType.DROPPED_ITEM && (!type.isAlive() || type == EntityType.PLAYER || type == EntityType.ARMOR_STAND))
-                        continue;
-
-                    ChunkLocation chunkLocation = new ChunkLocation(world, entity.getLocation().getBlockX() >> 4, entity.getLocation().getBlockZ() >> 4);
-                    Collection<Entity> entities = this.entityCache.get(chunkLocation);
-                    if (entities == null) {
-                        entities = new LinkedBlockingDeque<>();
-                        this.entityCache.put(chunkLocation, entities);
-                    }
-                    entities.add(entity);
-                }
+        this.moveEntity(entity, new ChunkLocation(entity.getWorld(), location.getBlockX() >> 4, location.getBlockZ() >> 4));
+    }
+
+    /**
+     * Adds a group of entities to the cache, used when chunks load their entities
+     *
+     * @param entities The entities to cache
+     */
+    public void cacheEntities(Collection<Entity> entities) {
+        for (Entity entity : entities)
+            this.preCacheEntity(entity);
+    }
+
+    /**
+     * Removes a group of entities from the cache, used when chunks unload their entities
+     *
+     * @param entities The entities to remove from the cache
+     */
+    public void uncacheEntities(Collection<Entity> entities) {
+        for (Entity entity : entities)
+            this.uncacheEntity(entity);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntitySpawn(EntitySpawnEvent event) {
+        this.preCacheEntity(event.getEntity());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityDeath(EntityDeathEvent event) {
+        this.uncacheEntity(event.getEntity());
+    }
+
+    @EventHandler
+    public void onWorldUnload(WorldUnloadEvent event) {
+        World world = event.getWorld();
+        this.trackedEntities.values().removeIf(x -> x.getWorld().equals(world));
+        this.entityCache.remove(world);
+        this.sweepIterator = null;
+    }
+
+    /**
+     * Revalidates a slice of the tracked entities, moving any that have changed chunks and dropping any that are
+     * no longer valid. Every tracked entity gets revalidated once every {@link #SWEEP_PERIOD} ticks.
+     */
+    private void sweep() {
+        int remaining = this.trackedEntities.size() / SWEEP_PERIOD + 1;
+        while (remaining-- > 0) {
+            if (this.sweepIterator == null || !this.sweepIterator.hasNext()) {
+                this.sweepIterator = this.trackedEntities.entrySet().iterator();
+                if (!this.sweepIterator.hasNext())
+                    return;
+            }
+
+            Map.Entry<Entity, ChunkLocation> entry = this.sweepIterator.next();
+            Entity entity = entry.getKey();
+            ChunkLocation chunkLocation = entry.getValue();
+            if (!entity.isValid()) {
+                this.sweepIterator.remove();
+                this.removeFromCell(entity, chunkLocation);
+                continue;
+            }
+
+            entity.getLocation(this.sweepLocation);
+            int chunkX = this.sweepLocation.getBlockX() >> 4;
+            int chunkZ = this.sweepLocation.getBlockZ() >> 4;
+            if (chunkLocation.getKey() != StackerUtils.getChunkKey(chunkX, chunkZ) || !chunkLocation.getWorld().equals(entity.getWorld()))
+                this.moveEntity(entity, new ChunkLocation(entity.getWorld(), chunkX, chunkZ));
+        }
+    }
+
+    private void moveEntity(Entity entity, ChunkLocation chunkLocation) {
+        ChunkLocation previous = this.trackedEntities.put(entity, chunkLocation);
+        if (chunkLocation.equals(previous))
+            return;
+
+        if (previous != null)
+            this.removeFromCell(entity, previous);
+
+        LongObjectMap<EntityCell> cells = this.entityCache.computeIfAbsent(chunkLocation.getWorld(), x -> new LongObjectMap<>());
+        synchronized (cells) {
+            cells.computeIfAbsent(chunkLocation.getKey(), x -> new EntityCell()).add(entity);
+        }
+    }
+
+    private void uncacheEntity(Entity entity) {
+        ChunkLocation chunkLocation = this.trackedEntities.remove(entity);
+        if (chunkLocation != null)
+            this.removeFromCell(entity, chunkLocation);
+    }
+
+    private void removeFromCell(Entity entity, ChunkLocation chunkLocation) {
+        LongObjectMap<EntityCell> cells = this.entityCache.get(chunkLocation.getWorld());
+        if (cells == null)
+            return;
+
+        synchronized (cells) {
+            EntityCell cell = cells.get(chunkLocation.getKey());
+            if (cell != null && cell.remove(entity) && cell.isEmpty())
+                cells.remove(chunkLocation.getKey());
+        }
+    }
+
+    private EntityCell getCell(Location location) {
+        World world = location.getWorld();
+        if (world == null)
+            return null;
+
+        LongObjectMap<EntityCell> cells = this.entityCache.get(world);
+        if (cells == null)
+            return null;
+
+        return cells.get(StackerUtils.getChunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4));
+    }
+
+    private void visitInBounds(Set<Entity> entities, Location location, double minX, double minY, double minZ,
+                               double maxX, double maxY, double maxZ, Consumer<Entity> consumer) {
+        for (Entity entity : entities) {
+            if (!entity.isValid())
+                continue;
+
+            entity.getLocation(location);
+            double x = location.getX(), y = location.getY(), z = location.getZ();
+            if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ)
+                consumer.accept(entity);
+        }
+    }
+
+    private boolean isCacheable(EntityType type) {
+        return type == EntityType.DROPPED_ITEM || (type.isAlive() && type != EntityType.PLAYER && type != EntityType.ARMOR_STAND);
+    }
+
+    /**
+     * Holds the entities within a single chunk, partitioned by their EntityType
+     */
+    private static class EntityCell {
+
+        private final AtomicReferenceArray<Set<Entity>> entities;
+
+        public EntityCell() {
+            this.entities = new AtomicReferenceArray<>(ENTITY_TYPES.length);
+        }
+
+        public Set<Entity> get(EntityType entityType) {
+            return this.entities.get(entityType.ordinal());
+        }
+
+        public void add(Entity entity) {
+            int index = entity.getType().ordinal();
+            Set<Entity> entities = this.entities.get(index);
+            if (entities == null) {
+                entities = ConcurrentHashMap.newKeySet();
+                this.entities.set(index, entities);
+            }
+            entities.add(entity);
+        }
+
+        /**
+         * Removes an entity from this cell
+         *
+         * @param entity The entity to remove
+         * @return true if the entity was removed, false otherwise
+         */
+        public boolean remove(Entity entity) {
+            Set<Entity> entities = this.entities.get(entity.getType().ordinal());
+            return entities != null && entities.remove(entity);
+        }
+
+        public boolean isEmpty() {
+            for (int i = 0; i < this.entities.length(); i++) {
+                Set<Entity> entities = this.entities.get(i);
+                if (entities != null && !entities.isEmpty())
+                    return false;
             }
+            return true;
         }
+
     }
 
     private static class ChunkLocation {
 
         private final World world;
-        private final int x, z;
+        private final long key;
 
         public ChunkLocation(World world, int x, int z) {
             this.world = world;
-            this.x = x;
-            this.z = z;
+            this.key = StackerUtils.getChunkKey(x, z);
         }
 
         public World getWorld() {
             return this.world;
         }
 
-        public int getX() {
-            return this.x;
-        }
-
-        public int getZ() {
-            return this.z;
+        public long getKey() {
+            return this.key;
         }
 
         @Override
@@ -179,12 +430,12 @@ public class EntityCacheManager extends Manager {
             if (!(o instanceof ChunkLocation other))
                 return false;
 
-            return this.x == other.x && this.z == other.z && this.world.equals(other.world);
+            return this.key == other.key && this.world.equals(other.world);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(this.world, this.x, this.z);
+            return 31 * this.world.hashCode() + Long.hashCode(this.key);
         }
 
     }
@@ -6,11 +6,20 @@ import dev.rosewood.rosestacker.manager.ConfigurationManager.Setting;
 import dev.rosewood.rosestacker.nms.NMSAdapter;
 import dev.rosewood.rosestacker.nms.NMSHandler;
 import dev.rosewood.rosestacker.nms.hologram.Hologram;
-import java.util.Collection;
+import dev.rosewood.rosestacker.utils.StackerUtils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
@@ -22,15 +31,23 @@ import org.bukkit.scheduler.BukkitTask;
 public class HologramManager extends Manager implements Listener {
 
     private final Map<Location, Hologram> holograms;
+    private final Map<UUID, Map<Long, Set<Hologram>>> chunkHolograms;
+    private final Map<UUID, PlayerView> playerViews;
+    private final Queue<Hologram> dirtyHolograms;
     private final NMSHandler nmsHandler;
     private BukkitTask watcherTask;
+    private BukkitTask flushTask;
     private double renderDistanceSqrd;
+    private int renderChunkRadius;
     private boolean hideThroughWalls;
 
     public HologramManager(RosePlugin rosePlugin) {
         super(rosePlugin);
 
         this.holograms = new ConcurrentHashMap<>();
+        this.chunkHolograms = new ConcurrentHashMap<>();
+        this.playerViews = new ConcurrentHashMap<>();
+        this.dirtyHolograms = new ConcurrentLinkedQueue<>();
         this.nmsHandler = NMSAdapter.getHandler();
 
         Bukkit.getPluginManager().registerEvents(this, this.rosePlugin);
@@ -39,7 +56,9 @@ public class HologramManager extends Manager implements Listener {
     @Override
     public void reload() {
         this.watcherTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this.rosePlugin, this::updateWatchers, 0L, Setting.NAMETAG_UPDATE_FREQUENCY.getLong());
+        this.flushTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this.rosePlugin, this::flushHolograms, 1L, 1L);
         this.renderDistanceSqrd = Setting.BLOCK_DYNAMIC_TAG_VIEW_RANGE.getDouble() * Setting.BLOCK_DYNAMIC_TAG_VIEW_RANGE.getDouble();
+        this.renderChunkRadius = (int) Math.ceil(Setting.BLOCK_DYNAMIC_TAG_VIEW_RANGE.getDouble() / 16);
         this.hideThroughWalls = Setting.BLOCK_DYNAMIC_TAG_VIEW_RANGE_WALL_DETECTION_ENABLED.getBoolean();
     }
 
@@ -50,15 +69,89 @@ public class HologramManager extends Manager implements Listener {
             this.watcherTask = null;
         }
 
+        if (this.flushTask != null) {
+            this.flushTask.cancel();
+            this.flushTask = null;
+        }
+
         this.holograms.values().forEach(Hologram::delete);
+        this.flushHolograms();
         this.holograms.clear();
+        this.chunkHolograms.clear();
+        this.playerViews.clear();
     }
 
     private void updateWatchers() {
-        Collection<? extends Player> players = Bukkit.getOnlinePlayers();
-        for (Player player : players)
-            for (Hologram hologram : this.holograms.values())
-                this.updateWatcher(player, hologram);
+        for (Player player : Bukkit.getOnlinePlayers())
+            this.updatePlayerView(player);
+    }
+
+    /**
+     * Sends every hologram change made since the last flush, with all the changes for a player sent together.
+     * Only the holograms that added themselves to the dirty queue are flushed, including deleted ones.
+     */
+    private void flushHolograms() {
+        if (this.dirtyHolograms.isEmpty())
+            return;
+
+        Map<Player, List<Object>> packets = new HashMap<>();
+        Hologram hologram;
+        while ((hologram = this.dirtyHolograms.poll()) != null)
+            hologram.flush(packets);
+
+        packets.forEach((player, playerPackets) -> {
+            if (player.isOnline())
+                this.nmsHandler.sendHologramPackets(player, playerPackets);
+        });
+    }
+
+    /**
+     * Updates which holograms are near a player and then updates the player as a watcher of each of them.
+     * The nearby holograms are only recalculated for the chunks that entered or left the player's render radius.
+     *
+     * @param player The player to update
+     */
+    private void updatePlayerView(Player player) {
+        Location location = player.getLocation();
+        World world = location.getWorld();
+        if (world == null)
+            return;
+
+        UUID worldUUID = world.getUID();
+        int chunkX = location.getBlockX() >> 4;
+        int chunkZ = location.getBlockZ() >> 4;
+        List<Hologram> leaving = new ArrayList<>();
+
+        PlayerView playerView = this.playerViews.computeIfAbsent(player.getUniqueId(), x -> new PlayerView());
+        synchronized (this.playerViews) {
+            if (!worldUUID.equals(playerView.worldUUID)) {
+                leaving.addAll(playerView.nearby);
+                playerView.nearby.clear();
+                this.forEachChunkInRadius(chunkX, chunkZ, (x, z) -> playerView.nearby.addAll(this.getHolograms(worldUUID, x, z)));
+            } else if (chunkX != playerView.chunkX || chunkZ != playerView.chunkZ) {
+                this.forEachChunkInRadius(playerView.chunkX, playerView.chunkZ, (x, z) -> {
+                    if (!this.isInRadius(chunkX, chunkZ, x, z)) {
+                        Set<Hologram> holograms = this.getHolograms(worldUUID, x, z);
+                        playerView.nearby.removeAll(holograms);
+                        leaving.addAll(holograms);
+                    }
+                });
+                this.forEachChunkInRadius(chunkX, chunkZ, (x, z) -> {
+                    if (!this.isInRadius(playerView.chunkX, playerView.chunkZ, x, z))
+                        playerView.nearby.addAll(this.getHolograms(worldUUID, x, z));
+                });
+            }
+
+            playerView.worldUUID = worldUUID;
+            playerView.chunkX = chunkX;
+            playerView.chunkZ = chunkZ;
+        }
+
+        for (Hologram hologram : leaving)
+            hologram.removeWatcher(player);
+
+        for (Hologram hologram : playerView.nearby)
+            this.updateWatcher(player, hologram);
     }
 
     private void updateWatcher(Player player, Hologram hologram) {
@@ -75,21 +168,43 @@ public class HologramManager extends Manager implements Listener {
         return player.getWorld().equals(location.getWorld()) && player.getLocation().distanceSquared(location) <= this.renderDistanceSqrd;
     }
 
+    private boolean isInRadius(int centerChunkX, int centerChunkZ, int chunkX, int chunkZ) {
+        return Math.abs(chunkX - centerChunkX) <= this.renderChunkRadius && Math.abs(chunkZ - centerChunkZ) <= this.renderChunkRadius;
+    }
+
+    private void forEachChunkInRadius(int centerChunkX, int centerChunkZ, ChunkConsumer consumer) {
+        for (int x = centerChunkX - this.renderChunkRadius; x <= centerChunkX + this.renderChunkRadius; x++)
+            for (int z = centerChunkZ - this.renderChunkRadius; z <= centerChunkZ + this.renderChunkRadius; z++)
+                consumer.accept(x, z);
+    }
+
+    private Set<Hologram> getHolograms(UUID worldUUID, int chunkX, int chunkZ) {
+        Map<Long, Set<Hologram>> worldHolograms = this.chunkHolograms.get(worldUUID);
+        if (worldHolograms == null)
+            return Collections.emptySet();
+
+        Set<Hologram> holograms = worldHolograms.get(StackerUtils.getChunkKey(chunkX, chunkZ));
+        return holograms == null ? Collections.emptySet() : holograms;
+    }
+
+    private Set<Hologram> getOrCreateHolograms(Location location) {
+        return this.chunkHolograms.computeIfAbsent(location.getWorld().getUID(), x -> new ConcurrentHashMap<>())
+                .computeIfAbsent(StackerUtils.getChunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4), x -> ConcurrentHashMap.newKeySet());
+    }
+
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
-        Bukkit.getScheduler().runTaskAsynchronously(this.rosePlugin, () -> {
-            Player player = event.getPlayer();
-            for (Hologram hologram : this.holograms.values())
-                this.updateWatcher(player, hologram);
-        });
+        Bukkit.getScheduler().runTaskAsynchronously(this.rosePlugin, () -> this.updatePlayerView(event.getPlayer()));
     }
 
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
         Bukkit.getScheduler().runTaskAsynchronously(this.rosePlugin, () -> {
             Player player = event.getPlayer();
-            for (Hologram hologram : this.holograms.values())
-                hologram.removeWatcher(player);
+            PlayerView playerView = this.playerViews.remove(player.getUniqueId());
+            if (playerView != null)
+                for (Hologram hologram : playerView.nearby)
+                    hologram.removeWatcher(player);
         });
     }
 
@@ -103,9 +218,23 @@ public class HologramManager extends Manager implements Listener {
         Hologram hologram = this.holograms.get(location);
         if (hologram == null) {
             hologram = this.nmsHandler.createHologram(location, text);
+            hologram.setDirtyQueue(this.dirtyHolograms);
             this.holograms.put(location, hologram);
+
+            // Add the hologram to the players that already have its chunk in their render radius
+            UUID worldUUID = location.getWorld().getUID();
+            int chunkX = location.getBlockX() >> 4;
+            int chunkZ = location.getBlockZ() >> 4;
+            synchronized (this.playerViews) {
+                this.getOrCreateHolograms(location).add(hologram);
+                for (PlayerView playerView : this.playerViews.values())
+                    if (worldUUID.equals(playerView.worldUUID) && this.isInRadius(playerView.chunkX, playerView.chunkZ, chunkX, chunkZ))
+                        playerView.nearby.add(hologram);
+            }
+
             for (Player player : Bukkit.getOnlinePlayers())
-                this.updateWatcher(player, hologram);
+                if (this.isPlayerInRange(player, location))
+                    this.updateWatcher(player, hologram);
         } else {
             hologram.setText(text);
         }
@@ -121,7 +250,36 @@ public class HologramManager extends Manager implements Listener {
         if (hologram != null) {
             hologram.delete();
             this.holograms.remove(location);
+
+            synchronized (this.playerViews) {
+                this.getHolograms(location.getWorld().getUID(), location.getBlockX() >> 4, location.getBlockZ() >> 4).remove(hologram);
+                for (PlayerView playerView : this.playerViews.values())
+                    playerView.nearby.remove(hologram);
+            }
         }
     }
 
+    /**
+     * The holograms in the chunks around a player, as of the last time the player was updated
+     */
+    private static class PlayerView {
+
+        private final Set<Hologram> nearby;
+        private UUID worldUUID;
+        private int chunkX;
+        private int chunkZ;
+
+        public PlayerView() {
+            this.nearby = ConcurrentHashMap.newKeySet();
+        }
+
+    }
+
+    @FunctionalInterface
+    private interface ChunkConsumer {
+
+        void accept(int chunkX, int chunkZ);
+
+    }
+
 }
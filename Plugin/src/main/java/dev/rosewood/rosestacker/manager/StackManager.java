@@ -3,6 +3,7 @@ package dev.rosewood.rosestacker.manager;
 import dev.rosewood.rosegarden.RosePlugin;
 import dev.rosewood.rosegarden.manager.Manager;
 import dev.rosewood.rosestacker.manager.ConfigurationManager.Setting;
+import dev.rosewood.rosestacker.nms.util.ByteArraySpillTier;
 import dev.rosewood.rosestacker.stack.StackedBlock;
 import dev.rosewood.rosestacker.stack.StackedEntity;
 import dev.rosewood.rosestacker.stack.StackedItem;
@@ -13,6 +14,7 @@ import dev.rosewood.rosestacker.stack.settings.BlockStackSettings;
 import dev.rosewood.rosestacker.stack.settings.SpawnerStackSettings;
 import dev.rosewood.rosestacker.utils.DataUtils;
 import dev.rosewood.rosestacker.utils.PersistentDataUtils;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -20,7 +22,12 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
@@ -39,10 +46,15 @@ import org.bukkit.scheduler.BukkitTask;
  */
 public class StackManager extends Manager implements StackingLogic {
 
+    private static final int MAX_QUEUED_ENCODING_TASKS = 256;
+
     private final Map<UUID, StackingThread> stackingThreads;
     private final ConversionManager conversionManager;
 
     private BukkitTask pendingChunkTask, autosaveTask;
+    private ForkJoinPool stackingPool;
+    private ThreadPoolExecutor dataEncodingPool;
+    private int dataEncodingThreads;
     private final Map<Chunk, Long> pendingLoadChunks;
     private volatile boolean processingChunks;
     private long processingChunksTime;
@@ -62,6 +74,26 @@ public class StackManager extends Manager implements StackingLogic {
 
     @Override
     public void reload() {
+        // Create the pool used to search for entity stacks in parallel
+        int stackingThreads = Setting.ENTITY_STACKING_THREADS.getInt();
+        if (stackingThreads < 0)
+            stackingThreads = Runtime.getRuntime().availableProcessors() / 2;
+        if (stackingThreads > 1)
+            this.stackingPool = new ForkJoinPool(stackingThreads);
+
+        // Create the pool used to encode entity stack data when saving, kept apart from the stacking pool so saves never wait on a stacking pass
+        this.dataEncodingThreads = Math.max(1, stackingThreads);
+        this.dataEncodingPool = new ThreadPoolExecutor(this.dataEncodingThreads, this.dataEncodingThreads, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_ENCODING_TASKS), runnable -> {
+            Thread thread = new Thread(runnable, "RoseStacker Data Encoding");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dataEncodingPool.allowCoreThreadTimeOut(true);
+
+        // Limit how much entity stack data is kept in memory before it gets moved to disk
+        long memoryBudget = Setting.ENTITY_DATA_MEMORY_BUDGET.getLong();
+        ByteArraySpillTier.configure(new File(this.rosePlugin.getDataFolder(), "spill"), memoryBudget < 0 ? -1 : memoryBudget * 1024 * 1024);
+
         // Load a new StackingThread per world
         Bukkit.getWorlds().forEach(this::loadWorld);
 
@@ -93,6 +125,8 @@ public class StackManager extends Manager implements StackingLogic {
         DataManager dataManager = this.rosePlugin.getManager(DataManager.class);
         if (!dataManager.isConnected()) {
             this.stackingThreads.clear();
+            this.shutdownStackingPool();
+            this.shutdownDataEncodingPool();
             return;
         }
 
@@ -104,6 +138,44 @@ public class StackManager extends Manager implements StackingLogic {
         // Close and clear StackingThreads
         this.stackingThreads.values().forEach(StackingThread::close);
         this.stackingThreads.clear();
+
+        this.shutdownStackingPool();
+        this.shutdownDataEncodingPool();
+    }
+
+    /**
+     * @return the pool used to search for entity stacks in parallel, or null if searching should not be parallelized
+     */
+    public ForkJoinPool getStackingPool() {
+        return this.stackingPool;
+    }
+
+    /**
+     * @return the pool used to encode entity stack data when saving, or null if the manager is disabled
+     */
+    public ExecutorService getDataEncodingPool() {
+        return this.dataEncodingPool;
+    }
+
+    /**
+     * @return the number of threads in the data encoding pool
+     */
+    public int getDataEncodingThreads() {
+        return this.dataEncodingThreads;
+    }
+
+    private void shutdownDataEncodingPool() {
+        if (this.dataEncodingPool != null) {
+            this.dataEncodingPool.shutdown();
+            this.dataEncodingPool = null;
+        }
+    }
+
+    private void shutdownStackingPool() {
+        if (this.stackingPool != null) {
+            this.stackingPool.shutdown();
+            this.stackingPool = null;
+        }
     }
 
     @Override
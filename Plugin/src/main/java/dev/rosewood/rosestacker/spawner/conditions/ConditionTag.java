@@ -107,9 +107,41 @@ public abstract class ConditionTag {
         return this.perSpawn;
     }
 
+    /**
+     * @return how expensive this condition is to check, cheaper conditions are checked first
+     */
+    public Cost getCost() {
+        return Cost.BLOCK;
+    }
+
     @Override
     public String toString() {
         return this.tag;
     }
 
+    /**
+     * The relative cost of checking a condition, from cheapest to most expensive
+     */
+    public enum Cost {
+        /**
+         * Only compares coordinates or spawner state
+         */
+        POSITION,
+
+        /**
+         * Reads the spawn block or the blocks around it
+         */
+        BLOCK,
+
+        /**
+         * Reads light levels around the spawn block
+         */
+        LIGHT,
+
+        /**
+         * Looks up entities around the spawner
+         */
+        ENTITIES
+    }
+
 }
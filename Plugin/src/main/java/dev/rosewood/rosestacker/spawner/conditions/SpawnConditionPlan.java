@@ -0,0 +1,70 @@
+package dev.rosewood.rosestacker.spawner.conditions;
+
+import dev.rosewood.rosestacker.stack.StackedSpawner;
+import java.util.Collection;
+import java.util.Comparator;
+import org.bukkit.block.Block;
+
+/**
+ * The spawn requirements of a spawner, compiled once into the order they are checked in.
+ * Conditions are split into the ones checked once for the spawner and the ones checked for each spawn, and each group
+ * is sorted so the cheapest conditions are checked first. Checking stops at the first condition that fails.
+ */
+public class SpawnConditionPlan {
+
+    private final ConditionTag[] spawnerConditions;
+    private final ConditionTag[] perSpawnConditions;
+
+    /**
+     * @param conditions The conditions to compile
+     */
+    public SpawnConditionPlan(Collection<ConditionTag> conditions) {
+        Comparator<ConditionTag> byCost = Comparator.comparing(ConditionTag::getCost);
+        this.spawnerConditions = conditions.stream().filter(x -> !x.isRequiredPerSpawn()).sorted(byCost).toArray(ConditionTag[]::new);
+        this.perSpawnConditions = conditions.stream().filter(ConditionTag::isRequiredPerSpawn).sorted(byCost).toArray(ConditionTag[]::new);
+    }
+
+    /**
+     * Checks the conditions that only have to be met once for the spawner
+     *
+     * @param stackedSpawner The spawner to check
+     * @return the first condition that failed, or null if all conditions were met
+     */
+    public ConditionTag checkSpawner(StackedSpawner stackedSpawner) {
+        Block block = stackedSpawner.getBlock();
+        for (ConditionTag conditionTag : this.spawnerConditions)
+            if (!conditionTag.check(stackedSpawner, block))
+                return conditionTag;
+        return null;
+    }
+
+    /**
+     * Checks the conditions that have to be met for each spawn
+     *
+     * @param stackedSpawner The spawner that will be spawning the entity
+     * @param spawnBlock The block the entity will be spawned in
+     * @return the index of the first condition that failed, or -1 if all conditions were met
+     */
+    public int checkSpawn(StackedSpawner stackedSpawner, Block spawnBlock) {
+        for (int i = 0; i < this.perSpawnConditions.length; i++)
+            if (!this.perSpawnConditions[i].check(stackedSpawner, spawnBlock))
+                return i;
+        return -1;
+    }
+
+    /**
+     * @return the number of conditions that have to be met for each spawn
+     */
+    public int getPerSpawnConditionCount() {
+        return this.perSpawnConditions.length;
+    }
+
+    /**
+     * @param index The index of the condition, in the order they are checked
+     * @return the condition that has to be met for each spawn at the given index
+     */
+    public ConditionTag getPerSpawnCondition(int index) {
+        return this.perSpawnConditions[index];
+    }
+
+}
@@ -28,4 +28,9 @@ public class BelowSeaLevelConditionTag extends ConditionTag {
         return Collections.emptyList();
     }
 
+    @Override
+    public Cost getCost() {
+        return Cost.POSITION;
+    }
+
 }
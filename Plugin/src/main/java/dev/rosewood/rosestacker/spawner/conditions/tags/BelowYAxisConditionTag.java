@@ -38,4 +38,9 @@ public class BelowYAxisConditionTag extends ConditionTag {
         return Collections.singletonList(String.valueOf(this.yValue));
     }
 
+    @Override
+    public Cost getCost() {
+        return Cost.POSITION;
+    }
+
 }
@@ -36,4 +36,9 @@ public class DarknessConditionTag extends ConditionTag {
         return Collections.emptyList();
     }
 
+    @Override
+    public Cost getCost() {
+        return Cost.LIGHT;
+    }
+
 }
@@ -29,4 +29,9 @@ public class LightnessConditionTag extends ConditionTag {
         return Collections.emptyList();
     }
 
+    @Override
+    public Cost getCost() {
+        return Cost.LIGHT;
+    }
+
 }
@@ -42,7 +42,7 @@ public class MaxNearbyEntityConditionTag extends ConditionTag {
         Collection<Entity> nearbyEntities = this.entityCacheManager.getNearbyEntities(
                 block.getLocation().clone().add(0.5, 0.5, 0.5),
                 detectionRange,
-                entity -> entity.getType() == entityType);
+                entityType);
 
         if (Setting.SPAWNER_MAX_NEARBY_ENTITIES_INCLUDE_STACKS.getBoolean()) {
             return nearbyEntities.stream().mapToInt(x -> {
@@ -72,4 +72,9 @@ public class MaxNearbyEntityConditionTag extends ConditionTag {
         return Collections.singletonList(String.valueOf(this.maxNearbyEntities));
     }
 
+    @Override
+    public Cost getCost() {
+        return Cost.ENTITIES;
+    }
+
 }
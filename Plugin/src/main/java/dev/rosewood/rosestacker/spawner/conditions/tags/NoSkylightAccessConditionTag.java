@@ -28,4 +28,9 @@ public class NoSkylightAccessConditionTag extends ConditionTag {
         return Collections.emptyList();
     }
 
+    @Override
+    public Cost getCost() {
+        return Cost.LIGHT;
+    }
+
 }
@@ -27,4 +27,9 @@ public class NoneConditionTag extends ConditionTag {
         throw new IllegalStateException("None condition tag should not be used");
     }
 
+    @Override
+    public Cost getCost() {
+        return Cost.POSITION;
+    }
+
 }
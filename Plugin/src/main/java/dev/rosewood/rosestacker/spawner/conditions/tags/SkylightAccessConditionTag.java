@@ -28,4 +28,9 @@ public class SkylightAccessConditionTag extends ConditionTag {
         return Collections.emptyList();
     }
 
+    @Override
+    public Cost getCost() {
+        return Cost.LIGHT;
+    }
+
 }
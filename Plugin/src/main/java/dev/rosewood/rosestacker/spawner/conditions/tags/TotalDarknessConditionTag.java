@@ -32,4 +32,9 @@ public class TotalDarknessConditionTag extends ConditionTag {
         return Collections.emptyList();
     }
 
+    @Override
+    public Cost getCost() {
+        return Cost.LIGHT;
+    }
+
 }
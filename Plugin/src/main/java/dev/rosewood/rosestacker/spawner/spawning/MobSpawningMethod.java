@@ -11,6 +11,7 @@ import dev.rosewood.rosestacker.nms.NMSAdapter;
 import dev.rosewood.rosestacker.nms.NMSHandler;
 import dev.rosewood.rosestacker.nms.spawner.StackedSpawnerTile;
 import dev.rosewood.rosestacker.spawner.conditions.ConditionTag;
+import dev.rosewood.rosestacker.spawner.conditions.SpawnConditionPlan;
 import dev.rosewood.rosestacker.spawner.conditions.tags.NoneConditionTag;
 import dev.rosewood.rosestacker.spawner.conditions.tags.NotPlayerPlacedConditionTag;
 import dev.rosewood.rosestacker.stack.StackedEntity;
@@ -21,21 +22,19 @@ import dev.rosewood.rosestacker.utils.PersistentDataUtils;
 import dev.rosewood.rosestacker.utils.StackerUtils;
 import dev.rosewood.rosestacker.utils.ThreadUtils;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.Particle;
 import org.bukkit.World;
 import org.bukkit.block.Block;
-import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.LivingEntity;
 import org.bukkit.event.entity.CreatureSpawnEvent;
@@ -44,6 +43,9 @@ import org.bukkit.util.Vector;
 
 public class MobSpawningMethod implements SpawningMethod {
 
+    private static final ThreadLocal<SpawnScratch> SCRATCH = ThreadLocal.withInitial(SpawnScratch::new);
+    private static final int MAX_SPAWN_TEMPLATES = 8;
+
     private final EntityType entityType;
     private final Random random;
 
@@ -52,26 +54,29 @@ public class MobSpawningMethod implements SpawningMethod {
         this.random = new Random();
     }
 
+    public EntityType getEntityType() {
+        return this.entityType;
+    }
+
     @Override
     public void spawn(StackedSpawner stackedSpawner, boolean onlyCheckConditions) {
         StackedSpawnerTile spawnerTile = stackedSpawner.getSpawnerTile();
         SpawnerStackSettings stackSettings = stackedSpawner.getStackSettings();
 
         // Mob spawning logic
-        List<ConditionTag> spawnRequirements = new ArrayList<>(stackSettings.getSpawnRequirements());
+        SpawnConditionPlan conditionPlan = stackSettings.getSpawnConditionPlan();
 
         // Check general spawner conditions
-        List<ConditionTag> perSpawnConditions = spawnRequirements.stream().filter(ConditionTag::isRequiredPerSpawn).toList();
-        spawnRequirements.removeAll(perSpawnConditions);
+        List<ConditionTag> invalidSpawnConditions = new ArrayList<>();
+        ConditionTag failedSpawnerCondition = conditionPlan.checkSpawner(stackedSpawner);
+        if (failedSpawnerCondition != null)
+            invalidSpawnConditions.add(failedSpawnerCondition);
 
-        Set<ConditionTag> invalidSpawnConditions = spawnRequirements.stream().filter(x -> !x.check(stackedSpawner, stackedSpawner.getBlock())).collect(Collectors.toSet());
         if (Setting.SPAWNER_SPAWN_ONLY_PLAYER_PLACED.getBoolean() && !stackedSpawner.isPlacedByPlayer())
             invalidSpawnConditions.add(NotPlayerPlacedConditionTag.INSTANCE);
 
         boolean passedSpawnerChecks = invalidSpawnConditions.isEmpty();
 
-        invalidSpawnConditions.addAll(perSpawnConditions); // Will be removed when they pass
-
         // Spawn the mobs
         int spawnAmount;
         if (Setting.SPAWNER_SPAWN_COUNT_STACK_SIZE_RANDOMIZED.getBoolean()) {
@@ -93,57 +98,90 @@ public class MobSpawningMethod implements SpawningMethod {
             if (!stackedSpawner.getWorld().isChunkLoaded(stackedSpawner.getLocation().getBlockX() >> 4, stackedSpawner.getLocation().getBlockZ() >> 4))
                 return;
 
-            Set<Location> spawnLocations = new HashSet<>();
-            Set<Location> invalidLocations = new HashSet<>();
+            SpawnScratch scratch = SCRATCH.get();
+            Set<Location> spawnLocations = scratch.spawnLocations;
+            Set<Location> invalidLocations = scratch.invalidLocations;
+            List<StackedEntity> nearbyStackedEntities = scratch.nearbyStackedEntities;
+            scratch.clear();
+
+            // Per-spawn conditions are checked in order and stop at the first failure, so the conditions that passed
+            // at least once are always the ones before the furthest failure
+            int perSpawnConditionCount = conditionPlan.getPerSpawnConditionCount();
+            int passedConditions = 0;
+
+            Location spawnerLocation = stackedSpawner.getLocation();
+            World world = stackedSpawner.getWorld();
+            boolean useVerticalSpawnRange = Setting.SPAWNER_USE_VERTICAL_SPAWN_RANGE.getBoolean();
             int spawnRange = spawnerTile.getSpawnRange();
-            int attempts = 0;
-            int maxFailedSpawnAttempts = Setting.SPAWNER_MAX_FAILED_SPAWN_ATTEMPTS.getInt() * spawnRange * spawnRange;
-            while (attempts <= maxFailedSpawnAttempts) {
-                int xOffset = this.random.nextInt(spawnRange * 2 + 1) - spawnRange;
-                int yOffset = !Setting.SPAWNER_USE_VERTICAL_SPAWN_RANGE.getBoolean() ? this.random.nextInt(3) - 1 : this.random.nextInt(spawnRange * 2 + 1) - spawnRange;
-                int zOffset = this.random.nextInt(spawnRange * 2 + 1) - spawnRange;
-
-                Location spawnLocation = stackedSpawner.getLocation().clone().add(xOffset + 0.5, yOffset, zOffset + 0.5);
-                if (invalidLocations.contains(spawnLocation)) {
-                    // Decrease max failed spawn attempts if the location is invalid to avoid spinning forever
-                    maxFailedSpawnAttempts--;
-                    continue;
+            int verticalSpawnRange = useVerticalSpawnRange ? spawnRange : 1;
+            int spawnCellCacheDuration = Setting.SPAWNER_SPAWN_CELL_CACHE_DURATION.getInt();
+            if (spawnCellCacheDuration > 0) {
+                // Pick from the blocks that were valid the last time the whole spawn range was checked
+                SpawnCells spawnCells = stackedSpawner.getSpawnCells();
+                if (spawnCells == null || !spawnCells.isValidFor(conditionPlan, spawnRange, verticalSpawnRange)) {
+                    spawnCells = SpawnCells.build(stackedSpawner, conditionPlan, spawnRange, verticalSpawnRange, spawnCellCacheDuration * 1000L);
+                    stackedSpawner.setSpawnCells(spawnCells);
                 }
 
-                Block target = stackedSpawner.getLocation().clone().add(xOffset, yOffset, zOffset).getBlock();
+                passedConditions = spawnCells.getPassedConditions();
+
+                int picks = passedSpawnerChecks ? Math.min(spawnAmount, spawnCells.size()) * 2 : 0;
+                for (int i = 0; i < picks && spawnLocations.size() < spawnAmount; i++) {
+                    int index = this.random.nextInt(spawnCells.size());
+                    Block target = world.getBlockAt(spawnCells.getX(index), spawnCells.getY(index), spawnCells.getZ(index));
 
-                boolean invalid = false;
-                for (ConditionTag conditionTag : perSpawnConditions) {
-                    if (!conditionTag.check(stackedSpawner, target)) {
-                        invalid = true;
-                    } else {
-                        invalidSpawnConditions.remove(conditionTag);
+                    // Light levels can change without any block changing, make sure the block is still valid
+                    if (conditionPlan.checkSpawn(stackedSpawner, target) != -1) {
+                        stackedSpawner.setSpawnCells(null);
+                        continue;
                     }
-                }
 
-                if (invalid) {
-                    invalidLocations.add(spawnLocation);
-                    attempts++;
-                    continue;
+                    spawnLocations.add(target.getLocation().add(0.5, 0, 0.5));
                 }
+            } else {
+                int attempts = 0;
+                int maxFailedSpawnAttempts = Setting.SPAWNER_MAX_FAILED_SPAWN_ATTEMPTS.getInt() * spawnRange * spawnRange;
+                while (attempts <= maxFailedSpawnAttempts) {
+                    int xOffset = this.random.nextInt(spawnRange * 2 + 1) - spawnRange;
+                    int yOffset = this.random.nextInt(verticalSpawnRange * 2 + 1) - verticalSpawnRange;
+                    int zOffset = this.random.nextInt(spawnRange * 2 + 1) - spawnRange;
+
+                    Location spawnLocation = spawnerLocation.clone().add(xOffset + 0.5, yOffset, zOffset + 0.5);
+                    if (invalidLocations.contains(spawnLocation)) {
+                        // Decrease max failed spawn attempts if the location is invalid to avoid spinning forever
+                        maxFailedSpawnAttempts--;
+                        continue;
+                    }
+
+                    Block target = world.getBlockAt(spawnerLocation.getBlockX() + xOffset, spawnerLocation.getBlockY() + yOffset, spawnerLocation.getBlockZ() + zOffset);
 
-                if (!passedSpawnerChecks)
-                    break;
+                    int failedCondition = conditionPlan.checkSpawn(stackedSpawner, target);
+                    passedConditions = Math.max(passedConditions, failedCondition == -1 ? perSpawnConditionCount : failedCondition);
 
-                spawnLocations.add(spawnLocation);
-                if (spawnLocations.size() >= spawnAmount)
-                    break;
+                    if (failedCondition != -1) {
+                        invalidLocations.add(spawnLocation);
+                        attempts++;
+                        continue;
+                    }
+
+                    if (!passedSpawnerChecks)
+                        break;
+
+                    spawnLocations.add(spawnLocation);
+                    if (spawnLocations.size() >= spawnAmount)
+                        break;
+                }
             }
 
+            if (passedConditions < perSpawnConditionCount)
+                invalidSpawnConditions.add(conditionPlan.getPerSpawnCondition(passedConditions));
+
             EntityType entityType = stackedSpawner.getSpawnerTile().getSpawnedType();
-            Predicate<Entity> predicate = entity -> entity.getType() == entityType;
-            Collection<Entity> nearbyEntities = entityCacheManager.getNearbyEntities(stackedSpawner.getLocation(), stackSettings.getSpawnRange(), predicate);
-            List<StackedEntity> nearbyStackedEntities = new ArrayList<>();
-            for (Entity entity : nearbyEntities) {
+            entityCacheManager.forEachNearbyEntity(stackedSpawner.getLocation(), stackSettings.getSpawnRange(), entityType, entity -> {
                 StackedEntity stackedEntity = stackManager.getStackedEntity((LivingEntity) entity);
                 if (stackedEntity != null)
                     nearbyStackedEntities.add(stackedEntity);
-            }
+            });
 
             int successfulSpawns;
             if (!onlyCheckConditions) {
@@ -152,6 +190,8 @@ public class MobSpawningMethod implements SpawningMethod {
                 successfulSpawns = spawnAmount > 0 && !spawnLocations.isEmpty() ? 1 : 0;
             }
 
+            scratch.clear();
+
             stackedSpawner.getLastInvalidConditions().clear();
             if (successfulSpawns <= 0) {
                 if (invalidSpawnConditions.isEmpty()) {
@@ -180,7 +220,6 @@ public class MobSpawningMethod implements SpawningMethod {
 
     private int spawnEntitiesIntoNearbyStacks(StackedSpawner stackedSpawner, int spawnAmount, Set<Location> locations, List<StackedEntity> nearbyEntities, StackManager stackManager) {
         EntityStackSettings entityStackSettings = RoseStacker.getInstance().getManager(StackSettingManager.class).getEntityStackSettings(this.entityType);
-        List<StackedEntity> stackedEntities = new ArrayList<>(nearbyEntities);
         List<Location> possibleLocations = new ArrayList<>(locations);
 
         if (this.entityType.getEntityClass() == null)
@@ -193,37 +232,62 @@ public class MobSpawningMethod implements SpawningMethod {
 
             List<StackedEntity> updatedStacks = new ArrayList<>();
 
-            Location previousLocation = null;
-            for (int i = 0; i < spawnAmount; i++) {
-                Location location = possibleLocations.isEmpty() ? previousLocation : possibleLocations.get(this.random.nextInt(possibleLocations.size()));
-                if (location == null)
-                    break;
-
+            // Group the stacks by compatibility key so only stacks that could possibly match need to be fully compared
+            Map<Integer, List<StackedEntity>> compatibilityBuckets = new HashMap<>();
+            for (StackedEntity stackedEntity : nearbyEntities)
+                compatibilityBuckets.computeIfAbsent(entityStackSettings.getStackCompatibilityKey(stackedEntity), x -> new ArrayList<>()).add(stackedEntity);
+
+            if (possibleLocations.isEmpty())
+                return 0;
+
+            // Only a few entities are constructed, every mob spawned is a copy of one of them.
+            // Each mob picks its template at random, so each variant is as likely as it would be if every mob was constructed.
+            boolean disableAi = (stackedSpawner.getStackSettings().isMobAIDisabled() && (!Setting.SPAWNER_DISABLE_MOB_AI_ONLY_PLAYER_PLACED.getBoolean() || stackedSpawner.isPlacedByPlayer())) || Setting.ENTITY_DISABLE_ALL_MOB_AI.getBoolean();
+            int templateCount = Math.min(spawnAmount, MAX_SPAWN_TEMPLATES);
+            List<SpawnTemplate> templates = new ArrayList<>(templateCount);
+            for (int i = 0; i < templateCount; i++) {
+                Location location = possibleLocations.get(this.random.nextInt(possibleLocations.size()));
                 LivingEntity entity = nmsHandler.createNewEntityUnspawned(this.entityType, location, CreatureSpawnEvent.SpawnReason.SPAWNER);
                 SpawnerFlagPersistenceHook.flagSpawnerSpawned(entity);
 
-                if ((stackedSpawner.getStackSettings().isMobAIDisabled() && (!Setting.SPAWNER_DISABLE_MOB_AI_ONLY_PLAYER_PLACED.getBoolean() || stackedSpawner.isPlacedByPlayer())) || Setting.ENTITY_DISABLE_ALL_MOB_AI.getBoolean())
+                if (disableAi)
                     PersistentDataUtils.removeEntityAi(entity);
 
                 entityStackSettings.applySpawnerSpawnedProperties(entity);
 
-                StackedEntity newStack = new StackedEntity(entity);
-                Optional<StackedEntity> matchingEntity = stackedEntities.stream().filter(x ->
-                        WorldGuardHook.testLocation(x.getLocation()) && entityStackSettings.testCanStackWith(x, newStack, false, true)).findAny();
-                if (matchingEntity.isPresent()) {
-                    matchingEntity.get().increaseStackSize(entity, false);
-                    updatedStacks.add(matchingEntity.get());
-                } else {
-                    if (possibleLocations.isEmpty())
-                        break;
+                templates.add(new SpawnTemplate(entity, location, new StackedEntity(entity)));
+            }
 
-                    stackedEntities.add(newStack);
+            for (int i = 0; i < spawnAmount; i++)
+                templates.get(i < templateCount ? i : this.random.nextInt(templateCount)).amount++;
+
+            spawnLoop:
+            for (SpawnTemplate template : templates) {
+                List<StackedEntity> bucket = compatibilityBuckets.computeIfAbsent(entityStackSettings.getStackCompatibilityKey(template.stack), x -> new ArrayList<>());
+                int remaining = template.amount;
+                while (remaining > 0) {
+                    Optional<StackedEntity> matchingEntity = bucket.stream().filter(x ->
+                            WorldGuardHook.testLocation(x.getLocation()) && entityStackSettings.testCanStackWith(x, template.stack, false, true)).findAny();
+                    if (matchingEntity.isPresent()) {
+                        // Add as many copies as the stack has room for in one go
+                        StackedEntity stackedEntity = matchingEntity.get();
+                        int amount = Math.min(remaining, entityStackSettings.getMaxStackSize() - stackedEntity.getStackSize());
+                        stackedEntity.increaseStackSize(template.entity, amount, false);
+                        updatedStacks.add(stackedEntity);
+                        remaining -= amount;
+                        successfulSpawns += amount;
+                        continue;
+                    }
+
+                    StackedEntity newStack = this.createStackFromTemplate(template, possibleLocations, nmsHandler, disableAi);
+                    if (newStack == null)
+                        break spawnLoop;
+
+                    bucket.add(newStack);
                     newStacks.add(newStack);
-                    possibleLocations.remove(location);
+                    remaining--;
+                    successfulSpawns++;
                 }
-
-                previousLocation = location;
-                successfulSpawns++;
             }
 
             updatedStacks.forEach(StackedEntity::updateDisplay);
@@ -286,4 +350,72 @@ public class MobSpawningMethod implements SpawningMethod {
         return successfulSpawns;
     }
 
+    /**
+     * Creates an entity for a new stack from a spawn template.
+     * The constructed template entity is used for the first stack if its location is still free, other stacks get a copy of it.
+     *
+     * @return the new stack, or null if there are no more locations to spawn at
+     */
+    private StackedEntity createStackFromTemplate(SpawnTemplate template, List<Location> possibleLocations, NMSHandler nmsHandler, boolean disableAi) {
+        if (!template.used && possibleLocations.remove(template.location)) {
+            template.used = true;
+            return new StackedEntity(template.entity);
+        }
+
+        if (possibleLocations.isEmpty())
+            return null;
+
+        Location location = possibleLocations.remove(this.random.nextInt(possibleLocations.size()));
+        LivingEntity entity = nmsHandler.createEntityFromNBT(nmsHandler.getEntityAsNBT(template.entity), location, false, this.entityType);
+        if (entity == null)
+            return null;
+
+        if (disableAi)
+            PersistentDataUtils.removeEntityAi(entity);
+
+        return new StackedEntity(entity);
+    }
+
+    /**
+     * Collections reused between spawns on the same thread to avoid allocating new ones for every spawn
+     */
+    private static class SpawnScratch {
+
+        private final Set<Location> spawnLocations;
+        private final Set<Location> invalidLocations;
+        private final List<StackedEntity> nearbyStackedEntities;
+
+        public SpawnScratch() {
+            this.spawnLocations = new HashSet<>();
+            this.invalidLocations = new HashSet<>();
+            this.nearbyStackedEntities = new ArrayList<>();
+        }
+
+        public void clear() {
+            this.spawnLocations.clear();
+            this.invalidLocations.clear();
+            this.nearbyStackedEntities.clear();
+        }
+
+    }
+
+    /**
+     * An entity constructed for a spawn that other spawned mobs are copied from
+     */
+    private static class SpawnTemplate {
+
+        private final LivingEntity entity;
+        private final Location location;
+        private final StackedEntity stack;
+        private int amount;
+        private boolean used;
+
+        public SpawnTemplate(LivingEntity entity, Location location, StackedEntity stack) {
+            this.entity = entity;
+            this.location = location;
+            this.stack = stack;
+        }
+
+    }
+
 }
@@ -0,0 +1,143 @@
+package dev.rosewood.rosestacker.spawner.spawning;
+
+import dev.rosewood.rosestacker.spawner.conditions.SpawnConditionPlan;
+import dev.rosewood.rosestacker.stack.StackedSpawner;
+import java.util.Arrays;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+
+/**
+ * The blocks around a spawner that met every per-spawn condition when they were last checked.
+ * Every block in the spawn range is checked once, spawns then pick from these blocks instead of checking random ones.
+ */
+public class SpawnCells {
+
+    private final SpawnConditionPlan conditionPlan;
+    private final int spawnerX;
+    private final int spawnerY;
+    private final int spawnerZ;
+    private final int spawnRange;
+    private final int verticalRange;
+    private final int[] x;
+    private final int[] y;
+    private final int[] z;
+    private final int size;
+    private final int passedConditions;
+    private final long expiresAt;
+
+    private SpawnCells(SpawnConditionPlan conditionPlan, Block spawner, int spawnRange, int verticalRange, int[] x, int[] y, int[] z, int size, int passedConditions, long expiresAt) {
+        this.conditionPlan = conditionPlan;
+        this.spawnerX = spawner.getX();
+        this.spawnerY = spawner.getY();
+        this.spawnerZ = spawner.getZ();
+        this.spawnRange = spawnRange;
+        this.verticalRange = verticalRange;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.size = size;
+        this.passedConditions = passedConditions;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Checks every block in the spawn range of a spawner against the per-spawn conditions
+     *
+     * @param stackedSpawner The spawner to find the blocks for
+     * @param conditionPlan The conditions to check
+     * @param spawnRange The horizontal spawn range
+     * @param verticalRange The vertical spawn range
+     * @param durationMillis How many milliseconds the blocks should be used for
+     * @return the blocks that met every per-spawn condition
+     */
+    public static SpawnCells build(StackedSpawner stackedSpawner, SpawnConditionPlan conditionPlan, int spawnRange, int verticalRange, long durationMillis) {
+        Block spawner = stackedSpawner.getBlock();
+        World world = spawner.getWorld();
+        int capacity = (spawnRange * 2 + 1) * (spawnRange * 2 + 1) * (verticalRange * 2 + 1);
+        int[] x = new int[capacity];
+        int[] y = new int[capacity];
+        int[] z = new int[capacity];
+        int size = 0;
+
+        int conditionCount = conditionPlan.getPerSpawnConditionCount();
+        int passedConditions = 0;
+        for (int xOffset = -spawnRange; xOffset <= spawnRange; xOffset++) {
+            for (int yOffset = -verticalRange; yOffset <= verticalRange; yOffset++) {
+                for (int zOffset = -spawnRange; zOffset <= spawnRange; zOffset++) {
+                    int blockX = spawner.getX() + xOffset;
+                    int blockY = spawner.getY() + yOffset;
+                    int blockZ = spawner.getZ() + zOffset;
+                    int failedCondition = conditionPlan.checkSpawn(stackedSpawner, world.getBlockAt(blockX, blockY, blockZ));
+                    if (failedCondition != -1) {
+                        passedConditions = Math.max(passedConditions, failedCondition);
+                        continue;
+                    }
+
+                    passedConditions = conditionCount;
+                    x[size] = blockX;
+                    y[size] = blockY;
+                    z[size] = blockZ;
+                    size++;
+                }
+            }
+        }
+
+        return new SpawnCells(conditionPlan, spawner, spawnRange, verticalRange, Arrays.copyOf(x, size), Arrays.copyOf(y, size),
+                Arrays.copyOf(z, size), size, passedConditions, System.currentTimeMillis() + durationMillis);
+    }
+
+    /**
+     * Checks if these blocks can still be used for a spawn
+     *
+     * @param conditionPlan The conditions the spawn will use
+     * @param spawnRange The horizontal spawn range the spawn will use
+     * @param verticalRange The vertical spawn range the spawn will use
+     * @return true if these blocks were found with the same conditions and ranges and have not expired, false otherwise
+     */
+    public boolean isValidFor(SpawnConditionPlan conditionPlan, int spawnRange, int verticalRange) {
+        return this.conditionPlan == conditionPlan
+                && this.spawnRange == spawnRange
+                && this.verticalRange == verticalRange
+                && System.currentTimeMillis() < this.expiresAt;
+    }
+
+    /**
+     * Checks if a change to a block could change which blocks are valid.
+     * Conditions can look at the blocks next to the spawn block, so blocks just outside the spawn range are included.
+     *
+     * @param block The block that changed
+     * @return true if the block is in or next to the spawn range, false otherwise
+     */
+    public boolean isAffectedBy(Block block) {
+        return Math.abs(block.getX() - this.spawnerX) <= this.spawnRange + 1
+                && Math.abs(block.getY() - this.spawnerY) <= this.verticalRange + 1
+                && Math.abs(block.getZ() - this.spawnerZ) <= this.spawnRange + 1;
+    }
+
+    /**
+     * @return the number of blocks
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public int getX(int index) {
+        return this.x[index];
+    }
+
+    public int getY(int index) {
+        return this.y[index];
+    }
+
+    public int getZ(int index) {
+        return this.z[index];
+    }
+
+    /**
+     * @return the number of per-spawn conditions, in the order they are checked, that passed for at least one block
+     */
+    public int getPassedConditions() {
+        return this.passedConditions;
+    }
+
+}
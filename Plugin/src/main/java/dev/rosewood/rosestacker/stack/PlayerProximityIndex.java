@@ -0,0 +1,135 @@
+package dev.rosewood.rosestacker.stack;
+
+import dev.rosewood.rosestacker.utils.LongObjectMap;
+import dev.rosewood.rosestacker.utils.StackerUtils;
+import java.util.Arrays;
+import org.bukkit.GameMode;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+/**
+ * The alive, non-spectator players in a world grouped by the chunk they are in.
+ * The index is rebuilt at most once per tick, the first time it is queried after being invalidated, so checking many
+ * spawners only looks at the players in the chunks around each spawner instead of every player in the world.
+ * Must only be used from the main thread.
+ */
+public class PlayerProximityIndex {
+
+    private final World world;
+    private final LongObjectMap<PlayerCell> cells;
+    private final PlayerCell allPlayers;
+    private boolean dirty;
+
+    /**
+     * @param world The world to index the players of
+     */
+    public PlayerProximityIndex(World world) {
+        this.world = world;
+        this.cells = new LongObjectMap<>();
+        this.allPlayers = new PlayerCell();
+        this.dirty = true;
+    }
+
+    /**
+     * Marks the player positions as outdated, they will be read again the next time the index is queried
+     */
+    public void invalidate() {
+        this.dirty = true;
+    }
+
+    /**
+     * Checks if an alive player that is not spectating is within a range of a position, the same as the server does for
+     * spawners
+     *
+     * @param x The x position
+     * @param y The y position
+     * @param z The z position
+     * @param range The range
+     * @return true if a player is within the range, false otherwise
+     */
+    public boolean isPlayerNearby(double x, double y, double z, double range) {
+        if (this.dirty)
+            this.rebuild();
+
+        if (this.allPlayers.size == 0)
+            return false;
+
+        double rangeSqrd = range * range;
+        int minChunkX = (int) Math.floor(x - range) >> 4;
+        int maxChunkX = (int) Math.floor(x + range) >> 4;
+        int minChunkZ = (int) Math.floor(z - range) >> 4;
+        int maxChunkZ = (int) Math.floor(z + range) >> 4;
+
+        // Checking every player is cheaper than looking up more chunks than there are players
+        long chunkCount = (long) (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1);
+        if (chunkCount > this.allPlayers.size)
+            return this.allPlayers.isPlayerWithin(x, y, z, rangeSqrd);
+
+        for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                PlayerCell cell = this.cells.get(StackerUtils.getChunkKey(chunkX, chunkZ));
+                if (cell != null && cell.isPlayerWithin(x, y, z, rangeSqrd))
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void rebuild() {
+        this.dirty = false;
+        this.cells.clear();
+        this.allPlayers.clear();
+
+        for (Player player : this.world.getPlayers()) {
+            if (player.isDead() || player.getGameMode() == GameMode.SPECTATOR)
+                continue;
+
+            Location location = player.getLocation();
+            double x = location.getX();
+            double y = location.getY();
+            double z = location.getZ();
+            this.allPlayers.add(x, y, z);
+            this.cells.computeIfAbsent(StackerUtils.getChunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4), key -> new PlayerCell()).add(x, y, z);
+        }
+    }
+
+    private static class PlayerCell {
+
+        private double[] positions;
+        private int size;
+
+        public PlayerCell() {
+            this.positions = new double[3];
+        }
+
+        public void add(double x, double y, double z) {
+            if (this.positions.length < (this.size + 1) * 3)
+                this.positions = Arrays.copyOf(this.positions, this.positions.length * 2);
+
+            int index = this.size * 3;
+            this.positions[index] = x;
+            this.positions[index + 1] = y;
+            this.positions[index + 2] = z;
+            this.size++;
+        }
+
+        public boolean isPlayerWithin(double x, double y, double z, double rangeSqrd) {
+            for (int i = 0; i < this.size * 3; i += 3) {
+                double dx = this.positions[i] - x;
+                double dy = this.positions[i + 1] - y;
+                double dz = this.positions[i + 2] - z;
+                if (dx * dx + dy * dy + dz * dz < rangeSqrd)
+                    return true;
+            }
+            return false;
+        }
+
+        public void clear() {
+            this.size = 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,138 @@
+package dev.rosewood.rosestacker.stack;
+
+import dev.rosewood.rosegarden.RosePlugin;
+import dev.rosewood.rosestacker.RoseStacker;
+import dev.rosewood.rosestacker.manager.StackManager;
+import dev.rosewood.rosestacker.nms.spawner.StackedSpawnerTile;
+import dev.rosewood.rosestacker.utils.TimingWheel;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Runs the stacked spawners of a world on the ticks they have something to do, such as a spawn or a player check.
+ * The server still ticks each spawner tile every tick, but that only tells the scheduler the tile is still loaded.
+ * Must only be used from the main thread.
+ */
+public class SpawnerTickScheduler implements AutoCloseable {
+
+    private final RosePlugin rosePlugin;
+    private final TimingWheel<StackedSpawnerTile> wheel;
+    private final Map<StackedSpawnerTile, Long> scheduledTicks;
+    private final PlayerProximityIndex playerIndex;
+    private final BukkitTask tickTask;
+
+    private int lastTickCount;
+    private boolean closed;
+
+    /**
+     * @param rosePlugin The plugin to schedule the tick task with
+     * @param world The world the spawners are in
+     */
+    public SpawnerTickScheduler(RosePlugin rosePlugin, World world) {
+        this.rosePlugin = rosePlugin;
+        this.wheel = new TimingWheel<>();
+        this.scheduledTicks = new IdentityHashMap<>();
+        this.playerIndex = new PlayerProximityIndex(world);
+        this.tickTask = Bukkit.getScheduler().runTaskTimer(rosePlugin, this::tick, 1L, 1L);
+    }
+
+    /**
+     * Gets the scheduler for the spawners in a world
+     *
+     * @param world The world
+     * @return the scheduler for the world, or null if the world is not being stacked in
+     */
+    public static SpawnerTickScheduler get(World world) {
+        StackingThread stackingThread = RoseStacker.getInstance().getManager(StackManager.class).getStackingThread(world);
+        return stackingThread == null ? null : stackingThread.getSpawnerTickScheduler();
+    }
+
+    /**
+     * @return the tick the scheduler is currently at
+     */
+    public long getCurrentTick() {
+        return this.wheel.getCurrentTick();
+    }
+
+    /**
+     * @return the players in the world, indexed for the player checks of the spawners run this tick
+     */
+    public PlayerProximityIndex getPlayerIndex() {
+        return this.playerIndex;
+    }
+
+    /**
+     * Schedules a spawner to be run, replacing the tick it was previously scheduled for
+     *
+     * @param tile The spawner tile to run
+     * @param tick The tick to run the spawner at, ticks that have already passed run on the next tick
+     */
+    public void schedule(StackedSpawnerTile tile, long tick) {
+        tick = Math.max(tick, this.wheel.getCurrentTick() + 1);
+        Long previousTick = this.scheduledTicks.put(tile, tick);
+        if (previousTick == null || previousTick != tick)
+            this.wheel.schedule(tile, tick);
+    }
+
+    /**
+     * @return the number of spawners waiting to be run
+     */
+    public int getScheduledCount() {
+        return this.scheduledTicks.size();
+    }
+
+    /**
+     * @return the number of spawners run during the last tick
+     */
+    public int getLastTickCount() {
+        return this.lastTickCount;
+    }
+
+    /**
+     * @return true if the scheduler has been closed and will no longer run spawners, false otherwise
+     */
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Stops running spawners and forgets every scheduled spawner
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.tickTask.cancel();
+        this.wheel.clear();
+        this.scheduledTicks.clear();
+    }
+
+    private void tick() {
+        this.lastTickCount = 0;
+        this.playerIndex.invalidate();
+        this.wheel.advance((tile, tick) -> {
+            // Rescheduling leaves the old entry in the wheel, only run the spawner for the tick it is scheduled for
+            Long scheduledTick = this.scheduledTicks.get(tile);
+            if (scheduledTick == null || scheduledTick != tick)
+                return;
+
+            this.scheduledTicks.remove(tile);
+            this.lastTickCount++;
+
+            long nextTick;
+            try {
+                nextTick = tile.tick(tick);
+            } catch (Exception e) {
+                this.rosePlugin.getLogger().log(Level.WARNING, "An error occurred ticking a stacked spawner", e);
+                nextTick = tick + 1;
+            }
+
+            if (nextTick >= 0)
+                this.schedule(tile, nextTick);
+        });
+    }
+
+}
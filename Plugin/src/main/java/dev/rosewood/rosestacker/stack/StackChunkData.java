@@ -1,51 +1,78 @@
 package dev.rosewood.rosestacker.stack;
 
-import java.util.Map;
+import dev.rosewood.rosestacker.utils.LongObjectMap;
+import dev.rosewood.rosestacker.utils.StackerUtils;
+import java.util.List;
 import org.bukkit.block.Block;
 
 /**
- * Tracks a Chunk's StackedSpawners and StackedBlocks
+ * Tracks a Chunk's StackedSpawners and StackedBlocks, keyed by their packed block coordinates
  */
 public class StackChunkData {
 
-    private final Map<Block, StackedSpawner> stackedSpawners;
-    private final Map<Block, StackedBlock> stackedBlocks;
+    private final LongObjectMap<StackedSpawner> stackedSpawners;
+    private final LongObjectMap<StackedBlock> stackedBlocks;
 
-    public StackChunkData(Map<Block, StackedSpawner> stackedSpawners, Map<Block, StackedBlock> stackedBlocks) {
-        this.stackedSpawners = stackedSpawners;
-        this.stackedBlocks = stackedBlocks;
+    public StackChunkData() {
+        this.stackedSpawners = new LongObjectMap<>();
+        this.stackedBlocks = new LongObjectMap<>();
     }
 
     public void addSpawner(StackedSpawner stackedSpawner) {
-        this.stackedSpawners.put(stackedSpawner.getBlock(), stackedSpawner);
+        this.stackedSpawners.put(getBlockKey(stackedSpawner.getBlock()), stackedSpawner);
     }
 
     public void addBlock(StackedBlock stackedBlock) {
-        this.stackedBlocks.put(stackedBlock.getBlock(), stackedBlock);
+        this.stackedBlocks.put(getBlockKey(stackedBlock.getBlock()), stackedBlock);
     }
 
     public void removeSpawner(StackedSpawner stackedSpawner) {
-        this.stackedSpawners.remove(stackedSpawner.getBlock());
+        this.stackedSpawners.remove(getBlockKey(stackedSpawner.getBlock()));
     }
 
     public void removeBlock(StackedBlock stackedBlock) {
-        this.stackedBlocks.remove(stackedBlock.getBlock());
+        this.stackedBlocks.remove(getBlockKey(stackedBlock.getBlock()));
     }
 
     public StackedSpawner getSpawner(Block block) {
-        return this.stackedSpawners.get(block);
+        return this.getSpawner(block.getX(), block.getY(), block.getZ());
+    }
+
+    public StackedSpawner getSpawner(int x, int y, int z) {
+        return this.stackedSpawners.get(StackerUtils.getBlockKey(x, y, z));
     }
 
     public StackedBlock getBlock(Block block) {
-        return this.stackedBlocks.get(block);
+        return this.getBlock(block.getX(), block.getY(), block.getZ());
+    }
+
+    public StackedBlock getBlock(int x, int y, int z) {
+        return this.stackedBlocks.get(StackerUtils.getBlockKey(x, y, z));
+    }
+
+    /**
+     * @return a snapshot of the StackedSpawners in this chunk
+     */
+    public List<StackedSpawner> getSpawners() {
+        return this.stackedSpawners.values();
+    }
+
+    /**
+     * @return a snapshot of the StackedBlocks in this chunk
+     */
+    public List<StackedBlock> getBlocks() {
+        return this.stackedBlocks.values();
     }
 
-    public Map<Block, StackedSpawner> getSpawners() {
-        return this.stackedSpawners;
+    /**
+     * @return true if this chunk has no StackedSpawners or StackedBlocks, false otherwise
+     */
+    public boolean isEmpty() {
+        return this.stackedSpawners.isEmpty() && this.stackedBlocks.isEmpty();
     }
 
-    public Map<Block, StackedBlock> getBlocks() {
-        return this.stackedBlocks;
+    private static long getBlockKey(Block block) {
+        return StackerUtils.getBlockKey(block.getX(), block.getY(), block.getZ());
     }
 
 }
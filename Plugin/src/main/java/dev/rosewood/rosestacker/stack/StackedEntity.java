@@ -16,9 +16,9 @@ import dev.rosewood.rosestacker.nms.storage.StackedEntityDataEntry;
 import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorage;
 import dev.rosewood.rosestacker.stack.settings.EntityStackSettings;
 import dev.rosewood.rosestacker.stack.settings.entity.SlimeStackSettings;
+import dev.rosewood.rosestacker.utils.BulkLootSampler;
 import dev.rosewood.rosestacker.utils.DataUtils;
 import dev.rosewood.rosestacker.utils.EntityUtils;
-import dev.rosewood.rosestacker.utils.ItemUtils;
 import dev.rosewood.rosestacker.utils.PersistentDataUtils;
 import dev.rosewood.rosestacker.utils.StackerUtils;
 import java.util.ArrayList;
@@ -27,6 +27,7 @@ import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -59,10 +60,16 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
 
     private EntityStackSettings stackSettings;
 
+    private final AtomicBoolean stackingDirty;
+    private volatile StackedEntity unstackPrototype;
+    private double lastStackingX, lastStackingY, lastStackingZ;
+
     public StackedEntity(LivingEntity entity, StackedEntityDataStorage serializedStackedEntities) {
         this.entity = entity;
         this.serializedStackedEntities = serializedStackedEntities;
         this.npcCheckCounter = NPCsHook.anyEnabled() ? 5 : 0;
+        this.stackingDirty = new AtomicBoolean(true);
+        this.lastStackingX = this.lastStackingY = this.lastStackingZ = Double.NaN;
 
         this.displayName = null;
         this.displayNameVisible = false;
@@ -74,7 +81,7 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
     }
 
     public StackedEntity(LivingEntity entity) {
-        this(entity, NMSAdapter.getHandler().createEntityDataStorage(entity));
+        this(entity, StackerUtils.createEntityDataStorage(entity));
     }
 
     // We are going to check if this entity is an NPC multiple times, since MythicMobs annoyingly doesn't
@@ -99,20 +106,68 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
             return;
 
         this.entity = entity;
+        this.stackingDirty.set(true);
         this.updateDisplay();
     }
 
+    /**
+     * Marks this stack as changed so it will be evaluated by the next stacking pass
+     */
+    public void markStackingDirty() {
+        this.stackingDirty.set(true);
+    }
+
+    /**
+     * Checks if this stack has changed or moved since the last time a stacking pass evaluated it.
+     * Resets the change tracking if it needs to be evaluated.
+     *
+     * @param x The current x position of the entity
+     * @param y The current y position of the entity
+     * @param z The current z position of the entity
+     * @param movementThresholdSqrd The squared distance the entity must have moved to need to be evaluated again
+     * @return true if this stack needs to be evaluated, false otherwise
+     */
+    boolean pollStackingDirty(double x, double y, double z, double movementThresholdSqrd) {
+        double dx = x - this.lastStackingX;
+        double dy = y - this.lastStackingY;
+        double dz = z - this.lastStackingZ;
+        boolean moved = Double.isNaN(this.lastStackingX) || dx * dx + dy * dy + dz * dz > movementThresholdSqrd;
+
+        // Cleared atomically so a change marked on another thread while polling is never lost
+        boolean dirty = this.stackingDirty.getAndSet(false);
+        if (!moved && !dirty)
+            return false;
+
+        this.lastStackingX = x;
+        this.lastStackingY = y;
+        this.lastStackingZ = z;
+        return true;
+    }
+
     public void increaseStackSize(LivingEntity entity) {
         this.increaseStackSize(entity, true);
     }
 
     public void increaseStackSize(LivingEntity entity, boolean updateDisplay) {
+        this.increaseStackSize(entity, 1, updateDisplay);
+    }
+
+    /**
+     * Adds a number of copies of an entity to this stack, the entity is only serialized once
+     *
+     * @param entity The entity to add copies of
+     * @param amount The number of copies to add
+     * @param updateDisplay true to update the display of this stack, false otherwise
+     */
+    public void increaseStackSize(LivingEntity entity, int amount, boolean updateDisplay) {
         Runnable task = () -> {
             if (Setting.ENTITY_STACK_TO_BOTTOM.getBoolean()) {
-                this.serializedStackedEntities.addLast(entity);
+                this.serializedStackedEntities.addCopiesLast(entity, amount);
             } else {
-                this.serializedStackedEntities.addFirst(entity);
+                this.serializedStackedEntities.addCopiesFirst(entity, amount);
             }
+            this.stackingDirty.set(true);
+            this.unstackPrototype = null;
 
             if (updateDisplay)
                 this.updateDisplay();
@@ -130,10 +185,12 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
 
     public void increaseStackSize(StackedEntityDataStorage serializedStackedEntities) {
         if (Setting.ENTITY_STACK_TO_BOTTOM.getBoolean()) {
-            this.serializedStackedEntities.addAllLast(serializedStackedEntities.getAll());
+            this.serializedStackedEntities.addAllLast(serializedStackedEntities);
         } else {
-            this.serializedStackedEntities.addAllFirst(serializedStackedEntities.getAll());
+            this.serializedStackedEntities.addAllFirst(serializedStackedEntities);
         }
+        this.stackingDirty.set(true);
+        this.unstackPrototype = null;
         this.updateDisplay();
     }
 
@@ -151,6 +208,7 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
 
         stackManager.setEntityStackingTemporarilyDisabled(true);
         this.entity = NMSAdapter.getHandler().createEntityFromNBT(this.serializedStackedEntities.pop(), oldEntity.getLocation(), true, oldEntity.getType());
+        this.unstackPrototype = null;
         stackManager.setEntityStackingTemporarilyDisabled(false);
         this.stackSettings.applyUnstackProperties(this.entity, oldEntity);
         stackManager.updateStackedEntityKey(oldEntity, this.entity);
@@ -168,11 +226,12 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
             }
         }
 
+        this.stackingDirty.set(true);
         this.updateDisplay();
         PersistentDataUtils.applyDisabledAi(this.entity);
 
         DataUtils.clearStackedEntityData(oldEntity);
-        return new StackedEntity(oldEntity, NMSAdapter.getHandler().createEntityDataStorage(oldEntity));
+        return new StackedEntity(oldEntity, NMSAdapter.getHandler().createEntityDataStorage(oldEntity, this.serializedStackedEntities.getType()));
     }
 
     public StackedEntityDataStorage getStackedEntityNBT() {
@@ -188,6 +247,8 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
      */
     public void setStackedEntityNBT(StackedEntityDataStorage serializedStackedEntities) {
         this.serializedStackedEntities = serializedStackedEntities;
+        this.stackingDirty.set(true);
+        this.unstackPrototype = null;
         this.updateDisplay();
     }
 
@@ -257,11 +318,18 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
             boolean isSlime = thisEntity instanceof Slime;
             boolean isAccurateSlime = isSlime && ((SlimeStackSettings) this.stackSettings).isAccurateDropsWithKillEntireStackOnDeath();
 
+            // With a multiplier, each kill is recorded as a sample instead and the multiplied loot is drawn from the samples
+            BulkLootSampler lootSampler = multiplier != 1 ? new BulkLootSampler() : null;
+
             Map<LivingEntity, EntityStackMultipleDeathEvent.EntityDrops> entityDrops = new LinkedHashMap<>(internalEntities.size());
             if (callEvents) {
-                if (existingLoot != null)
-                    loot.addAll(existingLoot);
-                totalExp += droppedExp;
+                Collection<ItemStack> thisEntityLoot = existingLoot != null ? existingLoot : Collections.emptyList();
+                if (lootSampler != null) {
+                    lootSampler.addSample(thisEntityLoot, droppedExp);
+                } else {
+                    loot.addAll(thisEntityLoot);
+                    totalExp += droppedExp;
+                }
             } else {
                 entityDrops.put(thisEntity, new EntityStackMultipleDeathEvent.EntityDrops(new ArrayList<>(existingLoot), droppedExp));
             }
@@ -295,13 +363,19 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
                     if (callEvents) {
                         EntityDeathEvent deathEvent = new AsyncEntityDeathEvent(entity, new ArrayList<>(entityLoot), desiredExp);
                         Bukkit.getPluginManager().callEvent(deathEvent);
-                        totalExp += deathEvent.getDroppedExp();
-                        loot.addAll(deathEvent.getDrops());
+                        List<ItemStack> killLoot = new ArrayList<>(deathEvent.getDrops());
                         // Withers always drop nether stars on death, however this isn't in the actual wither loot table for some reason
                         if (isWither)
-                            loot.add(new ItemStack(Material.NETHER_STAR));
+                            killLoot.add(new ItemStack(Material.NETHER_STAR));
                         if (killedByWither)
-                            loot.add(new ItemStack(Material.WITHER_ROSE));
+                            killLoot.add(new ItemStack(Material.WITHER_ROSE));
+
+                        if (lootSampler != null) {
+                            lootSampler.addSample(killLoot, deathEvent.getDroppedExp());
+                        } else {
+                            totalExp += deathEvent.getDroppedExp();
+                            loot.addAll(killLoot);
+                        }
                     } else {
                         List<ItemStack> entityLootList = new ArrayList<>(entityLoot);
                         if (isWither)
@@ -322,24 +396,23 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
                 EntityStackMultipleDeathEvent event = new EntityStackMultipleDeathEvent(this, entityDrops);
                 Bukkit.getPluginManager().callEvent(event);
                 for (EntityStackMultipleDeathEvent.EntityDrops value : event.getEntityDrops().values()) {
-                    loot.addAll(value.getDrops());
-                    totalExp += value.getExperience();
+                    if (lootSampler != null) {
+                        lootSampler.addSample(value.getDrops(), value.getExperience());
+                    } else {
+                        loot.addAll(value.getDrops());
+                        totalExp += value.getExperience();
+                    }
                 }
             }
 
-            // Multiply loot
-            Collection<ItemStack> finalEntityLoot;
-            if (multiplier != 1) {
-                finalEntityLoot = new ArrayList<>();
-                for (ItemStack itemStack : loot)
-                    finalEntityLoot.addAll(ItemUtils.getMultipliedItemStack(itemStack, multiplier));
-            } else {
-                finalEntityLoot = loot;
-            }
+            // Multiply loot, each sampled kill stands in for the multiplier's worth of kills
+            long sampledExp = 0;
+            if (lootSampler != null)
+                sampledExp = lootSampler.sample(Math.round(lootSampler.getSampleCount() * multiplier), loot);
 
-            int finalTotalExp = (int) Math.min(Math.round(totalExp * multiplier), Integer.MAX_VALUE);
+            int finalTotalExp = (int) Math.min(totalExp + sampledExp, Integer.MAX_VALUE);
             Runnable finishTask = () -> {
-                RoseStacker.getInstance().getManager(StackManager.class).preStackItems(finalEntityLoot, thisEntity.getLocation());
+                RoseStacker.getInstance().getManager(StackManager.class).preStackItems(loot, thisEntity.getLocation());
                 if (Setting.ENTITY_DROP_ACCURATE_EXP.getBoolean() && finalTotalExp > 0)
                     StackerUtils.dropExperience(thisEntity.getLocation(), finalTotalExp, finalTotalExp, finalTotalExp / 2);
             };
@@ -372,9 +445,16 @@ public class StackedEntity extends Stack<EntityStackSettings> implements Compara
         if (this.entity instanceof EnderDragon)
             return true;
 
-        NMSHandler nmsHandler = NMSAdapter.getHandler();
-        LivingEntity entity = nmsHandler.createEntityFromNBT(this.serializedStackedEntities.peek(), this.entity.getLocation(), false, this.entity.getType());
-        StackedEntity stackedEntity = new StackedEntity(entity, nmsHandler.createEntityDataStorage(entity));
+        // Building the next entity in line is expensive, it is kept until the front of the stack changes
+        StackedEntity stackedEntity = this.unstackPrototype;
+        if (stackedEntity == null) {
+            NMSHandler nmsHandler = NMSAdapter.getHandler();
+            LivingEntity entity = nmsHandler.createEntityFromNBT(this.serializedStackedEntities.peek(), this.entity.getLocation(), false, this.entity.getType());
+            stackedEntity = new StackedEntity(entity, nmsHandler.createEntityDataStorage(entity, this.serializedStackedEntities.getType()));
+            this.unstackPrototype = stackedEntity;
+        }
+
+        // The visible entity can change in ways no event reports, so the comparison itself is not cached
         return this.stackSettings.testCanStackWith(this, stackedEntity, true);
     }
 
@@ -6,6 +6,7 @@ import dev.rosewood.rosestacker.manager.ConfigurationManager.Setting;
 import dev.rosewood.rosestacker.manager.LocaleManager;
 import dev.rosewood.rosestacker.manager.StackSettingManager;
 import dev.rosewood.rosestacker.stack.settings.ItemStackSettings;
+import dev.rosewood.rosestacker.utils.ItemUtils;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
@@ -19,6 +20,7 @@ public class StackedItem extends Stack<ItemStackSettings> implements Comparable<
 
     private int size;
     private Item item;
+    private Integer itemFingerprint;
 
     private ItemStackSettings stackSettings;
 
@@ -44,9 +46,25 @@ public class StackedItem extends Stack<ItemStackSettings> implements Comparable<
             return;
 
         this.item = item;
+        this.itemFingerprint = null;
         this.updateDisplay();
     }
 
+    /**
+     * Gets the fingerprint of the ItemStack of this stack, calculated once and kept until the item changes
+     *
+     * @return the fingerprint of the ItemStack
+     * @see ItemUtils#getItemFingerprint(ItemStack)
+     */
+    public int getItemFingerprint() {
+        Integer itemFingerprint = this.itemFingerprint;
+        if (itemFingerprint == null) {
+            itemFingerprint = ItemUtils.getItemFingerprint(this.item.getItemStack());
+            this.itemFingerprint = itemFingerprint;
+        }
+        return itemFingerprint;
+    }
+
     public void increaseStackSize(int amount, boolean updateDisplay) {
         this.size += amount;
         if (updateDisplay)
@@ -11,6 +11,7 @@ import dev.rosewood.rosestacker.manager.StackSettingManager;
 import dev.rosewood.rosestacker.nms.NMSAdapter;
 import dev.rosewood.rosestacker.nms.spawner.StackedSpawnerTile;
 import dev.rosewood.rosestacker.spawner.conditions.ConditionTag;
+import dev.rosewood.rosestacker.spawner.spawning.SpawnCells;
 import dev.rosewood.rosestacker.stack.settings.SpawnerStackSettings;
 import dev.rosewood.rosestacker.utils.StackerUtils;
 import java.util.ArrayList;
@@ -33,6 +34,7 @@ public class StackedSpawner extends Stack<SpawnerStackSettings> {
     private StackedSpawnerGui stackedSpawnerGui;
     private List<Class<? extends ConditionTag>> lastInvalidConditions;
     private SpawnerStackSettings stackSettings;
+    private volatile SpawnCells spawnCells;
 
     public StackedSpawner(int size, Block spawner, boolean placedByPlayer) {
         if (spawner.getType() != Material.SPAWNER)
@@ -119,6 +121,31 @@ public class StackedSpawner extends Stack<SpawnerStackSettings> {
         return this.lastInvalidConditions;
     }
 
+    /**
+     * @return the blocks this spawner was last able to spawn in, or null if they need to be checked again
+     */
+    public SpawnCells getSpawnCells() {
+        return this.spawnCells;
+    }
+
+    /**
+     * @param spawnCells The blocks this spawner is able to spawn in, or null to check them again on the next spawn
+     */
+    public void setSpawnCells(SpawnCells spawnCells) {
+        this.spawnCells = spawnCells;
+    }
+
+    /**
+     * Forgets the blocks this spawner is able to spawn in if a changed block could affect them
+     *
+     * @param block The block that changed
+     */
+    public void invalidateSpawnCells(Block block) {
+        SpawnCells spawnCells = this.spawnCells;
+        if (spawnCells != null && spawnCells.isAffectedBy(block))
+            this.spawnCells = null;
+    }
+
     @Override
     public int getStackSize() {
         return this.size;
@@ -0,0 +1,120 @@
+package dev.rosewood.rosestacker.stack;
+
+import dev.rosewood.rosegarden.RosePlugin;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Collects work posted from async stacking passes and runs it on the main thread once per tick.
+ * Each tick only runs as much work as fits in the time budget, anything left over is carried to the next tick in the
+ * order it was posted.
+ */
+public class StackingMailbox implements AutoCloseable {
+
+    private final RosePlugin rosePlugin;
+    private final Queue<Runnable> queue;
+    private final AtomicInteger queueDepth;
+    private final long budgetNanos;
+    private final BukkitTask drainTask;
+
+    private volatile long lastDrainNanos;
+    private volatile int lastDrainCount;
+
+    /**
+     * @param rosePlugin The plugin to schedule the drain task with
+     * @param budgetMillis The max number of milliseconds to spend running work each tick, or a negative value for no limit
+     */
+    public StackingMailbox(RosePlugin rosePlugin, long budgetMillis) {
+        this.rosePlugin = rosePlugin;
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.queueDepth = new AtomicInteger();
+        this.budgetNanos = budgetMillis < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        this.drainTask = Bukkit.getScheduler().runTaskTimer(rosePlugin, this::drain, 1L, 1L);
+    }
+
+    /**
+     * Queues work to be run on the main thread
+     *
+     * @param task The work to run
+     */
+    public void post(Runnable task) {
+        this.queue.add(task);
+        this.queueDepth.incrementAndGet();
+    }
+
+    /**
+     * Runs work immediately if called from the main thread, otherwise queues it
+     *
+     * @param task The work to run
+     */
+    public void run(Runnable task) {
+        if (Bukkit.isPrimaryThread()) {
+            task.run();
+        } else {
+            this.post(task);
+        }
+    }
+
+    /**
+     * @return the number of tasks waiting to be run
+     */
+    public int getQueueDepth() {
+        return this.queueDepth.get();
+    }
+
+    /**
+     * @return the number of nanoseconds spent running work during the last tick
+     */
+    public long getLastDrainNanos() {
+        return this.lastDrainNanos;
+    }
+
+    /**
+     * @return the number of tasks run during the last tick
+     */
+    public int getLastDrainCount() {
+        return this.lastDrainCount;
+    }
+
+    /**
+     * Stops draining every tick and runs all remaining work, must be called on the main thread
+     */
+    @Override
+    public void close() {
+        this.drainTask.cancel();
+        this.drain(Long.MAX_VALUE);
+    }
+
+    private void drain() {
+        this.drain(this.budgetNanos);
+    }
+
+    private void drain(long budgetNanos) {
+        long start = System.nanoTime();
+        int drained = 0;
+
+        // At least one task always runs so the queue keeps moving even if a single task takes longer than the budget
+        Runnable task;
+        while ((task = this.queue.poll()) != null) {
+            this.queueDepth.decrementAndGet();
+            try {
+                task.run();
+            } catch (Exception e) {
+                this.rosePlugin.getLogger().log(Level.WARNING, "An error occurred running queued stacking work", e);
+            }
+
+            drained++;
+            if (System.nanoTime() - start >= budgetNanos)
+                break;
+        }
+
+        this.lastDrainNanos = System.nanoTime() - start;
+        this.lastDrainCount = drained;
+    }
+
+}
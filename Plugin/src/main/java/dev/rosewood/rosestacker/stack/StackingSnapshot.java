@@ -0,0 +1,255 @@
+package dev.rosewood.rosestacker.stack;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bukkit.Location;
+import org.bukkit.Material;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Item;
+import org.bukkit.entity.LivingEntity;
+
+/**
+ * A copy of the state of the StackedEntities and StackedItems in a world, captured on the main thread.
+ * Async stacking passes read from this instead of the live entities, which gives them a consistent view of the world
+ * without allocating a Location for every read.
+ * State is stored in parallel arrays, indexed by the position of each entity in the snapshot.
+ * Snapshots are reused, the arrays are only captured over once no pass is reading them anymore.
+ */
+public class StackingSnapshot {
+
+    public static final StackingSnapshot EMPTY = new StackingSnapshot(0);
+
+    private static final EntityType[] ENTITY_TYPES = EntityType.values();
+    private static final int ITEM_PICKUP_DELAY_THRESHOLD = 40;
+
+    private static final byte FLAG_VALID = 1;
+    private static final byte FLAG_ON_GROUND = 1 << 1;
+    private static final byte FLAG_IN_WATER = 1 << 2;
+    private static final byte FLAG_PICKUP_DELAYED = 1 << 3;
+
+    private final Map<UUID, Integer> indexes;
+    private final AtomicInteger readers; // -1 while being captured
+    private Entity[] entities;
+    private double[] x;
+    private double[] y;
+    private double[] z;
+    private byte[] flags;
+    private int[] typeOrdinals;
+    private int[] stackSizes;
+    private int size;
+
+    public StackingSnapshot() {
+        this(0);
+    }
+
+    private StackingSnapshot(int capacity) {
+        this.indexes = new HashMap<>(Math.max(16, (int) (capacity / 0.75F) + 1));
+        this.readers = new AtomicInteger();
+        this.entities = new Entity[capacity];
+        this.x = new double[capacity];
+        this.y = new double[capacity];
+        this.z = new double[capacity];
+        this.flags = new byte[capacity];
+        this.typeOrdinals = new int[capacity];
+        this.stackSizes = new int[capacity];
+    }
+
+    /**
+     * Captures the current state of stacks over the previous contents of this snapshot, must be called on the main thread
+     *
+     * @param stackedEntities The StackedEntities to capture
+     * @param stackedItems The StackedItems to capture
+     * @param checkWater true to check if entities are in water, false otherwise
+     * @return true if the stacks were captured, false if the snapshot is still being read
+     */
+    public boolean tryCapture(Collection<StackedEntity> stackedEntities, Collection<StackedItem> stackedItems, boolean checkWater) {
+        if (this == EMPTY || !this.readers.compareAndSet(0, -1))
+            return false;
+
+        try {
+            this.capture(stackedEntities, stackedItems, checkWater);
+        } finally {
+            this.readers.set(0);
+        }
+        return true;
+    }
+
+    /**
+     * Marks this snapshot as being read, it will not be captured over until released
+     *
+     * @return true if the snapshot can be read, false if it is being captured over
+     */
+    public boolean retain() {
+        while (true) {
+            int readers = this.readers.get();
+            if (readers < 0)
+                return false;
+
+            if (this.readers.compareAndSet(readers, readers + 1))
+                return true;
+        }
+    }
+
+    /**
+     * Marks this snapshot as no longer being read by one reader
+     */
+    public void release() {
+        this.readers.decrementAndGet();
+    }
+
+    private void capture(Collection<StackedEntity> stackedEntities, Collection<StackedItem> stackedItems, boolean checkWater) {
+        int previousSize = this.size;
+        this.size = 0;
+        this.indexes.clear();
+
+        Location location = new Location(null, 0, 0, 0);
+
+        for (StackedEntity stackedEntity : stackedEntities) {
+            LivingEntity entity = stackedEntity.getEntity();
+            if (entity == null)
+                continue;
+
+            entity.getLocation(location);
+            byte flags = 0;
+            if (entity.isValid())
+                flags |= FLAG_VALID;
+            if (entity.isOnGround())
+                flags |= FLAG_ON_GROUND;
+            if (checkWater && location.getBlock().getType() == Material.WATER)
+                flags |= FLAG_IN_WATER;
+
+            this.add(entity, location, flags, stackedEntity.getStackSize());
+        }
+
+        for (StackedItem stackedItem : stackedItems) {
+            Item item = stackedItem.getItem();
+            if (item == null)
+                continue;
+
+            item.getLocation(location);
+            byte flags = 0;
+            if (item.isValid())
+                flags |= FLAG_VALID;
+            if (item.isOnGround())
+                flags |= FLAG_ON_GROUND;
+            if (item.getPickupDelay() > ITEM_PICKUP_DELAY_THRESHOLD)
+                flags |= FLAG_PICKUP_DELAYED;
+
+            this.add(item, location, flags, stackedItem.getStackSize());
+        }
+
+        // Drop references to entities that were captured last time but are past the end now
+        if (this.size < previousSize)
+            Arrays.fill(this.entities, this.size, previousSize, null);
+    }
+
+    /**
+     * Gets the index of an entity in this snapshot
+     *
+     * @param uuid The UUID of the entity
+     * @return the index of the entity, or -1 if it was not captured
+     */
+    public int indexOf(UUID uuid) {
+        Integer index = this.indexes.get(uuid);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return the number of entities in this snapshot
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public Entity getEntity(int index) {
+        return this.entities[index];
+    }
+
+    public double getX(int index) {
+        return this.x[index];
+    }
+
+    public double getY(int index) {
+        return this.y[index];
+    }
+
+    public double getZ(int index) {
+        return this.z[index];
+    }
+
+    /**
+     * Gets the squared distance between an entity in this snapshot and a location
+     *
+     * @param index The index of the entity
+     * @param location The location to measure to, assumed to be in the same world
+     * @return the squared distance between the entity and the location
+     */
+    public double distanceSquared(int index, Location location) {
+        double dx = this.x[index] - location.getX();
+        double dy = this.y[index] - location.getY();
+        double dz = this.z[index] - location.getZ();
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    public boolean isValid(int index) {
+        return (this.flags[index] & FLAG_VALID) != 0;
+    }
+
+    public boolean isOnGround(int index) {
+        return (this.flags[index] & FLAG_ON_GROUND) != 0;
+    }
+
+    /**
+     * @param index The index of the entity
+     * @return true if the entity was in water, always false if water was not checked when capturing
+     */
+    public boolean isInWater(int index) {
+        return (this.flags[index] & FLAG_IN_WATER) != 0;
+    }
+
+    /**
+     * @param index The index of the item
+     * @return true if the item had too large of a pickup delay to be stacked, always false for entities
+     */
+    public boolean isPickupDelayed(int index) {
+        return (this.flags[index] & FLAG_PICKUP_DELAYED) != 0;
+    }
+
+    public EntityType getType(int index) {
+        return ENTITY_TYPES[this.typeOrdinals[index]];
+    }
+
+    public int getStackSize(int index) {
+        return this.stackSizes[index];
+    }
+
+    private void add(Entity entity, Location location, byte flags, int stackSize) {
+        // Stacks can be added while capturing, make room for them
+        if (this.size == this.entities.length) {
+            int capacity = Math.max(16, this.entities.length << 1);
+            this.entities = Arrays.copyOf(this.entities, capacity);
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            this.z = Arrays.copyOf(this.z, capacity);
+            this.flags = Arrays.copyOf(this.flags, capacity);
+            this.typeOrdinals = Arrays.copyOf(this.typeOrdinals, capacity);
+            this.stackSizes = Arrays.copyOf(this.stackSizes, capacity);
+        }
+
+        int index = this.size++;
+        this.indexes.put(entity.getUniqueId(), index);
+        this.entities[index] = entity;
+        this.x[index] = location.getX();
+        this.y[index] = location.getY();
+        this.z[index] = location.getZ();
+        this.flags[index] = flags;
+        this.typeOrdinals[index] = entity.getType().ordinal();
+        this.stackSizes[index] = stackSize;
+    }
+
+}
@@ -3,6 +3,7 @@ package dev.rosewood.rosestacker.stack;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import dev.rosewood.rosegarden.RosePlugin;
+import dev.rosewood.rosegarden.utils.NMSUtil;
 import dev.rosewood.rosestacker.event.EntityStackClearEvent;
 import dev.rosewood.rosestacker.event.EntityStackEvent;
 import dev.rosewood.rosestacker.event.EntityUnstackEvent;
@@ -25,11 +26,13 @@ import dev.rosewood.rosestacker.stack.settings.ItemStackSettings;
 import dev.rosewood.rosestacker.utils.DataUtils;
 import dev.rosewood.rosestacker.utils.EntityUtils;
 import dev.rosewood.rosestacker.utils.ItemUtils;
+import dev.rosewood.rosestacker.utils.LongObjectMap;
 import dev.rosewood.rosestacker.utils.PersistentDataUtils;
 import dev.rosewood.rosestacker.utils.StackerUtils;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -40,8 +43,14 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Predicate;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import net.md_5.bungee.api.ChatColor;
 import net.md_5.bungee.api.ChatMessageType;
@@ -55,12 +64,22 @@ import org.bukkit.Particle.DustOptions;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.CreatureSpawner;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Ambient;
 import org.bukkit.entity.ArmorStand;
+import org.bukkit.entity.Creature;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.EntityType;
+import org.bukkit.entity.ExperienceOrb;
+import org.bukkit.entity.Ghast;
+import org.bukkit.entity.Hanging;
 import org.bukkit.entity.Item;
 import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Monster;
+import org.bukkit.entity.Phantom;
 import org.bukkit.entity.Player;
+import org.bukkit.entity.Shulker;
+import org.bukkit.entity.Slime;
 import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.metadata.FixedMetadataValue;
@@ -70,8 +89,14 @@ import org.bukkit.util.Vector;
 public class StackingThread implements StackingLogic, AutoCloseable {
 
     private final static int CLEANUP_TIMER_TARGET = 10;
+    private final static int REGION_SHIFT = 2; // Regions are 4x4 chunks
     private final static String REMOVED_METADATA = "RS_removed";
     private final static String NEW_METADATA = "RS_new";
+    private final static int FULL_STACK_PASS_INTERVAL = 10; // Every 10th stacking pass evaluates all stacks, not only changed ones
+    private final static double STACK_PASS_MOVEMENT_THRESHOLD_SQRD = 1.0;
+    private final static int NAMETAG_FULL_RESEND_INTERVAL = 10; // Every 10th nametag pass resends all nametags in case a client missed an update
+    private final static long PASS_DELAY = 5L; // Ticks before the first stacking and nametag passes
+    private final static int NAMETAG_CELL_RANGE = (int) Math.ceil(Math.sqrt(StackerUtils.ASSUMED_ENTITY_VISIBILITY_RANGE) / 16);
 
     private final static Cache<UUID, Boolean> REMOVED_ENTITIES = CacheBuilder.newBuilder().expireAfterWrite(5, TimeUnit.SECONDS).build();
 
@@ -81,14 +106,26 @@ public class StackingThread implements StackingLogic, AutoCloseable {
     private final HologramManager hologramManager;
     private final World targetWorld;
 
-    private final BukkitTask entityStackTask, itemStackTask, nametagTask;
+    private final BukkitTask entityStackTask, itemStackTask, nametagTask, snapshotTask;
 
     private final Map<UUID, StackedEntity> stackedEntities;
     private final Map<UUID, StackedItem> stackedItems;
-    private final Map<Chunk, StackChunkData> stackChunkData;
+    private final LongObjectMap<StackChunkData> stackChunkData;
+    private volatile StackingSnapshot snapshot;
+    private final List<StackingSnapshot> snapshotPool; // Only used from the main thread
+    private final long entityStackPeriod;
+    private final long itemStackPeriod;
+    private final long nametagPeriod;
+    private long snapshotTick;
+    private final StackingMailbox mailbox;
+    private final SpawnerTickScheduler spawnerTickScheduler;
 
     private boolean entityStackSwitch;
     private int cleanupTimer;
+    private int stackPassCounter;
+    private final AtomicInteger nametagPassCounter;
+    private final Map<Integer, Map<UUID, NametagState>> playerNametagStates; // Keyed by player entity id, which changes when they rejoin
+    private final Map<EntityType, Double> trackingRangesSqrd;
 
     boolean dynamicEntityTags, dynamicItemTags;
     double entityDynamicViewRangeSqrd, itemDynamicViewRangeSqrd;
@@ -101,14 +138,30 @@ public class StackingThread implements StackingLogic, AutoCloseable {
         this.hologramManager = this.rosePlugin.getManager(HologramManager.class);
         this.targetWorld = targetWorld;
 
-        long entityStackDelay = (long) Math.max(1, Setting.STACK_FREQUENCY.getLong() / 2.0);
-        this.entityStackTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this.rosePlugin, this::stackEntities, 5L, entityStackDelay);
-        this.itemStackTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this.rosePlugin, this::stackItems, 5L, Setting.ITEM_STACK_FREQUENCY.getLong());
-        this.nametagTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this.rosePlugin, this::processNametags, 5L, Setting.NAMETAG_UPDATE_FREQUENCY.getLong());
+        // The async tasks read entity state from a snapshot that is captured on the main thread the tick before a pass
+        this.snapshot = StackingSnapshot.EMPTY;
+        this.snapshotPool = new ArrayList<>();
+        this.snapshotTask = Bukkit.getScheduler().runTaskTimer(this.rosePlugin, this::captureSnapshotBeforePass, PASS_DELAY - 1, 1L);
+
+        // Work from the async tasks is run on the main thread in batches that are limited by a time budget each tick
+        this.mailbox = new StackingMailbox(this.rosePlugin, Setting.MAIN_THREAD_TASK_BUDGET.getLong());
+
+        // Stacked spawners are only run on the ticks they have something to do
+        this.spawnerTickScheduler = new SpawnerTickScheduler(this.rosePlugin, this.targetWorld);
+
+        this.entityStackPeriod = (long) Math.max(1, Setting.STACK_FREQUENCY.getLong() / 2.0);
+        this.itemStackPeriod = Math.max(1, Setting.ITEM_STACK_FREQUENCY.getLong());
+        this.nametagPeriod = Math.max(1, Setting.NAMETAG_UPDATE_FREQUENCY.getLong());
+        this.entityStackTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this.rosePlugin, this::stackEntities, PASS_DELAY, this.entityStackPeriod);
+        this.itemStackTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this.rosePlugin, this::stackItems, PASS_DELAY, this.itemStackPeriod);
+        this.nametagTask = Bukkit.getScheduler().runTaskTimerAsynchronously(this.rosePlugin, this::processNametags, PASS_DELAY, this.nametagPeriod);
 
         this.stackedEntities = new ConcurrentHashMap<>();
         this.stackedItems = new ConcurrentHashMap<>();
-        this.stackChunkData = new ConcurrentHashMap<>();
+        this.stackChunkData = new LongObjectMap<>();
+        this.nametagPassCounter = new AtomicInteger();
+        this.playerNametagStates = new ConcurrentHashMap<>();
+        this.trackingRangesSqrd = this.loadTrackingRanges();
 
         this.cleanupTimer = 0;
 
@@ -142,38 +195,42 @@ public class StackingThread implements StackingLogic, AutoCloseable {
         if (!entityStackingEnabled)
             return;
 
-        // Auto unstack entities
-        if (!this.stackManager.isEntityUnstackingTemporarilyDisabled()) {
-            boolean minSplitIfLower = Setting.ENTITY_MIN_SPLIT_IF_LOWER.getBoolean();
-            for (StackedEntity stackedEntity : this.stackedEntities.values()) {
-                if (!stackedEntity.shouldStayStacked() && stackedEntity.getEntity().isValid()) {
-                    Bukkit.getScheduler().runTask(this.rosePlugin, () -> {
-                        if (stackedEntity.getStackSize() > 1)
-                            this.splitEntityStack(stackedEntity);
-                    });
-                } else if (minSplitIfLower && stackedEntity.getStackSize() < stackedEntity.getStackSettings().getMinStackSize()) {
-                    NMSHandler nmsHandler = NMSAdapter.getHandler();
-                    StackedEntityDataStorage nbt = stackedEntity.getStackedEntityNBT();
-                    stackedEntity.setStackedEntityNBT(nmsHandler.createEntityDataStorage(stackedEntity.getEntity()));
-                    Bukkit.getScheduler().runTask(this.rosePlugin, () -> {
-                        for (StackedEntityDataEntry<?> stackedEntityDataEntry : nbt.getAll())
-                            nmsHandler.createEntityFromNBT(stackedEntityDataEntry, stackedEntity.getLocation(), true, stackedEntity.getEntity().getType());
-                    });
+        StackingSnapshot snapshot = this.acquireSnapshot();
+        try {
+            // Auto unstack entities
+            if (!this.stackManager.isEntityUnstackingTemporarilyDisabled()) {
+                boolean minSplitIfLower = Setting.ENTITY_MIN_SPLIT_IF_LOWER.getBoolean();
+                for (StackedEntity stackedEntity : this.stackedEntities.values()) {
+                    if (!stackedEntity.shouldStayStacked() && this.isValid(stackedEntity.getEntity(), snapshot)) {
+                        this.mailbox.post(() -> {
+                            if (stackedEntity.getStackSize() > 1)
+                                this.splitEntityStack(stackedEntity);
+                        });
+                    } else if (minSplitIfLower && stackedEntity.getStackSize() < stackedEntity.getStackSettings().getMinStackSize()) {
+                        NMSHandler nmsHandler = NMSAdapter.getHandler();
+                        StackedEntityDataStorage nbt = stackedEntity.getStackedEntityNBT();
+                        stackedEntity.setStackedEntityNBT(nmsHandler.createEntityDataStorage(stackedEntity.getEntity(), nbt.getType()));
+                        this.mailbox.post(() -> {
+                            for (StackedEntityDataEntry<?> stackedEntityDataEntry : nbt.getAll())
+                                nmsHandler.createEntityFromNBT(stackedEntityDataEntry, stackedEntity.getLocation(), true, stackedEntity.getEntity().getType());
+                        });
+                    }
                 }
             }
-        }
 
-        // Auto stack entities
-        if (this.entityStackSwitch) {
-            for (StackedEntity stackedEntity : this.stackedEntities.values()) {
-                LivingEntity livingEntity = stackedEntity.getEntity();
-                if (this.isRemoved(livingEntity)) {
-                    this.removeEntityStack(stackedEntity);
-                    continue;
-                }
+            // Auto stack entities, candidates are found per region in parallel and then merged one at a time
+            if (this.entityStackSwitch) {
+                // Only stacks that changed or moved are evaluated, with a periodic full pass to pick up changes that can't be tracked such as aging
+                boolean fullPass = ++this.stackPassCounter >= FULL_STACK_PASS_INTERVAL;
+                if (fullPass)
+                    this.stackPassCounter = 0;
 
-                this.tryStackEntity(stackedEntity);
+                List<List<StackedEntity>> regions = this.partitionEntityStacks(this.stackedEntities.values(), snapshot, fullPass);
+                for (StackCandidate stackCandidate : this.findStackCandidates(regions, snapshot))
+                    this.commitStackCandidate(stackCandidate);
             }
+        } finally {
+            snapshot.release();
         }
 
         // Run entity stacking half as often as the unstacking
@@ -206,24 +263,40 @@ public class StackingThread implements StackingLogic, AutoCloseable {
             return;
 
         // Auto stack items
-        for (StackedItem stackedItem : this.stackedItems.values()) {
-            Item item = stackedItem.getItem();
-            if (item == null || this.isRemoved(item)) {
-                this.removeItemStack(stackedItem);
-                continue;
-            }
+        StackingSnapshot snapshot = this.acquireSnapshot();
+        try {
+            for (StackedItem stackedItem : this.stackedItems.values()) {
+                Item item = stackedItem.getItem();
+                if (item == null || this.isRemoved(item, snapshot)) {
+                    this.removeItemStack(stackedItem);
+                    continue;
+                }
 
-            this.tryStackItem(stackedItem);
+                int index = snapshot.indexOf(item.getUniqueId());
+                if (index != -1 && snapshot.isPickupDelayed(index))
+                    continue;
+
+                this.tryStackItem(stackedItem);
+            }
+        } finally {
+            snapshot.release();
         }
     }
 
+    /**
+     * Sends the dynamic nametags of the stacks in this world to the players near them.
+     * Not synchronized, an extra pass requested when a player joins may overlap the regular pass. Only the remembered
+     * nametag states are shared between passes and they are kept in concurrent maps.
+     */
     public void processNametags() {
         if (!this.dynamicEntityTags && !this.dynamicItemTags)
             return;
 
         List<Player> players = this.targetWorld.getPlayers();
-        if (players.isEmpty())
+        if (players.isEmpty()) {
+            this.playerNametagStates.clear();
             return;
+        }
 
         // Handle dynamic stack tags
         NMSHandler nmsHandler = NMSAdapter.getHandler();
@@ -231,73 +304,232 @@ public class StackingThread implements StackingLogic, AutoCloseable {
         boolean displaySingleEntityTags = Setting.ENTITY_DISPLAY_TAGS_SINGLE.getBoolean();
         boolean displaySingleItemTags = Setting.ITEM_DISPLAY_TAGS_SINGLE.getBoolean();
 
-        List<Entity> entities = new ArrayList<>();
-        entities.addAll(this.stackedEntities.values().stream()
-                .filter(x -> x.getStackSize() > 1 || displaySingleEntityTags)
-                .map(StackedEntity::getEntity)
-                .filter(Objects::nonNull)
-                .filter(x -> validEntities.contains(x.getType()))
-                .toList());
-        entities.addAll(this.stackedItems.values().stream()
-                .filter(x -> x.getStackSize() > 1 || displaySingleItemTags)
-                .map(StackedItem::getItem)
-                .toList());
-
-        for (Player player : players) {
-            if (player.getWorld() != this.targetWorld)
-                continue;
-
-            ItemStack itemStack = player.getInventory().getItemInMainHand();
-            boolean displayStackingToolParticles = ItemUtils.isStackingTool(itemStack);
-
-            for (Entity entity : entities) {
-                if (entity.getType() == EntityType.PLAYER)
-                    continue;
-
-                if ((entity.getType() == EntityType.DROPPED_ITEM || entity.getType() == EntityType.ARMOR_STAND)
-                        && (entity.getCustomName() == null || !entity.isCustomNameVisible()))
-                    continue;
+        // Only nametags that changed since they were last sent to a player are sent again, with a periodic full resend
+        boolean fullResend = this.nametagPassCounter.incrementAndGet() % NAMETAG_FULL_RESEND_INTERVAL == 0;
+
+        StackingSnapshot snapshot = this.acquireSnapshot();
+        try {
+            // Group the stacks by chunk so each player only has to look at the stacks around them
+            LongObjectMap<List<Integer>> cells = new LongObjectMap<>();
+            for (int i = 0; i < snapshot.size(); i++) {
+                EntityType entityType = snapshot.getType(i);
+                boolean display;
+                if (entityType == EntityType.DROPPED_ITEM) {
+                    display = snapshot.getStackSize(i) > 1 || displaySingleItemTags;
+                } else {
+                    display = (snapshot.getStackSize(i) > 1 || displaySingleEntityTags) && validEntities.contains(entityType);
+                }
 
-                double distanceSqrd;
-                try { // The locations can end up comparing cross-world if the player/entity switches worlds mid-loop due to being async
-                    distanceSqrd = player.getLocation().distanceSquared(entity.getLocation());
-                } catch (Exception e) {
-                    continue;
+                if (display) {
+                    long cellKey = StackerUtils.getChunkKey(Location.locToBlock(snapshot.getX(i)) >> 4, Location.locToBlock(snapshot.getZ(i)) >> 4);
+                    cells.computeIfAbsent(cellKey, x -> new ArrayList<>()).add(i);
                 }
+            }
 
-                if (distanceSqrd > StackerUtils.ASSUMED_ENTITY_VISIBILITY_RANGE)
+            Set<Integer> playerIds = new HashSet<>();
+            for (Player player : players) {
+                if (player.getWorld() != this.targetWorld)
                     continue;
 
-                boolean visible;
-                if (this.dynamicItemTags && entity.getType() == EntityType.DROPPED_ITEM) {
-                    visible = distanceSqrd < this.itemDynamicViewRangeSqrd;
-                    if (this.itemDynamicWallDetection)
-                        visible &= EntityUtils.hasLineOfSight(player, entity, 0.75, true);
-                } else if (this.dynamicEntityTags) {
-                     visible = distanceSqrd < this.entityDynamicViewRangeSqrd;
-                     if (this.entityDynamicWallDetection)
-                         visible &= EntityUtils.hasLineOfSight(player, entity, 0.75, true);
-                 } else continue;
-
-                if (entity.getType() != EntityType.ARMOR_STAND && entity instanceof LivingEntity livingEntity) {
-                    StackedEntity stackedEntity = this.getStackedEntity(livingEntity);
-                    if (stackedEntity != null)
-                        nmsHandler.updateEntityNameTagForPlayer(player, entity, stackedEntity.getDisplayName(), stackedEntity.isDisplayNameVisible() && visible);
-
-                    // Spawn particles for holding the stacking tool
-                    if (visible && displayStackingToolParticles) {
-                        Location location = entity.getLocation().add(0, livingEntity.getEyeHeight(true) + 0.75, 0);
-                        DustOptions dustOptions;
-                        if (PersistentDataUtils.isUnstackable(livingEntity)) {
-                            dustOptions = StackerUtils.UNSTACKABLE_DUST_OPTIONS;
-                        } else {
-                            dustOptions = StackerUtils.STACKABLE_DUST_OPTIONS;
+                playerIds.add(player.getEntityId());
+                Map<UUID, NametagState> nametagStates = this.playerNametagStates.computeIfAbsent(player.getEntityId(), x -> new ConcurrentHashMap<>());
+                if (fullResend)
+                    nametagStates.clear();
+
+                ItemStack itemStack = player.getInventory().getItemInMainHand();
+                boolean displayStackingToolParticles = ItemUtils.isStackingTool(itemStack);
+                Location playerLocation = player.getLocation();
+                int playerCellX = playerLocation.getBlockX() >> 4;
+                int playerCellZ = playerLocation.getBlockZ() >> 4;
+
+                Set<UUID> inRange = new HashSet<>();
+                for (int cellX = playerCellX - NAMETAG_CELL_RANGE; cellX <= playerCellX + NAMETAG_CELL_RANGE; cellX++) {
+                    for (int cellZ = playerCellZ - NAMETAG_CELL_RANGE; cellZ <= playerCellZ + NAMETAG_CELL_RANGE; cellZ++) {
+                        List<Integer> cell = cells.get(StackerUtils.getChunkKey(cellX, cellZ));
+                        if (cell == null)
+                            continue;
+
+                        for (int index : cell) {
+                            Entity entity = snapshot.getEntity(index);
+                            EntityType entityType = snapshot.getType(index);
+                            if (entityType == EntityType.PLAYER)
+                                continue;
+
+                            if ((entityType == EntityType.DROPPED_ITEM || entityType == EntityType.ARMOR_STAND)
+                                    && (entity.getCustomName() == null || !entity.isCustomNameVisible()))
+                                continue;
+
+                            double distanceSqrd = snapshot.distanceSquared(index, playerLocation);
+
+                            if (distanceSqrd > StackerUtils.ASSUMED_ENTITY_VISIBILITY_RANGE)
+                                continue;
+
+                            // The server resends the name of an entity when it starts tracking it again, so what was last sent
+                            // is only remembered while the entity is certain to be tracked by the player
+                            boolean tracked = distanceSqrd <= this.trackingRangesSqrd.getOrDefault(entityType, 0.0);
+
+                            boolean visible;
+                            if (this.dynamicItemTags && entityType == EntityType.DROPPED_ITEM) {
+                                visible = distanceSqrd < this.itemDynamicViewRangeSqrd;
+                                if (this.itemDynamicWallDetection)
+                                    visible &= EntityUtils.hasLineOfSight(player, entity, 0.75, true);
+                            } else if (this.dynamicEntityTags) {
+                                visible = distanceSqrd < this.entityDynamicViewRangeSqrd;
+                                if (this.entityDynamicWallDetection)
+                                    visible &= EntityUtils.hasLineOfSight(player, entity, 0.75, true);
+                            } else continue;
+
+                            if (tracked)
+                                inRange.add(entity.getUniqueId());
+                            int stackSize = snapshot.getStackSize(index);
+                            if (entityType != EntityType.ARMOR_STAND && entity instanceof LivingEntity livingEntity) {
+                                StackedEntity stackedEntity = this.getStackedEntity(livingEntity);
+                                if (stackedEntity != null) {
+                                    String displayName = stackedEntity.getDisplayName();
+                                    boolean displayNameVisible = stackedEntity.isDisplayNameVisible() && visible;
+                                    NametagState nametagState = new NametagState(displayName, displayNameVisible, stackSize);
+                                    if (!tracked || !nametagState.equals(nametagStates.put(entity.getUniqueId(), nametagState)))
+                                        nmsHandler.updateEntityNameTagForPlayer(player, entity, displayName, displayNameVisible);
+                                }
+
+                                // Spawn particles for holding the stacking tool
+                                if (visible && displayStackingToolParticles) {
+                                    Location location = entity.getLocation().add(0, livingEntity.getEyeHeight(true) + 0.75, 0);
+                                    DustOptions dustOptions;
+                                    if (PersistentDataUtils.isUnstackable(livingEntity)) {
+                                        dustOptions = StackerUtils.UNSTACKABLE_DUST_OPTIONS;
+                                    } else {
+                                        dustOptions = StackerUtils.STACKABLE_DUST_OPTIONS;
+                                    }
+                                    player.spawnParticle(Particle.REDSTONE, location, 1, 0.0, 0.0, 0.0, 0.0, dustOptions);
+                                }
+                            } else {
+                                NametagState nametagState = new NametagState(null, visible, stackSize);
+                                if (!tracked || !nametagState.equals(nametagStates.put(entity.getUniqueId(), nametagState)))
+                                    nmsHandler.updateEntityNameTagVisibilityForPlayer(player, entity, visible);
+                            }
                         }
-                        player.spawnParticle(Particle.REDSTONE, location, 1, 0.0, 0.0, 0.0, 0.0, dustOptions);
                     }
-                } else {
-                    nmsHandler.updateEntityNameTagVisibilityForPlayer(player, entity, visible);
                 }
+
+                // Entities that may no longer be tracked get their name reset by the server, forget what was last sent for them
+                nametagStates.keySet().retainAll(inRange);
+            }
+
+            this.playerNametagStates.keySet().retainAll(playerIds);
+        } finally {
+            snapshot.release();
+        }
+    }
+
+    /**
+     * Reads the range the server tracks each entity type at for players in this world.
+     * Uses the spigot.yml entity tracking ranges of this world, limited by the view distance of this world the same way
+     * the server does. Entity types whose range can't be resolved are left out, their nametags are always resent.
+     *
+     * @return a map of entity types to the squared distance they are tracked at
+     */
+    private Map<EntityType, Double> loadTrackingRanges() {
+        Map<EntityType, Double> trackingRanges = new EnumMap<>(EntityType.class);
+
+        // The view distance of a single world is only available from 1.18, older servers always resend
+        if (NMSUtil.getVersionNumber() < 18)
+            return trackingRanges;
+
+        ConfigurationSection worldSettings = Bukkit.spigot().getConfig().getConfigurationSection("world-settings");
+        if (worldSettings == null)
+            return trackingRanges;
+
+        ConfigurationSection worldSection = worldSettings.getConfigurationSection(this.targetWorld.getName());
+        ConfigurationSection defaultSection = worldSettings.getConfigurationSection("default");
+        int viewRange = Math.max(0, this.targetWorld.getViewDistance() - 1) * 16;
+
+        for (EntityType entityType : EntityType.values()) {
+            Class<? extends Entity> entityClass = entityType.getEntityClass();
+            if (entityClass == null)
+                continue;
+
+            String category;
+            if (Player.class.isAssignableFrom(entityClass)) {
+                category = "players";
+            } else if (Monster.class.isAssignableFrom(entityClass) || Slime.class.isAssignableFrom(entityClass) || Ghast.class.isAssignableFrom(entityClass)
+                    || Phantom.class.isAssignableFrom(entityClass) || Shulker.class.isAssignableFrom(entityClass)) {
+                category = "monsters";
+            } else if (Creature.class.isAssignableFrom(entityClass) || Ambient.class.isAssignableFrom(entityClass)) {
+                category = "animals";
+            } else if (Item.class.isAssignableFrom(entityClass) || ExperienceOrb.class.isAssignableFrom(entityClass) || Hanging.class.isAssignableFrom(entityClass)) {
+                category = "misc";
+            } else {
+                category = "other";
+            }
+
+            String path = "entity-tracking-range." + category;
+            int range;
+            if (worldSection != null && worldSection.isInt(path)) {
+                range = worldSection.getInt(path);
+            } else if (defaultSection != null && defaultSection.isInt(path)) {
+                range = defaultSection.getInt(path);
+            } else {
+                continue;
+            }
+
+            range = Math.min(range, viewRange);
+            trackingRanges.put(entityType, (double) range * range);
+        }
+
+        return trackingRanges;
+    }
+
+    /**
+     * Captures a new snapshot if a pass that reads it runs on the next tick.
+     * This task starts one tick before the passes, so a pass runs on the next tick when this task has run a multiple of its period.
+     */
+    private void captureSnapshotBeforePass() {
+        long tick = this.snapshotTick++;
+        boolean entityPass = tick % this.entityStackPeriod == 0 && this.stackManager.isEntityStackingEnabled();
+        boolean itemPass = tick % this.itemStackPeriod == 0 && this.stackManager.isItemStackingEnabled();
+        boolean nametagPass = tick % this.nametagPeriod == 0 && (this.dynamicEntityTags || this.dynamicItemTags);
+        if (entityPass || itemPass || nametagPass)
+            this.captureSnapshot();
+    }
+
+    /**
+     * Captures the state of the stacks into a snapshot that no pass is reading, reusing its arrays, and publishes it
+     */
+    private void captureSnapshot() {
+        boolean checkWater = this.stackManager.isEntityStackingEnabled() && Setting.ENTITY_DONT_STACK_IF_IN_WATER.getBoolean();
+        Collection<StackedEntity> stackedEntities = this.stackedEntities.values();
+        Collection<StackedItem> stackedItems = this.stackedItems.values();
+
+        StackingSnapshot current = this.snapshot;
+        for (StackingSnapshot snapshot : this.snapshotPool) {
+            if (snapshot != current && snapshot.tryCapture(stackedEntities, stackedItems, checkWater)) {
+                this.snapshot = snapshot;
+                return;
+            }
+        }
+
+        // Every pooled snapshot is still being read by a pass, only happens when passes take longer than their period
+        StackingSnapshot snapshot = new StackingSnapshot();
+        snapshot.tryCapture(stackedEntities, stackedItems, checkWater);
+        this.snapshotPool.add(snapshot);
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Gets the latest snapshot and marks it as being read so it is not captured over, must be released once done
+     *
+     * @return the latest snapshot
+     */
+    private StackingSnapshot acquireSnapshot() {
+        while (true) {
+            StackingSnapshot snapshot = this.snapshot;
+            if (snapshot.retain()) {
+                if (snapshot == this.snapshot)
+                    return snapshot;
+
+                // A newer snapshot was published in the meantime
+                snapshot.release();
             }
         }
     }
@@ -313,6 +545,28 @@ public class StackingThread implements StackingLogic, AutoCloseable {
 
         if (this.nametagTask != null)
             this.nametagTask.cancel();
+
+        if (this.snapshotTask != null)
+            this.snapshotTask.cancel();
+
+        // Run anything that is still queued so no merges are left half done
+        this.mailbox.close();
+
+        this.spawnerTickScheduler.close();
+    }
+
+    /**
+     * @return the mailbox that runs work from the async tasks on the main thread
+     */
+    public StackingMailbox getMailbox() {
+        return this.mailbox;
+    }
+
+    /**
+     * @return the scheduler that runs the stacked spawners in this world
+     */
+    public SpawnerTickScheduler getSpawnerTickScheduler() {
+        return this.spawnerTickScheduler;
     }
 
     @Override
@@ -329,7 +583,8 @@ public class StackingThread implements StackingLogic, AutoCloseable {
     public Map<Block, StackedBlock> getStackedBlocks() {
         Map<Block, StackedBlock> stackedBlocks = new HashMap<>();
         for (StackChunkData stackChunkData : this.stackChunkData.values())
-            stackedBlocks.putAll(stackChunkData.getBlocks());
+            for (StackedBlock stackedBlock : stackChunkData.getBlocks())
+                stackedBlocks.put(stackedBlock.getBlock(), stackedBlock);
         return stackedBlocks;
     }
 
@@ -337,7 +592,8 @@ public class StackingThread implements StackingLogic, AutoCloseable {
     public Map<Block, StackedSpawner> getStackedSpawners() {
         Map<Block, StackedSpawner> stackedSpawners = new HashMap<>();
         for (StackChunkData stackChunkData : this.stackChunkData.values())
-            stackedSpawners.putAll(stackChunkData.getSpawners());
+            for (StackedSpawner stackedSpawner : stackChunkData.getSpawners())
+                stackedSpawners.put(stackedSpawner.getBlock(), stackedSpawner);
         return stackedSpawners;
     }
 
@@ -353,7 +609,7 @@ public class StackingThread implements StackingLogic, AutoCloseable {
 
     @Override
     public StackedBlock getStackedBlock(Block block) {
-        StackChunkData stackChunkData = this.stackChunkData.get(block.getChunk());
+        StackChunkData stackChunkData = this.stackChunkData.get(this.getChunkKey(block));
         if (stackChunkData == null)
             return null;
         return stackChunkData.getBlock(block);
@@ -361,12 +617,30 @@ public class StackingThread implements StackingLogic, AutoCloseable {
 
     @Override
     public StackedSpawner getStackedSpawner(Block block) {
-        StackChunkData stackChunkData = this.stackChunkData.get(block.getChunk());
+        StackChunkData stackChunkData = this.stackChunkData.get(this.getChunkKey(block));
         if (stackChunkData == null)
             return null;
         return stackChunkData.getSpawner(block);
     }
 
+    /**
+     * Forgets the cached spawn blocks of the spawners near a block that changed
+     *
+     * @param block The block that changed
+     */
+    public void invalidateSpawnCells(Block block) {
+        int chunkX = block.getX() >> 4;
+        int chunkZ = block.getZ() >> 4;
+        for (int x = chunkX - 1; x <= chunkX + 1; x++) {
+            for (int z = chunkZ - 1; z <= chunkZ + 1; z++) {
+                StackChunkData stackChunkData = this.stackChunkData.get(StackerUtils.getChunkKey(x, z));
+                if (stackChunkData != null)
+                    for (StackedSpawner stackedSpawner : stackChunkData.getSpawners())
+                        stackedSpawner.invalidateSpawnCells(block);
+            }
+        }
+    }
+
     @Override
     public boolean isEntityStacked(LivingEntity livingEntity) {
         return this.getStackedEntity(livingEntity) != null;
@@ -428,7 +702,7 @@ public class StackingThread implements StackingLogic, AutoCloseable {
         Block key = stackedBlock.getBlock();
         stackedBlock.kickOutGuiViewers();
 
-        StackChunkData stackChunkData = this.stackChunkData.get(key.getChunk());
+        StackChunkData stackChunkData = this.stackChunkData.get(this.getChunkKey(key));
         if (stackChunkData != null)
             stackChunkData.removeBlock(stackedBlock);
     }
@@ -438,7 +712,7 @@ public class StackingThread implements StackingLogic, AutoCloseable {
         Block key = stackedSpawner.getBlock();
         stackedSpawner.kickOutGuiViewers();
 
-        StackChunkData stackChunkData = this.stackChunkData.get(key.getChunk());
+        StackChunkData stackChunkData = this.stackChunkData.get(this.getChunkKey(key));
         if (stackChunkData != null)
             stackChunkData.removeSpawner(stackedSpawner);
     }
@@ -571,11 +845,7 @@ public class StackingThread implements StackingLogic, AutoCloseable {
 
         StackedBlock newStackedBlock = new StackedBlock(amount, block);
 
-        StackChunkData stackChunkData = this.stackChunkData.get(block.getChunk());
-        if (stackChunkData == null) {
-            stackChunkData = new StackChunkData(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
-            this.stackChunkData.put(block.getChunk(), stackChunkData);
-        }
+        StackChunkData stackChunkData = this.stackChunkData.computeIfAbsent(this.getChunkKey(block), x -> new StackChunkData());
 
         stackChunkData.addBlock(newStackedBlock);
         return newStackedBlock;
@@ -592,11 +862,7 @@ public class StackingThread implements StackingLogic, AutoCloseable {
 
         StackedSpawner newStackedSpawner = new StackedSpawner(amount, block, placedByPlayer);
 
-        StackChunkData stackChunkData = this.stackChunkData.get(block.getChunk());
-        if (stackChunkData == null) {
-            stackChunkData = new StackChunkData(new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
-            this.stackChunkData.put(block.getChunk(), stackChunkData);
-        }
+        StackChunkData stackChunkData = this.stackChunkData.computeIfAbsent(this.getChunkKey(block), x -> new StackChunkData());
 
         stackChunkData.addSpawner(newStackedSpawner);
         return newStackedSpawner;
@@ -631,6 +897,7 @@ public class StackingThread implements StackingLogic, AutoCloseable {
         Bukkit.getScheduler().runTaskAsynchronously(this.rosePlugin, () -> {
             EntityStackSettings stackSettings = this.rosePlugin.getManager(StackSettingManager.class).getEntityStackSettings(entityType);
             Set<StackedEntity> stackedEntities = new HashSet<>();
+            Map<Integer, List<StackedEntity>> compatibilityBuckets = new HashMap<>();
             NMSHandler nmsHandler = NMSAdapter.getHandler();
             boolean removeAi = Setting.ENTITY_DISABLE_ALL_MOB_AI.getBoolean();
             for (int i = 0; i < amount; i++) {
@@ -639,12 +906,14 @@ public class StackingThread implements StackingLogic, AutoCloseable {
                     PersistentDataUtils.removeEntityAi(entity);
 
                 StackedEntity newStack = new StackedEntity(entity);
-                Optional<StackedEntity> matchingEntity = stackedEntities.stream().filter(x ->
+                List<StackedEntity> bucket = compatibilityBuckets.computeIfAbsent(stackSettings.getStackCompatibilityKey(newStack), x -> new ArrayList<>());
+                Optional<StackedEntity> matchingEntity = bucket.stream().filter(x ->
                         stackSettings.testCanStackWith(x, newStack, false, true)).findFirst();
                 if (matchingEntity.isPresent()) {
                     matchingEntity.get().increaseStackSize(entity, false);
                 } else {
                     stackedEntities.add(newStack);
+                    bucket.add(newStack);
                 }
             }
 
@@ -675,19 +944,22 @@ public class StackingThread implements StackingLogic, AutoCloseable {
         if (location.getWorld() == null)
             return;
 
-        // Merge items and store their amounts
+        // Merge items and store their amounts, items are grouped by fingerprint so only those can be similar
         Map<ItemStack, Integer> itemStackAmounts = new HashMap<>();
+        Map<Integer, List<ItemStack>> fingerprintBuckets = new HashMap<>();
         for (ItemStack itemStack : items) {
             if (itemStack == null || itemStack.getType() == Material.AIR)
                 continue;
 
-            Optional<Map.Entry<ItemStack, Integer>> similar = itemStackAmounts.entrySet().stream().filter(x -> x.getKey().isSimilar(itemStack)).findFirst();
+            List<ItemStack> bucket = fingerprintBuckets.computeIfAbsent(ItemUtils.getItemFingerprint(itemStack), x -> new ArrayList<>());
+            Optional<ItemStack> similar = bucket.stream().filter(x -> x.isSimilar(itemStack)).findFirst();
             if (similar.isPresent()) {
-                similar.get().setValue(similar.get().getValue() + itemStack.getAmount());
+                itemStackAmounts.merge(similar.get(), itemStack.getAmount(), Integer::sum);
             } else {
                 ItemStack clone = itemStack.clone();
                 clone.setAmount(1);
                 itemStackAmounts.put(clone, itemStack.getAmount());
+                bucket.add(clone);
             }
         }
 
@@ -761,18 +1033,17 @@ public class StackingThread implements StackingLogic, AutoCloseable {
         if (!chunk.isLoaded())
             return;
 
-        Map<Block, StackedSpawner> stackedSpawners = new ConcurrentHashMap<>();
+        StackChunkData stackChunkData = new StackChunkData();
         if (this.stackManager.isSpawnerStackingEnabled())
             for (StackedSpawner stackedSpawner : DataUtils.readStackedSpawners(chunk))
-                stackedSpawners.put(stackedSpawner.getBlock(), stackedSpawner);
+                stackChunkData.addSpawner(stackedSpawner);
 
-        Map<Block, StackedBlock> stackedBlocks = new ConcurrentHashMap<>();
         if (this.stackManager.isBlockStackingEnabled())
             for (StackedBlock stackedBlock : DataUtils.readStackedBlocks(chunk))
-                stackedBlocks.put(stackedBlock.getBlock(), stackedBlock);
+                stackChunkData.addBlock(stackedBlock);
 
-        if (!stackedSpawners.isEmpty() || !stackedBlocks.isEmpty())
-            this.stackChunkData.put(chunk, new StackChunkData(stackedSpawners, stackedBlocks));
+        if (!stackChunkData.isEmpty())
+            this.stackChunkData.put(StackerUtils.getChunkKey(chunk.getX(), chunk.getZ()), stackChunkData);
     }
 
     @Override
@@ -814,24 +1085,27 @@ public class StackingThread implements StackingLogic, AutoCloseable {
 
     @Override
     public void saveChunkBlocks(Chunk chunk, boolean clearStored) {
-        StackChunkData stackChunkData = this.stackChunkData.get(chunk);
+        long chunkKey = StackerUtils.getChunkKey(chunk.getX(), chunk.getZ());
+        StackChunkData stackChunkData = this.stackChunkData.get(chunkKey);
         if (stackChunkData == null)
             return;
 
         if (this.stackManager.isSpawnerStackingEnabled()) {
-            DataUtils.writeStackedSpawners(stackChunkData.getSpawners().values(), chunk);
+            List<StackedSpawner> stackedSpawners = stackChunkData.getSpawners();
+            DataUtils.writeStackedSpawners(stackedSpawners, chunk);
             if (clearStored)
-                stackChunkData.getSpawners().values().stream().map(StackedSpawner::getHologramLocation).forEach(this.hologramManager::deleteHologram);
+                stackedSpawners.stream().map(StackedSpawner::getHologramLocation).forEach(this.hologramManager::deleteHologram);
         }
 
         if (this.stackManager.isBlockStackingEnabled()) {
-            DataUtils.writeStackedBlocks(stackChunkData.getBlocks().values(), chunk);
+            List<StackedBlock> stackedBlocks = stackChunkData.getBlocks();
+            DataUtils.writeStackedBlocks(stackedBlocks, chunk);
             if (clearStored)
-                stackChunkData.getBlocks().values().stream().map(StackedBlock::getHologramLocation).forEach(this.hologramManager::deleteHologram);
+                stackedBlocks.stream().map(StackedBlock::getHologramLocation).forEach(this.hologramManager::deleteHologram);
         }
 
         if (clearStored)
-            this.stackChunkData.remove(chunk);
+            this.stackChunkData.remove(chunkKey);
     }
 
     @Override
@@ -843,7 +1117,7 @@ public class StackingThread implements StackingLogic, AutoCloseable {
                     .filter(Objects::nonNull)
                     .toList();
 
-            stackedEntities.forEach(DataUtils::writeStackedEntity);
+            this.saveEntityStacks(stackedEntities, clearStored);
 
             if (clearStored)
                 stackedEntities.stream().map(StackedEntity::getEntity).map(Entity::getUniqueId).forEach(this.stackedEntities::remove);
@@ -863,50 +1137,245 @@ public class StackingThread implements StackingLogic, AutoCloseable {
         }
     }
 
+    /**
+     * Saves the data of StackedEntities to their entities.
+     * The data is encoded on the encoding pool and committed to the entities on the main thread.
+     *
+     * @param stackedEntities The StackedEntities to save
+     * @param wait true to wait for the data to be committed before returning, such as when the entities are about to be
+     *             written to disk, false to commit the data on a later tick
+     */
+    private void saveEntityStacks(List<StackedEntity> stackedEntities, boolean wait) {
+        ExecutorService encodingPool = this.stackManager.getDataEncodingPool();
+        if (encodingPool == null || stackedEntities.isEmpty() || (wait && stackedEntities.size() < 2)) {
+            stackedEntities.forEach(DataUtils::writeStackedEntity);
+            return;
+        }
+
+        if (wait) {
+            byte[][] encoded = this.encodeEntityStacks(stackedEntities, encodingPool);
+            for (int i = 0; i < stackedEntities.size(); i++)
+                DataUtils.commitStackedEntity(stackedEntities.get(i), encoded[i]);
+            return;
+        }
+
+        try {
+            encodingPool.execute(() -> {
+                List<byte[]> encoded = stackedEntities.stream().map(DataUtils::encodeStackedEntity).toList();
+                if (!this.rosePlugin.isEnabled())
+                    return;
+
+                Bukkit.getScheduler().runTask(this.rosePlugin, () -> {
+                    // Entities that were unloaded in the meantime already had fresher data written
+                    for (int i = 0; i < stackedEntities.size(); i++)
+                        if (stackedEntities.get(i).getEntity().isValid())
+                            DataUtils.commitStackedEntity(stackedEntities.get(i), encoded.get(i));
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            // The pool is full or was shut down by a reload, save on this thread instead
+            stackedEntities.forEach(DataUtils::writeStackedEntity);
+        }
+    }
+
+    /**
+     * Encodes the data of StackedEntities split into slices between the encoding pool and the calling thread.
+     * Slices that no worker has started on yet are encoded by the calling thread, so it never waits behind other queued work.
+     *
+     * @param stackedEntities The StackedEntities to encode
+     * @param encodingPool The pool to encode on
+     * @return the encoded data, in the same order as the StackedEntities
+     */
+    private byte[][] encodeEntityStacks(List<StackedEntity> stackedEntities, ExecutorService encodingPool) {
+        byte[][] encoded = new byte[stackedEntities.size()][];
+        int slices = Math.min(stackedEntities.size(), this.stackManager.getDataEncodingThreads() + 1);
+        List<FutureTask<Void>> tasks = new ArrayList<>(slices);
+        for (int slice = 0; slice < slices; slice++) {
+            int start = slice * stackedEntities.size() / slices;
+            int end = (slice + 1) * stackedEntities.size() / slices;
+            FutureTask<Void> task = new FutureTask<>(() -> {
+                for (int i = start; i < end; i++)
+                    encoded[i] = DataUtils.encodeStackedEntity(stackedEntities.get(i));
+            }, null);
+            tasks.add(task);
+
+            // The first slice is always encoded by the calling thread
+            if (slice > 0) {
+                try {
+                    encodingPool.execute(task);
+                } catch (RejectedExecutionException ignored) {
+                    // Encoded by the calling thread below
+                }
+            }
+        }
+
+        boolean interrupted = false;
+        for (FutureTask<Void> task : tasks) {
+            task.run(); // Does nothing if a worker already started the slice
+            while (true) {
+                try {
+                    task.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException runtimeException)
+                        throw runtimeException;
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        }
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        return encoded;
+    }
+
+    /**
+     * Groups StackedEntities into regions of chunks that can be searched independently of each other.
+     * Removed stacks are cleaned up while partitioning.
+     * Stacks that have not changed or moved since they were last evaluated are left out unless this is a full pass,
+     * any changed stack still searches its unchanged neighbours for something to stack with.
+     *
+     * Stacks captured after the snapshot was taken are left for the next pass.
+     *
+     * @param stackedEntities The StackedEntities to partition
+     * @param snapshot The snapshot to read entity positions from
+     * @param fullPass true to include all StackedEntities, false to only include changed ones
+     * @return A List of regions, each containing the StackedEntities within it
+     */
+    private List<List<StackedEntity>> partitionEntityStacks(Collection<StackedEntity> stackedEntities, StackingSnapshot snapshot, boolean fullPass) {
+        LongObjectMap<List<StackedEntity>> regions = new LongObjectMap<>();
+        for (StackedEntity stackedEntity : stackedEntities) {
+            LivingEntity livingEntity = stackedEntity.getEntity();
+            if (this.isRemoved(livingEntity, snapshot)) {
+                this.removeEntityStack(stackedEntity);
+                continue;
+            }
+
+            int index = snapshot.indexOf(livingEntity.getUniqueId());
+            if (index == -1)
+                continue;
+
+            double x = snapshot.getX(index);
+            double z = snapshot.getZ(index);
+            if (!stackedEntity.pollStackingDirty(x, snapshot.getY(index), z, STACK_PASS_MOVEMENT_THRESHOLD_SQRD) && !fullPass)
+                continue;
+
+            long regionKey = StackerUtils.getChunkKey(Location.locToBlock(x) >> (4 + REGION_SHIFT), Location.locToBlock(z) >> (4 + REGION_SHIFT));
+            regions.computeIfAbsent(regionKey, x -> new ArrayList<>()).add(stackedEntity);
+        }
+        return regions.values();
+    }
+
+    /**
+     * Finds the StackCandidates for each region.
+     * Regions are searched in parallel when there is more than one, entities within a region are searched in order.
+     *
+     * @param regions The regions to search
+     * @param snapshot The snapshot to read entity state from
+     * @return A List of all StackCandidates found
+     */
+    private List<StackCandidate> findStackCandidates(List<List<StackedEntity>> regions, StackingSnapshot snapshot) {
+        ForkJoinPool stackingPool = this.stackManager.getStackingPool();
+        if (regions.size() <= 1 || stackingPool == null) {
+            List<StackCandidate> stackCandidates = new ArrayList<>();
+            for (List<StackedEntity> region : regions)
+                stackCandidates.addAll(this.findStackCandidates(region, snapshot));
+            return stackCandidates;
+        }
+
+        List<ForkJoinTask<List<StackCandidate>>> tasks = new ArrayList<>(regions.size());
+        for (List<StackedEntity> region : regions)
+            tasks.add(stackingPool.submit(() -> this.findStackCandidates(region, snapshot)));
+
+        List<StackCandidate> stackCandidates = new ArrayList<>();
+        for (ForkJoinTask<List<StackCandidate>> task : tasks)
+            stackCandidates.addAll(task.join());
+        return stackCandidates;
+    }
+
+    private List<StackCandidate> findStackCandidates(Collection<StackedEntity> region, StackingSnapshot snapshot) {
+        List<StackCandidate> stackCandidates = new ArrayList<>();
+        Set<StackedEntity> claimed = new HashSet<>();
+        Map<StackedEntity, Integer> compatibilityKeys = new HashMap<>();
+        for (StackedEntity stackedEntity : region) {
+            if (claimed.contains(stackedEntity))
+                continue;
+
+            StackCandidate stackCandidate = this.findStackCandidate(stackedEntity, compatibilityKeys, snapshot);
+            if (stackCandidate == null)
+                continue;
+
+            claimed.add(stackCandidate.increased);
+            claimed.addAll(stackCandidate.removable);
+            stackCandidates.add(stackCandidate);
+        }
+        return stackCandidates;
+    }
+
     /**
      * Tries to stack a StackedEntity with all other StackedEntities
      *
      * @param stackedEntity the StackedEntity to try to stack
      */
     private void tryStackEntity(StackedEntity stackedEntity) {
+        StackCandidate stackCandidate = this.findStackCandidate(stackedEntity, new HashMap<>(), null);
+        if (stackCandidate != null)
+            this.commitStackCandidate(stackCandidate);
+    }
+
+    /**
+     * Finds the StackedEntities that a StackedEntity can currently be stacked with, does not modify any stacks
+     *
+     * @param stackedEntity the StackedEntity to find stack targets for
+     * @param compatibilityKeys the compatibility keys already calculated during this search, keys that are missing get added to it
+     * @param snapshot the snapshot to read entity state from, or null to read from the live entities
+     * @return the StackCandidate to merge, or null if there is nothing to merge
+     */
+    private StackCandidate findStackCandidate(StackedEntity stackedEntity, Map<StackedEntity, Integer> compatibilityKeys, StackingSnapshot snapshot) {
         EntityStackSettings stackSettings = stackedEntity.getStackSettings();
         if (stackSettings == null)
-            return;
+            return null;
 
         if (stackedEntity.checkNPC()) {
             this.removeEntityStack(stackedEntity);
-            return;
+            return null;
         }
 
         LivingEntity entity = stackedEntity.getEntity();
-        if (this.isRemoved(entity))
-            return;
+        if (this.isRemoved(entity, snapshot))
+            return null;
 
-        if (!WorldGuardHook.testLocation(entity.getLocation()))
-            return;
+        Location location = this.getLocation(entity, snapshot);
+        if (!WorldGuardHook.testLocation(location))
+            return null;
 
         Collection<Entity> nearbyEntities;
-        Predicate<Entity> predicate = x -> x.getType() == entity.getType();
         if (!Setting.ENTITY_MERGE_ENTIRE_CHUNK.getBoolean()) {
-            nearbyEntities = this.entityCacheManager.getNearbyEntities(entity.getLocation(), stackSettings.getMergeRadius(), predicate);
+            nearbyEntities = this.entityCacheManager.getNearbyEntities(location, stackSettings.getMergeRadius(), entity.getType());
         } else {
-            nearbyEntities = this.entityCacheManager.getEntitiesInChunk(entity.getLocation(), predicate);
+            nearbyEntities = this.entityCacheManager.getEntitiesInChunk(location, entity.getType());
         }
 
         Set<StackedEntity> targetEntities = new HashSet<>();
         targetEntities.add(stackedEntity);
 
+        // Stacks with a different compatibility key can never stack, only run the full comparison for ones in the same bucket
+        int compatibilityKey = compatibilityKeys.computeIfAbsent(stackedEntity, stackSettings::getStackCompatibilityKey);
         for (Entity otherEntity : nearbyEntities) {
-            if (entity == otherEntity || this.isRemoved(otherEntity))
+            if (entity == otherEntity || this.isRemoved(otherEntity, snapshot))
                 continue;
 
             StackedEntity other = this.stackedEntities.get(otherEntity.getUniqueId());
-            if (other == null)
+            if (other == null || compatibilityKeys.computeIfAbsent(other, stackSettings::getStackCompatibilityKey) != compatibilityKey)
                 continue;
 
-            if (stackSettings.testCanStackWith(stackedEntity, other, false)
+            // Position checks read from the snapshot when there is one instead of the live entities
+            if (stackSettings.testCanStackWith(stackedEntity, other, false, snapshot != null)
+                    && (snapshot == null || this.canStackAtSnapshotPositions(stackSettings, snapshot, entity, otherEntity))
                     && (!Setting.ENTITY_REQUIRE_LINE_OF_SIGHT.getBoolean() || EntityUtils.hasLineOfSight(entity, otherEntity, 0.75, false))
-                    && WorldGuardHook.testLocation(otherEntity.getLocation()))
+                    && WorldGuardHook.testLocation(this.getLocation(otherEntity, snapshot)))
                 targetEntities.add(other);
         }
 
@@ -938,12 +1407,54 @@ public class StackingThread implements StackingLogic, AutoCloseable {
         }
 
         if (removable.isEmpty() || totalSize < stackSettings.getMinStackSize())
+            return null;
+
+        return new StackCandidate(increased, removable, stackSettings);
+    }
+
+    /**
+     * Merges a StackCandidate, skipped if any of its stacks have been merged or removed since it was found.
+     * The stacks of a skipped candidate are evaluated again on the next pass.
+     *
+     * @param stackCandidate the StackCandidate to merge
+     */
+    private void commitStackCandidate(StackCandidate stackCandidate) {
+        if (this.tryCommitStackCandidate(stackCandidate))
             return;
 
+        // The stacks were already polled as evaluated, evaluate them again on the next pass instead of the next full pass
+        stackCandidate.increased.markStackingDirty();
+        stackCandidate.removable.forEach(StackedEntity::markStackingDirty);
+    }
+
+    /**
+     * Merges the stacks of a StackCandidate if they can still be stacked
+     *
+     * @param stackCandidate The StackCandidate to merge
+     * @return true if the stacks were merged, false if the candidate was rejected
+     */
+    private boolean tryCommitStackCandidate(StackCandidate stackCandidate) {
+        StackedEntity increased = stackCandidate.increased;
+        List<StackedEntity> removable = stackCandidate.removable;
+        EntityStackSettings stackSettings = stackCandidate.stackSettings;
+
+        if (!this.isTracked(increased))
+            return false;
+
+        int totalSize = increased.getStackSize();
+        for (StackedEntity toStack : removable) {
+            if (!this.isTracked(toStack))
+                return false;
+            totalSize += toStack.getStackSize();
+        }
+
+        if (totalSize > stackSettings.getMaxStackSize())
+            return false;
+
         EntityStackEvent entityStackEvent = new EntityStackEvent(removable, increased);
         Bukkit.getPluginManager().callEvent(entityStackEvent);
         if (entityStackEvent.isCancelled())
-            return;
+            return false;
 
         for (StackedEntity toStack : removable) {
             stackSettings.applyStackProperties(toStack.getEntity(), increased.getEntity());
@@ -952,12 +1463,8 @@ public class StackingThread implements StackingLogic, AutoCloseable {
             this.removeEntityStack(toStack);
         }
 
-        Runnable removeTask = () -> removable.stream().map(StackedEntity::getEntity).forEach(Entity::remove);
-        if (Bukkit.isPrimaryThread()) {
-            removeTask.run();
-        } else {
-            Bukkit.getScheduler().runTask(this.rosePlugin, removeTask);
-        }
+        this.mailbox.run(() -> removable.stream().map(StackedEntity::getEntity).forEach(Entity::remove));
+        return true;
     }
 
     /**
@@ -976,19 +1483,25 @@ public class StackingThread implements StackingLogic, AutoCloseable {
         if (this.isRemoved(item))
             return;
 
-        Predicate<Entity> predicate = x -> x.getType() == EntityType.DROPPED_ITEM;
-        Set<Item> nearbyItems = this.entityCacheManager.getNearbyEntities(stackedItem.getLocation(), Setting.ITEM_MERGE_RADIUS.getDouble(), predicate)
-                .stream()
-                .map(x -> (Item) x)
-                .collect(Collectors.toSet());
+        Collection<Entity> nearbyItems = this.entityCacheManager.getNearbyEntities(stackedItem.getLocation(), Setting.ITEM_MERGE_RADIUS.getDouble(), EntityType.DROPPED_ITEM);
 
+        // Only items with the same fingerprint can be similar, the full comparison is only needed for those
+        int itemFingerprint = stackedItem.getItemFingerprint();
+        ItemStack itemStack = null;
         Set<StackedItem> targetItems = new HashSet<>();
-        for (Item otherItem : nearbyItems) {
-            if (item == otherItem || otherItem.getPickupDelay() > 40 || !item.getItemStack().isSimilar(otherItem.getItemStack()) || this.isRemoved(otherItem))
+        for (Entity nearbyItem : nearbyItems) {
+            Item otherItem = (Item) nearbyItem;
+            if (item == otherItem || otherItem.getPickupDelay() > 40 || this.isRemoved(otherItem))
                 continue;
 
             StackedItem other = this.stackedItems.get(otherItem.getUniqueId());
-            if (other != null)
+            if (other == null || other.getItemFingerprint() != itemFingerprint)
+                continue;
+
+            if (itemStack == null)
+                itemStack = item.getItemStack();
+
+            if (itemStack.isSimilar(otherItem.getItemStack()))
                 targetItems.add(other);
         }
 
@@ -1019,12 +1532,7 @@ public class StackingThread implements StackingLogic, AutoCloseable {
             removed.getItem().setPickupDelay(100); // Don't allow the item we just merged to get picked up or stacked
             increased.getItem().setPickupDelay(5);
 
-            Runnable removeTask = () -> removed.getItem().remove();
-            if (Bukkit.isPrimaryThread()) {
-                removeTask.run();
-            } else {
-                Bukkit.getScheduler().runTask(this.rosePlugin, removeTask);
-            }
+            this.mailbox.run(() -> removed.getItem().remove());
 
             this.removeItemStack(removed);
         }
@@ -1050,14 +1558,66 @@ public class StackingThread implements StackingLogic, AutoCloseable {
         this.stackedItems.put(entityUUID, stackedItem);
     }
 
+    private boolean isTracked(StackedEntity stackedEntity) {
+        LivingEntity entity = stackedEntity.getEntity();
+        return !this.isRemoved(entity) && this.stackedEntities.get(entity.getUniqueId()) == stackedEntity;
+    }
+
     private boolean isRemoved(Entity entity) {
         return entity == null || (!entity.isValid() && !entity.hasMetadata(NEW_METADATA)) || REMOVED_ENTITIES.getIfPresent(entity.getUniqueId()) != null;
     }
 
+    private boolean isRemoved(Entity entity, StackingSnapshot snapshot) {
+        if (snapshot == null)
+            return this.isRemoved(entity);
+        return entity == null || (!this.isValid(entity, snapshot) && !entity.hasMetadata(NEW_METADATA)) || REMOVED_ENTITIES.getIfPresent(entity.getUniqueId()) != null;
+    }
+
+    private boolean isValid(Entity entity, StackingSnapshot snapshot) {
+        int index = snapshot.indexOf(entity.getUniqueId());
+        return index == -1 ? entity.isValid() : snapshot.isValid(index);
+    }
+
+    private Location getLocation(Entity entity, StackingSnapshot snapshot) {
+        int index = snapshot == null ? -1 : snapshot.indexOf(entity.getUniqueId());
+        if (index == -1)
+            return entity.getLocation();
+        return new Location(this.targetWorld, snapshot.getX(index), snapshot.getY(index), snapshot.getZ(index));
+    }
+
+    /**
+     * Checks the on ground and in water conditions of two entities using the state captured in a snapshot
+     *
+     * @param stackSettings The settings of the entities
+     * @param snapshot The snapshot to read the entity state from
+     * @param entity1 The first entity
+     * @param entity2 The second entity
+     * @return true if the positions of the entities allow them to stack, false otherwise
+     */
+    private boolean canStackAtSnapshotPositions(EntityStackSettings stackSettings, StackingSnapshot snapshot, Entity entity1, Entity entity2) {
+        if (stackSettings.getEntityTypeData().isSwimmingMob() || stackSettings.getEntityTypeData().isFlyingMob())
+            return true;
+
+        // Entities that were not captured yet will be checked again in a later pass
+        int index1 = snapshot.indexOf(entity1.getUniqueId());
+        int index2 = snapshot.indexOf(entity2.getUniqueId());
+        if (index1 == -1 || index2 == -1)
+            return false;
+
+        if (Setting.ENTITY_ONLY_STACK_ON_GROUND.getBoolean() && (!snapshot.isOnGround(index1) || !snapshot.isOnGround(index2)))
+            return false;
+
+        return !Setting.ENTITY_DONT_STACK_IF_IN_WATER.getBoolean() || (!snapshot.isInWater(index1) && !snapshot.isInWater(index2));
+    }
+
     private void setRemoved(Entity entity) {
         REMOVED_ENTITIES.put(entity.getUniqueId(), true);
     }
 
+    private long getChunkKey(Block block) {
+        return StackerUtils.getChunkKey(block.getX() >> 4, block.getZ() >> 4);
+    }
+
     /**
      * @return the world that this StackingThread is acting on
      */
@@ -1065,4 +1625,54 @@ public class StackingThread implements StackingLogic, AutoCloseable {
         return this.targetWorld;
     }
 
+    /**
+     * A set of StackedEntities found to be stackable together
+     */
+    private static class StackCandidate {
+
+        private final StackedEntity increased;
+        private final List<StackedEntity> removable;
+        private final EntityStackSettings stackSettings;
+
+        public StackCandidate(StackedEntity increased, List<StackedEntity> removable, EntityStackSettings stackSettings) {
+            this.increased = increased;
+            this.removable = removable;
+            this.stackSettings = stackSettings;
+        }
+
+    }
+
+    /**
+     * The nametag state last sent to a player for an entity
+     */
+    private static class NametagState {
+
+        private final String displayName;
+        private final boolean visible;
+        private final int stackSize;
+
+        public NametagState(String displayName, boolean visible, int stackSize) {
+            this.displayName = displayName;
+            this.visible = visible;
+            this.stackSize = stackSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+
+            if (!(o instanceof NametagState other))
+                return false;
+
+            return this.visible == other.visible && this.stackSize == other.stackSize && Objects.equals(this.displayName, other.displayName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.displayName, this.visible, this.stackSize);
+        }
+
+    }
+
 }
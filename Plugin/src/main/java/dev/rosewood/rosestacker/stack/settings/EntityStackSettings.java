@@ -10,6 +10,7 @@ import dev.rosewood.rosestacker.listener.RaidListener;
 import dev.rosewood.rosestacker.manager.ConfigurationManager.Setting;
 import dev.rosewood.rosestacker.nms.NMSAdapter;
 import dev.rosewood.rosestacker.nms.NMSHandler;
+import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorageType;
 import dev.rosewood.rosestacker.stack.EntityStackComparisonResult;
 import dev.rosewood.rosestacker.stack.StackedEntity;
 import dev.rosewood.rosestacker.utils.PersistentDataUtils;
@@ -50,6 +51,7 @@ public abstract class EntityStackSettings extends StackSettings {
     private final Boolean killEntireStackOnDeath;
     private final double mergeRadius;
     private final Boolean onlyStackFromSpawners;
+    private final StackedEntityDataStorageType dataStorageType;
 
     // Settings that apply to multiple entities through interfaces
     private boolean dontStackIfDifferentColor;
@@ -102,6 +104,7 @@ public abstract class EntityStackSettings extends StackSettings {
         this.killEntireStackOnDeath = this.settingsConfiguration.getDefaultedBoolean("kill-entire-stack-on-death");
         this.mergeRadius = this.settingsConfiguration.getDouble("merge-radius");
         this.onlyStackFromSpawners = this.settingsConfiguration.getDefaultedBoolean("only-stack-from-spawners");
+        this.dataStorageType = StackerUtils.parseDataStorageType(this.settingsConfiguration.getString("data-storage-type"));
 
         if (this.isEntityColorable())
             this.dontStackIfDifferentColor = this.settingsConfiguration.getBoolean("dont-stack-if-different-color");
@@ -146,6 +149,7 @@ public abstract class EntityStackSettings extends StackSettings {
         this.setIfNotExists("kill-entire-stack-on-death", "default");
         this.setIfNotExists("merge-radius", -1);
         this.setIfNotExists("only-stack-from-spawners", "default");
+        this.setIfNotExists("data-storage-type", "default");
 
         if (this.isEntityColorable())
             this.setIfNotExists("dont-stack-if-different-color", false);
@@ -365,6 +369,39 @@ public abstract class EntityStackSettings extends StackSettings {
         return this.canStackWithInternal(stack1, stack2);
     }
 
+    /**
+     * Gets a key derived from the attributes of a StackedEntity that must be equal for it to stack with another.
+     * StackedEntities with different keys can never stack with each other, equal keys still need to be checked with
+     * {@link #canStackWith(StackedEntity, StackedEntity, boolean, boolean)}.
+     * The key reflects the current state of the entity, so it should not be kept after the entity may have changed.
+     *
+     * @param stackedEntity The StackedEntity to get the key for
+     * @return the compatibility key of the StackedEntity
+     */
+    public int getStackCompatibilityKey(StackedEntity stackedEntity) {
+        LivingEntity entity = stackedEntity.getEntity();
+        int key = entity.getType().hashCode();
+
+        if (this.isEntityColorable() && this.dontStackIfDifferentColor)
+            key = 31 * key + Objects.hashCode(((Colorable) entity).getColor());
+
+        if (this.isEntityAgeable() && this.dontStackIfDifferentAge)
+            key = 31 * key + Boolean.hashCode(((Ageable) entity).isAdult());
+
+        return 31 * key + this.getStackCompatibilityKeyInternal(stackedEntity);
+    }
+
+    /**
+     * Gets the part of the compatibility key for the attributes checked by {@link #canStackWithInternal(StackedEntity, StackedEntity)}.
+     * Only attributes that must be equal for two entities to stack may be included.
+     *
+     * @param stackedEntity The StackedEntity to get the key for
+     * @return the compatibility key for the entity type specific attributes
+     */
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        return 0;
+    }
+
     @Override
     public String getConfigurationSectionKey() {
         return this.getEntityType().name();
@@ -558,6 +595,14 @@ public abstract class EntityStackSettings extends StackSettings {
         return Setting.ENTITY_ONLY_STACK_FROM_SPAWNERS.getBoolean();
     }
 
+    public StackedEntityDataStorageType getDataStorageType() {
+        if (this.dataStorageType != null)
+            return this.dataStorageType;
+
+        StackedEntityDataStorageType storageType = StackerUtils.parseDataStorageType(Setting.ENTITY_DATA_STORAGE_TYPE.getString());
+        return storageType != null ? storageType : StackedEntityDataStorageType.NBT;
+    }
+
     protected abstract void setDefaultsInternal();
 
     protected abstract EntityStackComparisonResult canStackWithInternal(StackedEntity stack1, StackedEntity stack2);
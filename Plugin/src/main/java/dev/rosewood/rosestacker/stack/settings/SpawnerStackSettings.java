@@ -6,6 +6,7 @@ import dev.rosewood.rosestacker.manager.ConfigurationManager.Setting;
 import dev.rosewood.rosestacker.manager.StackSettingManager;
 import dev.rosewood.rosestacker.spawner.conditions.ConditionTag;
 import dev.rosewood.rosestacker.spawner.conditions.ConditionTags;
+import dev.rosewood.rosestacker.spawner.conditions.SpawnConditionPlan;
 import dev.rosewood.rosestacker.utils.StackerUtils;
 import java.util.ArrayList;
 import java.util.List;
@@ -26,6 +27,7 @@ public class SpawnerStackSettings extends StackSettings {
     private final int playerActivationRange;
     private final int spawnRange;
     private final List<ConditionTag> spawnRequirements;
+    private final SpawnConditionPlan spawnConditionPlan;
 
     public SpawnerStackSettings(CommentedFileConfiguration settingsConfiguration, EntityType entityType) {
         super(settingsConfiguration);
@@ -60,6 +62,8 @@ public class SpawnerStackSettings extends StackSettings {
 
         if (requirementStrings.stream().noneMatch(x -> x.startsWith("max-nearby-entities")))
             this.spawnRequirements.add(ConditionTags.parse("max-nearby-entities:" + Setting.SPAWNER_SPAWN_MAX_NEARBY_ENTITIES.getInt()));
+
+        this.spawnConditionPlan = new SpawnConditionPlan(this.spawnRequirements);
     }
 
     @Override
@@ -117,6 +121,13 @@ public class SpawnerStackSettings extends StackSettings {
         return this.spawnRequirements;
     }
 
+    /**
+     * @return the spawn requirements compiled into the order they are checked in
+     */
+    public SpawnConditionPlan getSpawnConditionPlan() {
+        return this.spawnConditionPlan;
+    }
+
     public int getSpawnCountStackSizeMultiplier() {
         if (this.spawnCountStackSizeMultiplier != -1)
             return Math.max(this.spawnCountStackSizeMultiplier, 1);
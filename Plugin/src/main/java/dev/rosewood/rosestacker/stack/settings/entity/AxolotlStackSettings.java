@@ -34,6 +34,14 @@ public class AxolotlStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        Axolotl axolotl = (Axolotl) stackedEntity.getEntity();
+        if (this.dontStackIfDifferentColor)
+            return axolotl.getVariant().hashCode();
+        return 0;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-different-color", false);
@@ -34,6 +34,20 @@ public class CatStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        Cat cat = (Cat) stackedEntity.getEntity();
+        int key = 0;
+
+        if (this.dontStackIfDifferentType)
+            key = 31 * key + cat.getCatType().hashCode();
+
+        if (this.dontStackIfDifferentCollarColor)
+            key = 31 * key + cat.getCollarColor().hashCode();
+
+        return key;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-different-type", false);
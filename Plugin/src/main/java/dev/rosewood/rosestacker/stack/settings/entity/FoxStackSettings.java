@@ -29,6 +29,14 @@ public class FoxStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        Fox fox = (Fox) stackedEntity.getEntity();
+        if (this.dontStackIfDifferentType)
+            return fox.getFoxType().hashCode();
+        return 0;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-different-type", false);
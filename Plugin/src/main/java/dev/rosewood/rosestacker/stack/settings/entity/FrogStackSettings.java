@@ -29,6 +29,14 @@ public class FrogStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        Frog frog = (Frog) stackedEntity.getEntity();
+        if (this.dontStackIfDifferentType)
+            return frog.getVariant().hashCode();
+        return 0;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-different-type", false);
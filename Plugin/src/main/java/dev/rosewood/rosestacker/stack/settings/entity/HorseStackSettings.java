@@ -39,6 +39,20 @@ public class HorseStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        Horse horse = (Horse) stackedEntity.getEntity();
+        int key = 0;
+
+        if (this.dontStackIfDifferentStyle)
+            key = 31 * key + horse.getStyle().hashCode();
+
+        if (this.dontStackIfDifferentColor)
+            key = 31 * key + horse.getColor().hashCode();
+
+        return key;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-armored", false);
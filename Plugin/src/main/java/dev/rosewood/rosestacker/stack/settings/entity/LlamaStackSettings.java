@@ -34,6 +34,14 @@ public class LlamaStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        Llama llama = (Llama) stackedEntity.getEntity();
+        if (this.dontStackIfDifferentColor)
+            return llama.getColor().hashCode();
+        return 0;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-different-decor", false);
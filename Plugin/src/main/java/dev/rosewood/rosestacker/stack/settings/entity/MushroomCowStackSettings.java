@@ -33,6 +33,14 @@ public class MushroomCowStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        MushroomCow mushroomCow = (MushroomCow) stackedEntity.getEntity();
+        if (this.dontStackIfDifferentType)
+            return mushroomCow.getVariant().hashCode();
+        return 0;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-different-type", false);
@@ -34,6 +34,20 @@ public class PandaStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        Panda panda = (Panda) stackedEntity.getEntity();
+        int key = 0;
+
+        if (this.dontStackIfDifferentMainGene)
+            key = 31 * key + panda.getMainGene().hashCode();
+
+        if (this.dontStackIfDifferentRecessiveGene)
+            key = 31 * key + panda.getHiddenGene().hashCode();
+
+        return key;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-different-main-gene", false);
@@ -29,6 +29,14 @@ public class ParrotStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        Parrot parrot = (Parrot) stackedEntity.getEntity();
+        if (this.dontStackIfDifferentType)
+            return parrot.getVariant().hashCode();
+        return 0;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-different-type", false);
@@ -29,6 +29,14 @@ public class PhantomStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        Phantom phantom = (Phantom) stackedEntity.getEntity();
+        if (this.dontStackIfDifferentSize)
+            return phantom.getSize();
+        return 0;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-different-size", false);
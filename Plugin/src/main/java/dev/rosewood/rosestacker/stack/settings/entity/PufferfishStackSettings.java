@@ -29,6 +29,14 @@ public class PufferfishStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        PufferFish pufferFish = (PufferFish) stackedEntity.getEntity();
+        if (this.dontStackIfDifferentInflation)
+            return pufferFish.getPuffState();
+        return 0;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-different-inflation", false);
@@ -29,6 +29,14 @@ public class RabbitStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        Rabbit rabbit = (Rabbit) stackedEntity.getEntity();
+        if (this.dontStackIfDifferentType)
+            return rabbit.getRabbitType().hashCode();
+        return 0;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-different-type", false);
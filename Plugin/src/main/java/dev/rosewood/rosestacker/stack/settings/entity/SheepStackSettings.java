@@ -38,6 +38,14 @@ public class SheepStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        Sheep sheep = (Sheep) stackedEntity.getEntity();
+        if (this.dontStackIfDifferentShearState)
+            return Boolean.hashCode(sheep.isSheared());
+        return 0;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-sheared", false);
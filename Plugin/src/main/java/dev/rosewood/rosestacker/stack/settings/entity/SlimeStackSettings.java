@@ -31,6 +31,14 @@ public class SlimeStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        Slime slime = (Slime) stackedEntity.getEntity();
+        if (this.dontStackIfDifferentSize)
+            return slime.getSize();
+        return 0;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-different-size", true);
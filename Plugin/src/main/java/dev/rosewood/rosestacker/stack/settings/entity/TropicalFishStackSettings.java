@@ -39,6 +39,23 @@ public class TropicalFishStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        TropicalFish tropicalFish = (TropicalFish) stackedEntity.getEntity();
+        int key = 0;
+
+        if (this.dontStackIfDifferentBodyColor)
+            key = 31 * key + tropicalFish.getBodyColor().hashCode();
+
+        if (this.dontStackIfDifferentPattern)
+            key = 31 * key + tropicalFish.getPattern().hashCode();
+
+        if (this.dontStackIfDifferentPatternColor)
+            key = 31 * key + tropicalFish.getPatternColor().hashCode();
+
+        return key;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-different-body-color", false);
@@ -53,6 +53,20 @@ public class VillagerStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        Villager villager = (Villager) stackedEntity.getEntity();
+        int key = 0;
+
+        if (this.dontStackIfDifferentProfession)
+            key = 31 * key + villager.getProfession().hashCode();
+
+        if (this.dontStackIfDifferentLevel)
+            key = 31 * key + villager.getVillagerLevel();
+
+        return key;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-different-profession", false);
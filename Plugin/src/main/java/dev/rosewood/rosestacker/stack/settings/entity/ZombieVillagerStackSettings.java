@@ -5,6 +5,7 @@ import dev.rosewood.rosegarden.config.CommentedFileConfiguration;
 import dev.rosewood.rosestacker.stack.EntityStackComparisonResult;
 import dev.rosewood.rosestacker.stack.StackedEntity;
 import dev.rosewood.rosestacker.stack.settings.EntityStackSettings;
+import java.util.Objects;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.ZombieVillager;
 
@@ -34,6 +35,14 @@ public class ZombieVillagerStackSettings extends EntityStackSettings {
         return EntityStackComparisonResult.CAN_STACK;
     }
 
+    @Override
+    protected int getStackCompatibilityKeyInternal(StackedEntity stackedEntity) {
+        ZombieVillager zombieVillager = (ZombieVillager) stackedEntity.getEntity();
+        if (this.dontStackIfDifferentProfession)
+            return Objects.hashCode(zombieVillager.getVillagerProfession());
+        return 0;
+    }
+
     @Override
     protected void setDefaultsInternal() {
         this.setIfNotExists("dont-stack-if-different-profession", false);
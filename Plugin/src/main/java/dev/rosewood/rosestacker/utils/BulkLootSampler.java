@@ -0,0 +1,159 @@
+package dev.rosewood.rosestacker.utils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * Estimates the loot of killing a large number of entities from the loot of a smaller sample of them.
+ * For every item, the sampled kills give how often each amount of it was dropped by a single kill. The total amount for
+ * any number of kills is drawn from a multinomial distribution over those amounts, experience is drawn the same way.
+ * Drawing takes time proportional to the number of distinct amounts rather than the number of kills.
+ * The expected totals are the same as multiplying the sampled loot, but the totals are no longer restricted to multiples
+ * of the multiplier. Only items that were dropped by at least one sampled kill can be drawn.
+ */
+public class BulkLootSampler {
+
+    private final Map<ItemStack, Map<Integer, Integer>> itemAmounts;
+    private final Map<Integer, Integer> experienceAmounts;
+    private int sampleCount;
+
+    public BulkLootSampler() {
+        this.itemAmounts = new LinkedHashMap<>();
+        this.experienceAmounts = new LinkedHashMap<>();
+    }
+
+    /**
+     * Records the loot of a single sampled kill
+     *
+     * @param drops The items dropped by the kill
+     * @param experience The experience dropped by the kill
+     */
+    public void addSample(Collection<ItemStack> drops, int experience) {
+        Map<ItemStack, Integer> amounts = new HashMap<>();
+        for (ItemStack itemStack : drops) {
+            if (itemStack == null || itemStack.getAmount() <= 0)
+                continue;
+
+            ItemStack key = itemStack.clone();
+            key.setAmount(1);
+            amounts.merge(key, itemStack.getAmount(), Integer::sum);
+        }
+
+        for (Map.Entry<ItemStack, Integer> entry : amounts.entrySet())
+            this.itemAmounts.computeIfAbsent(entry.getKey(), x -> new LinkedHashMap<>()).merge(entry.getValue(), 1, Integer::sum);
+
+        this.experienceAmounts.merge(experience, 1, Integer::sum);
+        this.sampleCount++;
+    }
+
+    /**
+     * @return the number of kills that have been sampled
+     */
+    public int getSampleCount() {
+        return this.sampleCount;
+    }
+
+    /**
+     * Draws the total loot for a number of kills
+     *
+     * @param kills The number of kills to draw the loot for
+     * @param loot The collection to add the dropped items to, split into stacks no larger than their max stack size
+     * @return the total experience dropped
+     */
+    public long sample(long kills, Collection<ItemStack> loot) {
+        if (kills <= 0 || this.sampleCount == 0)
+            return 0;
+
+        Random random = ThreadLocalRandom.current();
+        for (Map.Entry<ItemStack, Map<Integer, Integer>> entry : this.itemAmounts.entrySet()) {
+            long amount = this.drawTotal(random, entry.getValue(), kills);
+            if (amount > 0)
+                loot.addAll(split(entry.getKey(), amount));
+        }
+
+        return this.drawTotal(random, this.experienceAmounts, kills);
+    }
+
+    /**
+     * Splits the kills between the amounts one amount at a time, which is the same as a single multinomial draw.
+     * Sampled kills that are not part of the amounts dropped nothing.
+     *
+     * @param random The random to use
+     * @param amounts The number of sampled kills that dropped each amount
+     * @param kills The number of kills to draw for
+     * @return the sum of the drawn amounts
+     */
+    private long drawTotal(Random random, Map<Integer, Integer> amounts, long kills) {
+        long total = 0;
+        long remainingKills = kills;
+        int remainingSamples = this.sampleCount;
+        for (Map.Entry<Integer, Integer> entry : amounts.entrySet()) {
+            if (remainingKills == 0)
+                break;
+
+            int count = entry.getValue();
+            long amountKills = binomial(random, remainingKills, count / (double) remainingSamples);
+            total += amountKills * entry.getKey();
+            remainingKills -= amountKills;
+            remainingSamples -= count;
+        }
+        return total;
+    }
+
+    /**
+     * Draws the number of successes out of a number of trials that each succeed with the same chance
+     *
+     * @param random The random to use
+     * @param trials The number of trials
+     * @param chance The chance of each trial succeeding
+     * @return the number of successful trials
+     */
+    private static long binomial(Random random, long trials, double chance) {
+        if (trials <= 0 || chance <= 0)
+            return 0;
+
+        if (chance >= 1)
+            return trials;
+
+        if (chance > 0.5)
+            return trials - binomial(random, trials, 1 - chance);
+
+        double mean = trials * chance;
+        if (mean < 30) {
+            // Skip ahead by the number of trials until the next success, takes time proportional to the mean
+            double logFailure = Math.log1p(-chance);
+            long trial = 0;
+            long successes = 0;
+            while (true) {
+                trial += (long) (Math.log(1 - random.nextDouble()) / logFailure) + 1;
+                if (trial > trials)
+                    return successes;
+                successes++;
+            }
+        }
+
+        // With a large mean the distribution is close to normal, a rounded normal draw is used instead
+        double successes = Math.round(mean + Math.sqrt(mean * (1 - chance)) * random.nextGaussian());
+        return (long) Math.max(0, Math.min(trials, successes));
+    }
+
+    private static List<ItemStack> split(ItemStack itemStack, long amount) {
+        List<ItemStack> items = new ArrayList<>();
+        int maxStackSize = Math.max(1, itemStack.getMaxStackSize());
+        while (amount > 0) {
+            ItemStack clone = itemStack.clone();
+            clone.setAmount((int) Math.min(amount, maxStackSize));
+            items.add(clone);
+            amount -= clone.getAmount();
+        }
+        return items;
+    }
+
+}
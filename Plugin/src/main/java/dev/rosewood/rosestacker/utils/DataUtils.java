@@ -4,19 +4,27 @@ import dev.rosewood.rosestacker.RoseStacker;
 import dev.rosewood.rosestacker.manager.ConfigurationManager;
 import dev.rosewood.rosestacker.nms.NMSAdapter;
 import dev.rosewood.rosestacker.nms.NMSHandler;
+import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorage;
+import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorageType;
 import dev.rosewood.rosestacker.stack.StackedBlock;
 import dev.rosewood.rosestacker.stack.StackedEntity;
 import dev.rosewood.rosestacker.stack.StackedItem;
 import dev.rosewood.rosestacker.stack.StackedSpawner;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 import org.bukkit.Chunk;
 import org.bukkit.Material;
 import org.bukkit.NamespacedKey;
@@ -29,34 +37,77 @@ import org.bukkit.persistence.PersistentDataType;
 public final class DataUtils {
 
     private static final NamespacedKey ENTITY_KEY = new NamespacedKey(RoseStacker.getInstance(), "stacked_entity_data");
-    private static final int ENTITY_DATA_VERSION = 1;
+    private static final int ENTITY_DATA_VERSION = 3;
 
     private static final NamespacedKey ITEM_KEY = new NamespacedKey(RoseStacker.getInstance(), "stacked_item_data");
-    private static final int ITEM_DATA_VERSION = 1;
+    private static final int ITEM_DATA_VERSION = 2;
 
     private static final NamespacedKey CHUNK_SPAWNERS_KEY = new NamespacedKey(RoseStacker.getInstance(), "stacked_spawner_data");
-    private static final int SPAWNER_DATA_VERSION = 1;
+    private static final int SPAWNER_DATA_VERSION = 2;
 
     private static final NamespacedKey CHUNK_BLOCKS_KEY = new NamespacedKey(RoseStacker.getInstance(), "stacked_block_data");
-    private static final int BLOCK_DATA_VERSION = 1;
+    private static final int BLOCK_DATA_VERSION = 2;
+
+    /**
+     * Data written by this class starts with this byte followed by the data version and the codec.
+     * Older data always starts with either a GZIP or a Java serialization header, neither of which begin with this byte.
+     */
+    private static final byte FORMAT_MARKER = 'R';
+    private static final int HEADER_LENGTH = 3;
+    private static final byte CODEC_NONE = 0;
+    private static final byte CODEC_DEFLATE = 1;
+    private static final int COMPRESSION_THRESHOLD = 256;
+
+    private static final ThreadLocal<ReusableByteArrayOutputStream> BODY_BUFFER = ThreadLocal.withInitial(ReusableByteArrayOutputStream::new);
+    private static final ThreadLocal<byte[][]> COMPRESSION_BUFFER = ThreadLocal.withInitial(() -> new byte[1][0]);
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
 
     public static StackedEntity readStackedEntity(LivingEntity entity) {
         PersistentDataContainer pdc = entity.getPersistentDataContainer();
         NMSHandler nmsHandler = NMSAdapter.getHandler();
         byte[] data = pdc.get(ENTITY_KEY, PersistentDataType.BYTE_ARRAY);
         if (data == null)
-            return new StackedEntity(entity, nmsHandler.createEntityDataStorage(entity));
+            return new StackedEntity(entity, StackerUtils.createEntityDataStorage(entity));
 
+        if (!hasFormatMarker(data))
+            return readLegacyStackedEntity(entity, pdc, data);
+
+        try (DataInputStream dataInput = openBody(data)) {
+            int dataVersion = data[1];
+            if (dataVersion == 3) {
+                StackedEntityDataStorageType storageType = StackedEntityDataStorageType.fromId(readVarInt(dataInput));
+                if (storageType == null)
+                    throw new IllegalStateException("Unknown entity data storage type");
+
+                byte[] nbt = new byte[readVarInt(dataInput)];
+                dataInput.readFully(nbt);
+                return new StackedEntity(entity, nmsHandler.deserializeEntityDataStorage(entity, nbt, storageType));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            pdc.remove(ENTITY_KEY);
+        }
+        return null;
+    }
+
+    private static StackedEntity readLegacyStackedEntity(LivingEntity entity, PersistentDataContainer pdc, byte[] data) {
         try (ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
              ObjectInputStream dataInput = new ObjectInputStream(new GZIPInputStream(inputStream))) {
 
             int dataVersion = dataInput.readInt();
-            if (dataVersion == 1) {
+            if (dataVersion == 1 || dataVersion == 2) {
+                // Version 1 data was always stored as NBT
+                StackedEntityDataStorageType storageType = StackedEntityDataStorageType.NBT;
+                if (dataVersion == 2) {
+                    storageType = StackedEntityDataStorageType.fromId(dataInput.readInt());
+                    if (storageType == null)
+                        throw new IllegalStateException("Unknown entity data storage type");
+                }
+
                 int length = dataInput.readInt();
                 byte[] nbt = new byte[length];
-                for (int i = 0; i < length; i++)
-                    nbt[i] = dataInput.readByte();
-                return new StackedEntity(entity, nmsHandler.deserializeEntityDataStorage(nbt));
+                dataInput.readFully(nbt);
+                return new StackedEntity(entity, NMSAdapter.getHandler().deserializeEntityDataStorage(entity, nbt, storageType));
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -66,29 +117,46 @@ public final class DataUtils {
     }
 
     public static void writeStackedEntity(StackedEntity stackedEntity) {
-        PersistentDataContainer pdc = stackedEntity.getEntity().getPersistentDataContainer();
+        commitStackedEntity(stackedEntity, encodeStackedEntity(stackedEntity));
+    }
+
+    /**
+     * Encodes the data of a StackedEntity without touching the entity, safe to call off of the main thread
+     *
+     * @param stackedEntity The StackedEntity to encode
+     * @return the encoded data, or null if it could not be encoded
+     */
+    public static byte[] encodeStackedEntity(StackedEntity stackedEntity) {
         byte[] data = null;
 
         int maxSaveAmount = ConfigurationManager.Setting.ENTITY_SAVE_MAX_STACK_SIZE.getInt();
         if (maxSaveAmount <= 0)
             maxSaveAmount = Integer.MAX_VALUE;
 
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-             ObjectOutputStream dataOutput = new ObjectOutputStream(new GZIPOutputStream(outputStream))) {
-
-            dataOutput.writeInt(ENTITY_DATA_VERSION);
-            byte[] nbt = stackedEntity.getStackedEntityNBT().serialize(maxSaveAmount - 1);
-            dataOutput.writeInt(nbt.length);
-            dataOutput.write(nbt);
-
-            dataOutput.close();
-            data = outputStream.toByteArray();
+        try {
+            StackedEntityDataStorage stackedEntityDataStorage = stackedEntity.getStackedEntityNBT();
+            byte[] nbt = stackedEntityDataStorage.serialize(maxSaveAmount - 1);
+            data = encode(ENTITY_DATA_VERSION, dataOutput -> {
+                writeVarInt(dataOutput, stackedEntityDataStorage.getType().getId());
+                writeVarInt(dataOutput, nbt.length);
+                dataOutput.write(nbt);
+            });
         } catch (Exception e) {
             e.printStackTrace();
         }
 
+        return data;
+    }
+
+    /**
+     * Stores data from {@link #encodeStackedEntity(StackedEntity)} on the entity, must be called on the main thread
+     *
+     * @param stackedEntity The StackedEntity the data belongs to
+     * @param data The encoded data, nothing will be stored if null
+     */
+    public static void commitStackedEntity(StackedEntity stackedEntity, byte[] data) {
         if (data != null)
-            pdc.set(ENTITY_KEY, PersistentDataType.BYTE_ARRAY, data);
+            stackedEntity.getEntity().getPersistentDataContainer().set(ENTITY_KEY, PersistentDataType.BYTE_ARRAY, data);
     }
 
     public static void clearStackedEntityData(LivingEntity entity) {
@@ -102,13 +170,14 @@ public final class DataUtils {
         if (data == null)
             return new StackedItem(item.getItemStack().getAmount(), item);
 
-        try (ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
-             ObjectInputStream dataInput = new ObjectInputStream(inputStream)) {
-
-            int dataVersion = dataInput.readInt();
+        try (DataInputStream dataInput = openBody(data)) {
+            int dataVersion = readVersion(data, dataInput);
             if (dataVersion == 1) {
                 int stackSize = dataInput.readInt();
                 return new StackedItem(stackSize, item);
+            } else if (dataVersion == 2) {
+                int stackSize = readVarInt(dataInput);
+                return new StackedItem(stackSize, item);
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -121,14 +190,8 @@ public final class DataUtils {
         PersistentDataContainer pdc = stackedItem.getItem().getPersistentDataContainer();
         byte[] data = null;
 
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-             ObjectOutputStream dataOutput = new ObjectOutputStream(outputStream)) {
-
-            dataOutput.writeInt(ITEM_DATA_VERSION);
-            dataOutput.writeInt(stackedItem.getStackSize());
-
-            dataOutput.close();
-            data = outputStream.toByteArray();
+        try {
+            data = encode(ITEM_DATA_VERSION, dataOutput -> writeVarInt(dataOutput, stackedItem.getStackSize()));
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -145,10 +208,8 @@ public final class DataUtils {
         if (data == null)
             return stackedSpawners;
 
-        try (ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
-             ObjectInputStream dataInput = new ObjectInputStream(inputStream)) {
-
-            int dataVersion = dataInput.readInt();
+        try (DataInputStream dataInput = openBody(data)) {
+            int dataVersion = readVersion(data, dataInput);
             if (dataVersion == 1) {
                 int length = dataInput.readInt();
                 for (int i = 0; i < length; i++) {
@@ -161,6 +222,15 @@ public final class DataUtils {
                     if (block.getType() == Material.SPAWNER)
                         stackedSpawners.add(new StackedSpawner(stackSize, block, placedByPlayer));
                 }
+            } else if (dataVersion == 2) {
+                int length = readVarInt(dataInput);
+                for (int i = 0; i < length; i++) {
+                    int stackSize = readVarInt(dataInput);
+                    Block block = readBlock(dataInput, chunk);
+                    boolean placedByPlayer = dataInput.readBoolean();
+                    if (block.getType() == Material.SPAWNER)
+                        stackedSpawners.add(new StackedSpawner(stackSize, block, placedByPlayer));
+                }
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -174,23 +244,15 @@ public final class DataUtils {
         PersistentDataContainer pdc = chunk.getPersistentDataContainer();
         byte[] data = null;
 
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-             ObjectOutputStream dataOutput = new ObjectOutputStream(outputStream)) {
-
-            dataOutput.writeInt(SPAWNER_DATA_VERSION);
-            dataOutput.writeInt(stackedSpawners.size());
-
-            for (StackedSpawner stackedSpawner : stackedSpawners) {
-                dataOutput.writeInt(stackedSpawner.getStackSize());
-                dataOutput.writeInt(stackedSpawner.getLocation().getBlockX() & 0xF);
-                dataOutput.writeInt(stackedSpawner.getLocation().getBlockY());
-                dataOutput.writeInt(stackedSpawner.getLocation().getBlockZ() & 0xF);
-                dataOutput.writeBoolean(stackedSpawner.isPlacedByPlayer());
-            }
-
-            // Serialize that array
-            dataOutput.close();
-            data = outputStream.toByteArray();
+        try {
+            data = encode(SPAWNER_DATA_VERSION, dataOutput -> {
+                writeVarInt(dataOutput, stackedSpawners.size());
+                for (StackedSpawner stackedSpawner : stackedSpawners) {
+                    writeVarInt(dataOutput, stackedSpawner.getStackSize());
+                    writeBlock(dataOutput, stackedSpawner.getBlock());
+                    dataOutput.writeBoolean(stackedSpawner.isPlacedByPlayer());
+                }
+            });
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -207,10 +269,8 @@ public final class DataUtils {
         if (data == null)
             return stackedBlocks;
 
-        try (ByteArrayInputStream inputStream = new ByteArrayInputStream(data);
-             ObjectInputStream dataInput = new ObjectInputStream(inputStream)) {
-
-            int dataVersion = dataInput.readInt();
+        try (DataInputStream dataInput = openBody(data)) {
+            int dataVersion = readVersion(data, dataInput);
             if (dataVersion == 1) {
                 int length = dataInput.readInt();
                 for (int i = 0; i < length; i++) {
@@ -221,6 +281,12 @@ public final class DataUtils {
 
                     stackedBlocks.add(new StackedBlock(stackSize, chunk.getBlock(x, y, z)));
                 }
+            } else if (dataVersion == 2) {
+                int length = readVarInt(dataInput);
+                for (int i = 0; i < length; i++) {
+                    int stackSize = readVarInt(dataInput);
+                    stackedBlocks.add(new StackedBlock(stackSize, readBlock(dataInput, chunk)));
+                }
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -234,22 +300,14 @@ public final class DataUtils {
         PersistentDataContainer pdc = chunk.getPersistentDataContainer();
         byte[] data = null;
 
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-             ObjectOutputStream dataOutput = new ObjectOutputStream(outputStream)) {
-
-            dataOutput.writeInt(BLOCK_DATA_VERSION);
-            dataOutput.writeInt(stackedBlocks.size());
-
-            for (StackedBlock stackedBlock : stackedBlocks) {
-                dataOutput.writeInt(stackedBlock.getStackSize());
-                dataOutput.writeInt(stackedBlock.getLocation().getBlockX() & 0xF);
-                dataOutput.writeInt(stackedBlock.getLocation().getBlockY());
-                dataOutput.writeInt(stackedBlock.getLocation().getBlockZ() & 0xF);
-            }
-
-            // Serialize that array
-            dataOutput.close();
-            data = outputStream.toByteArray();
+        try {
+            data = encode(BLOCK_DATA_VERSION, dataOutput -> {
+                writeVarInt(dataOutput, stackedBlocks.size());
+                for (StackedBlock stackedBlock : stackedBlocks) {
+                    writeVarInt(dataOutput, stackedBlock.getStackSize());
+                    writeBlock(dataOutput, stackedBlock.getBlock());
+                }
+            });
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -258,4 +316,127 @@ public final class DataUtils {
             pdc.set(CHUNK_BLOCKS_KEY, PersistentDataType.BYTE_ARRAY, data);
     }
 
+    /**
+     * Writes data into a per-thread buffer and frames it with the format header.
+     * Larger bodies are deflated with the fastest compression level if doing so makes them smaller.
+     *
+     * @param version The data version to write in the header
+     * @param writer The writer for the body of the data
+     * @return the framed data
+     * @throws IOException if an I/O error occurs
+     */
+    private static byte[] encode(int version, DataWriter writer) throws IOException {
+        ReusableByteArrayOutputStream body = BODY_BUFFER.get();
+        body.reset();
+        writer.write(new DataOutputStream(body));
+
+        byte[] bodyBytes = body.getBuffer();
+        int bodyLength = body.size();
+        byte codec = CODEC_NONE;
+
+        if (bodyLength >= COMPRESSION_THRESHOLD) {
+            byte[][] compressionBuffer = COMPRESSION_BUFFER.get();
+            if (compressionBuffer[0].length < bodyLength)
+                compressionBuffer[0] = new byte[bodyLength];
+
+            Deflater deflater = DEFLATER.get();
+            deflater.reset();
+            deflater.setInput(bodyBytes, 0, bodyLength);
+            deflater.finish();
+            int compressedLength = deflater.deflate(compressionBuffer[0], 0, bodyLength - 1);
+
+            // Only keep the compressed body if it fit in less space than the original
+            if (deflater.finished()) {
+                codec = CODEC_DEFLATE;
+                bodyBytes = compressionBuffer[0];
+                bodyLength = compressedLength;
+            }
+        }
+
+        byte[] data = new byte[HEADER_LENGTH + bodyLength];
+        data[0] = FORMAT_MARKER;
+        data[1] = (byte) version;
+        data[2] = codec;
+        System.arraycopy(bodyBytes, 0, data, HEADER_LENGTH, bodyLength);
+        return data;
+    }
+
+    /**
+     * Opens the body of data for reading.
+     * Data with the format header skips over it and decompresses the body if needed, otherwise legacy data is
+     * opened past its Java serialization header.
+     *
+     * @param data The data to open
+     * @return a stream to read the body from
+     * @throws IOException if an I/O error occurs
+     */
+    private static DataInputStream openBody(byte[] data) throws IOException {
+        if (!hasFormatMarker(data))
+            return new DataInputStream(new ObjectInputStream(new ByteArrayInputStream(data)));
+
+        InputStream inputStream = new ByteArrayInputStream(data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+        return switch (data[2]) {
+            case CODEC_NONE -> new DataInputStream(inputStream);
+            case CODEC_DEFLATE -> new DataInputStream(new InflaterInputStream(inputStream));
+            default -> throw new IOException("Unknown data codec " + data[2]);
+        };
+    }
+
+    private static int readVersion(byte[] data, DataInput dataInput) throws IOException {
+        return hasFormatMarker(data) ? data[1] : dataInput.readInt();
+    }
+
+    private static boolean hasFormatMarker(byte[] data) {
+        return data.length >= HEADER_LENGTH && data[0] == FORMAT_MARKER;
+    }
+
+    /**
+     * Writes the position of a block within its chunk, packed into a single zigzag encoded varint
+     */
+    private static void writeBlock(DataOutput dataOutput, Block block) throws IOException {
+        int packed = (block.getY() << 8) | ((block.getX() & 0xF) << 4) | (block.getZ() & 0xF);
+        writeVarInt(dataOutput, (packed << 1) ^ (packed >> 31));
+    }
+
+    private static Block readBlock(DataInput dataInput, Chunk chunk) throws IOException {
+        int zigzag = readVarInt(dataInput);
+        int packed = (zigzag >>> 1) ^ -(zigzag & 1);
+        return chunk.getBlock((packed >> 4) & 0xF, packed >> 8, packed & 0xF);
+    }
+
+    private static void writeVarInt(DataOutput dataOutput, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            dataOutput.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dataOutput.writeByte(value);
+    }
+
+    private static int readVarInt(DataInput dataInput) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = dataInput.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("VarInt is too large");
+    }
+
+    @FunctionalInterface
+    private interface DataWriter {
+        void write(DataOutput dataOutput) throws IOException;
+    }
+
+    /**
+     * A ByteArrayOutputStream that exposes its buffer so it can be reused without copying
+     */
+    private static class ReusableByteArrayOutputStream extends ByteArrayOutputStream {
+
+        private byte[] getBuffer() {
+            return this.buf;
+        }
+
+    }
+
 }
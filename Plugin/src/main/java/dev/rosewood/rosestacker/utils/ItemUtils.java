@@ -21,6 +21,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.stream.Collectors;
 import org.bukkit.ChatColor;
@@ -365,6 +366,21 @@ public final class ItemUtils {
         return items;
     }
 
+    /**
+     * Gets a fingerprint of an ItemStack that ignores its amount.
+     * Items that are similar always have the same fingerprint, items with the same fingerprint still need to be checked
+     * with {@link ItemStack#isSimilar(ItemStack)}.
+     *
+     * @param itemStack The ItemStack to get the fingerprint of
+     * @return the fingerprint of the ItemStack
+     */
+    public static int getItemFingerprint(ItemStack itemStack) {
+        int fingerprint = itemStack.getType().hashCode();
+        if (itemStack.hasItemMeta())
+            fingerprint = 31 * fingerprint + Objects.hashCode(itemStack.getItemMeta());
+        return fingerprint;
+    }
+
     public static void clearCache() {
         skullCache.clear();
         cachedStackingTool = null;
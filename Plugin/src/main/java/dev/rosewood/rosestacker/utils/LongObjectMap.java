@@ -0,0 +1,299 @@
+package dev.rosewood.rosestacker.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+
+/**
+ * A thread-safe open-addressing hash map keyed by primitive longs.
+ * Avoids boxing keys and allocating entry nodes, used for packed chunk and block coordinates.
+ * Null values are not permitted.
+ * <p>
+ * Writes are serialized by a lock, lookups take an optimistic read and only fall back to the read lock if a write
+ * happened at the same time.
+ *
+ * @param <V> The value type
+ */
+public class LongObjectMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5F;
+
+    private final StampedLock lock;
+    private Table table;
+    private volatile int size;
+
+    public LongObjectMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongObjectMap(int expectedSize) {
+        this.lock = new StampedLock();
+        this.table = new Table(this.tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Gets the value mapped to a key
+     *
+     * @param key The key
+     * @return The value mapped to the key, or null if none exists
+     */
+    public V get(long key) {
+        long stamp = this.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            V value = this.find(this.table, key);
+            if (this.lock.validate(stamp))
+                return value;
+        }
+
+        stamp = this.lock.readLock();
+        try {
+            return this.find(this.table, key);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Checks if a value is mapped to a key
+     *
+     * @param key The key
+     * @return true if a value is mapped to the key, false otherwise
+     */
+    public boolean containsKey(long key) {
+        return this.get(key) != null;
+    }
+
+    /**
+     * Maps a value to a key, replacing any existing value
+     *
+     * @param key The key
+     * @param value The value, must not be null
+     * @return The previous value mapped to the key, or null if none existed
+     */
+    public V put(long key, V value) {
+        if (value == null)
+            throw new IllegalArgumentException("Null values are not permitted");
+
+        long stamp = this.lock.writeLock();
+        try {
+            return this.insert(key, value);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets the value mapped to a key, creating and mapping one if none exists
+     *
+     * @param key The key
+     * @param mappingFunction The function to create a value if one does not exist, must not return null
+     * @return The existing or newly created value
+     */
+    public V computeIfAbsent(long key, LongFunction<V> mappingFunction) {
+        V value = this.get(key);
+        if (value != null)
+            return value;
+
+        long stamp = this.lock.writeLock();
+        try {
+            value = this.find(this.table, key);
+            if (value == null) {
+                value = mappingFunction.apply(key);
+                this.insert(key, value);
+            }
+            return value;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the value mapped to a key
+     *
+     * @param key The key
+     * @return The value that was mapped to the key, or null if none existed
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        long stamp = this.lock.writeLock();
+        try {
+            Table table = this.table;
+            int index = table.indexOf(key);
+            if (index == -1)
+                return null;
+
+            V previous = (V) table.values[index];
+            table.values[index] = null;
+            this.size--;
+
+            // Shift back any following entries in the probe sequence so lookups don't stop early
+            int gap = index;
+            int next = (gap + 1) & table.mask;
+            while (table.values[next] != null) {
+                int ideal = hash(table.keys[next]) & table.mask;
+                if (((next - ideal) & table.mask) >= ((next - gap) & table.mask)) {
+                    table.keys[gap] = table.keys[next];
+                    table.values[gap] = table.values[next];
+                    table.values[next] = null;
+                    gap = next;
+                }
+                next = (next + 1) & table.mask;
+            }
+
+            return previous;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the number of mapped values
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return true if there are no mapped values, false otherwise
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Removes all mapped values
+     */
+    public void clear() {
+        long stamp = this.lock.writeLock();
+        try {
+            Arrays.fill(this.table.values, null);
+            this.size = 0;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return a snapshot of all mapped values
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        long stamp = this.lock.readLock();
+        try {
+            List<V> values = new ArrayList<>(this.size);
+            for (Object value : this.table.values)
+                if (value != null)
+                    values.add((V) value);
+            return values;
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Looks up a key in a table, may be called without holding the lock as long as the result is validated afterwards.
+     * The keys, values and mask are always read from the same table so a concurrent resize can't cause an out of bounds
+     * index, and the probe count is capped so a torn read can't loop forever.
+     *
+     * @param table The table to search
+     * @param key The key
+     * @return The value mapped to the key in the table, or null if none exists
+     */
+    @SuppressWarnings("unchecked")
+    private V find(Table table, long key) {
+        int index = hash(key) & table.mask;
+        for (int probes = 0; probes <= table.mask; probes++) {
+            Object value = table.values[index];
+            if (value == null)
+                return null;
+            if (table.keys[index] == key)
+                return (V) value;
+            index = (index + 1) & table.mask;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V insert(long key, V value) {
+        Table table = this.table;
+        int index = hash(key) & table.mask;
+        while (table.values[index] != null) {
+            if (table.keys[index] == key) {
+                V previous = (V) table.values[index];
+                table.values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & table.mask;
+        }
+
+        table.keys[index] = key;
+        table.values[index] = value;
+        if (++this.size > table.resizeThreshold)
+            this.rehash(table.values.length << 1);
+
+        return null;
+    }
+
+    private void rehash(int capacity) {
+        Table oldTable = this.table;
+        Table newTable = new Table(capacity);
+
+        for (int i = 0; i < oldTable.values.length; i++) {
+            if (oldTable.values[i] == null)
+                continue;
+
+            int index = hash(oldTable.keys[i]) & newTable.mask;
+            while (newTable.values[index] != null)
+                index = (index + 1) & newTable.mask;
+
+            newTable.keys[index] = oldTable.keys[i];
+            newTable.values[index] = oldTable.values[i];
+        }
+
+        // Only published once fully populated so readers never see a partially copied table
+        this.table = newTable;
+    }
+
+    private int tableSizeFor(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        return Math.max(DEFAULT_CAPACITY, capacity);
+    }
+
+    private static int hash(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Holds the arrays of a single table size together so they can be swapped out as one on resize
+     */
+    private static class Table {
+
+        private final long[] keys;
+        private final Object[] values;
+        private final int mask;
+        private final int resizeThreshold;
+
+        private Table(int capacity) {
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+            this.mask = capacity - 1;
+            this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+        }
+
+        private int indexOf(long key) {
+            int index = hash(key) & this.mask;
+            while (this.values[index] != null) {
+                if (this.keys[index] == key)
+                    return index;
+                index = (index + 1) & this.mask;
+            }
+            return -1;
+        }
+
+    }
+
+}
@@ -3,11 +3,14 @@ package dev.rosewood.rosestacker.utils;
 import dev.rosewood.rosestacker.RoseStacker;
 import dev.rosewood.rosestacker.manager.ConfigurationManager;
 import dev.rosewood.rosestacker.manager.LocaleManager;
+import dev.rosewood.rosestacker.manager.StackSettingManager;
 import dev.rosewood.rosestacker.nms.NMSAdapter;
 import dev.rosewood.rosestacker.nms.NMSHandler;
 import dev.rosewood.rosestacker.nms.storage.StackedEntityDataEntry;
 import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorage;
+import dev.rosewood.rosestacker.nms.storage.StackedEntityDataStorageType;
 import dev.rosewood.rosestacker.stack.StackedEntity;
+import dev.rosewood.rosestacker.stack.settings.EntityStackSettings;
 import java.text.DecimalFormat;
 import java.text.DecimalFormatSymbols;
 import java.text.NumberFormat;
@@ -98,6 +101,29 @@ public final class StackerUtils {
         return RANDOM.nextInt(max - min + 1) + min;
     }
 
+    /**
+     * Packs chunk coordinates into a single long
+     *
+     * @param chunkX The chunk x coordinate
+     * @param chunkZ The chunk z coordinate
+     * @return the packed chunk key
+     */
+    public static long getChunkKey(int chunkX, int chunkZ) {
+        return (chunkX & 0xFFFFFFFFL) | ((chunkZ & 0xFFFFFFFFL) << 32);
+    }
+
+    /**
+     * Packs block coordinates into a single long, supports x/z within ±33554431 and y within ±2047
+     *
+     * @param x The block x coordinate
+     * @param y The block y coordinate
+     * @param z The block z coordinate
+     * @return the packed block key
+     */
+    public static long getBlockKey(int x, int y, int z) {
+        return ((x & 0x3FFFFFFL) << 38) | ((z & 0x3FFFFFFL) << 12) | (y & 0xFFFL);
+    }
+
     public static List<EntityType> getAlphabeticalStackableEntityTypes() {
         if (cachedAlphabeticalEntityTypes != null)
             return cachedAlphabeticalEntityTypes;
@@ -186,12 +212,42 @@ public final class StackerUtils {
     }
 
     public static void reconstructStackedEntities(StackedEntity stackedEntity, List<? extends LivingEntity> livingEntities) {
-        StackedEntityDataStorage stackedEntityDataStorage = NMSAdapter.getHandler().createEntityDataStorage(stackedEntity.getEntity());
+        StackedEntityDataStorageType storageType = stackedEntity.getStackedEntityNBT().getType();
+        StackedEntityDataStorage stackedEntityDataStorage = NMSAdapter.getHandler().createEntityDataStorage(stackedEntity.getEntity(), storageType);
         for (LivingEntity livingEntity : livingEntities)
             stackedEntityDataStorage.addLast(livingEntity);
         stackedEntity.setStackedEntityNBT(stackedEntityDataStorage);
     }
 
+    /**
+     * Creates a new StackedEntityDataStorage for an entity using the storage type configured for its EntityType
+     *
+     * @param livingEntity The base entity
+     * @return a new StackedEntityDataStorage instance
+     */
+    public static StackedEntityDataStorage createEntityDataStorage(LivingEntity livingEntity) {
+        EntityStackSettings stackSettings = RoseStacker.getInstance().getManager(StackSettingManager.class).getEntityStackSettings(livingEntity);
+        StackedEntityDataStorageType storageType = stackSettings != null ? stackSettings.getDataStorageType() : StackedEntityDataStorageType.NBT;
+        return NMSAdapter.getHandler().createEntityDataStorage(livingEntity, storageType);
+    }
+
+    /**
+     * Parses a StackedEntityDataStorageType from its name, ignoring case
+     *
+     * @param name The name of the storage type
+     * @return the matching StackedEntityDataStorageType, or null if none match
+     */
+    public static StackedEntityDataStorageType parseDataStorageType(String name) {
+        if (name == null)
+            return null;
+
+        for (StackedEntityDataStorageType storageType : StackedEntityDataStorageType.values())
+            if (storageType.name().equalsIgnoreCase(name))
+                return storageType;
+
+        return null;
+    }
+
     /**
      * Checks if a Material can not be passed through
      *
@@ -0,0 +1,134 @@
+package dev.rosewood.rosestacker.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * A hierarchical timing wheel that holds values until the tick they are scheduled for.
+ * Scheduling a value and advancing by a tick are both constant time, advancing only touches the values that are due
+ * and the occasional group of values moving down to a finer wheel.
+ * Not thread-safe.
+ *
+ * @param <T> The value type
+ */
+public class TimingWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    private final List<Entry<T>>[][] wheels;
+    private final List<Entry<T>> overflow;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel() {
+        this.wheels = new List[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++)
+            for (int slot = 0; slot < SLOTS; slot++)
+                this.wheels[level][slot] = new ArrayList<>();
+        this.overflow = new ArrayList<>();
+    }
+
+    /**
+     * @return the tick the wheel is currently at
+     */
+    public long getCurrentTick() {
+        return this.currentTick;
+    }
+
+    /**
+     * @return the number of scheduled values
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Schedules a value, values scheduled for the current tick or earlier are due on the next tick
+     *
+     * @param value The value to schedule
+     * @param tick The tick the value is due at
+     */
+    public void schedule(T value, long tick) {
+        this.insert(new Entry<>(value, Math.max(tick, this.currentTick + 1)));
+        this.size++;
+    }
+
+    /**
+     * Advances the wheel by one tick
+     *
+     * @param consumer Called with each value that is due and the tick it was scheduled for, may schedule new values
+     */
+    public void advance(ObjLongConsumer<T> consumer) {
+        this.currentTick++;
+
+        // Move values down from the coarser wheels whose slot the current tick just entered, coarsest first
+        if ((this.currentTick & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0)
+            this.cascade(this.overflow);
+        for (int level = LEVELS - 1; level > 0; level--) {
+            long shift = (long) SLOT_BITS * level;
+            if ((this.currentTick & ((1L << shift) - 1)) == 0)
+                this.cascade(this.wheels[level][(int) ((this.currentTick >> shift) & SLOT_MASK)]);
+        }
+
+        List<Entry<T>> slot = this.wheels[0][(int) (this.currentTick & SLOT_MASK)];
+        if (slot.isEmpty())
+            return;
+
+        List<Entry<T>> due = new ArrayList<>(slot);
+        slot.clear();
+        this.size -= due.size();
+        for (Entry<T> entry : due)
+            consumer.accept(entry.value, entry.tick);
+    }
+
+    /**
+     * Removes every scheduled value
+     */
+    public void clear() {
+        for (List<Entry<T>>[] wheel : this.wheels)
+            for (List<Entry<T>> slot : wheel)
+                slot.clear();
+        this.overflow.clear();
+        this.size = 0;
+    }
+
+    private void cascade(List<Entry<T>> slot) {
+        if (slot.isEmpty())
+            return;
+
+        List<Entry<T>> entries = new ArrayList<>(slot);
+        slot.clear();
+        entries.forEach(this::insert);
+    }
+
+    private void insert(Entry<T> entry) {
+        // Use the finest wheel whose current rotation contains the tick
+        for (int level = 0; level < LEVELS; level++) {
+            long shift = (long) SLOT_BITS * (level + 1);
+            if ((entry.tick >> shift) == (this.currentTick >> shift)) {
+                this.wheels[level][(int) ((entry.tick >> (SLOT_BITS * level)) & SLOT_MASK)].add(entry);
+                return;
+            }
+        }
+
+        this.overflow.add(entry);
+    }
+
+    private static class Entry<T> {
+
+        private final T value;
+        private final long tick;
+
+        public Entry(T value, long tick) {
+            this.value = value;
+            this.tick = tick;
+        }
+
+    }
+
+}